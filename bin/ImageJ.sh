@@ -91,6 +91,7 @@ main_class=net.imagej.Main
 dashdash=f
 dry_run=
 needs_tools_jar=
+cds_dump=
 CLASSPATH=
 
 while test $# -gt 0
@@ -115,6 +116,10 @@ General options:
 	show the command line but do not run anything
 --debugger=<port>[,suspend=(y|n)]
 	start up in debug mode, ready to be attached to
+--cds-dump
+	(re)generate the class data sharing archive ImageJ.jsa by running a
+	representative headless workload (requires Java 13 or later);
+	subsequent launches use the archive automatically
 
 Options to run programs other than ImageJ:
 --jython
@@ -137,6 +142,10 @@ EOF
 	?,--dry-run)
 		dry_run=t
 		;;
+	?,--cds-dump)
+		cds_dump=t
+		main_class=net.imagej.StartupTraining
+		;;
 	?,--cp=*)
 		add_classpath "${1#--cp=}"
 		;;
@@ -264,6 +273,62 @@ discover_jar () {
 	head -n 1
 }
 
+# The class path of the installation is cached in ImageJ.classpath, so that
+# it is not rediscovered on each launch. The cache is regenerated whenever
+# anything in jars/ or plugins/ is newer than it, i.e. after every update.
+# It lists paths relative to the installation, so that it stays valid when
+# the installation is moved. Like the launcher's -ijjarpath, it includes the
+# JARs in subdirectories. Core libraries come first, as the JVM searches the
+# class path in order.
+CLASSPATH_CACHE="$IMAGEJ_ROOT/ImageJ.classpath"
+list_jars () {
+	(cd "$IMAGEJ_ROOT" && find jars plugins -name '*.jar' -type f 2> /dev/null) |
+	while read -r path
+	do
+		case "${path##*/}" in
+		imagej-[0-9]*|scijava-common-*|imagej-common-*|imglib2-[0-9]*)
+			echo "0 $path"
+			;;
+		imagej-*|scijava-*|imglib2-*|scifio-*)
+			echo "1 $path"
+			;;
+		*)
+			echo "2 $path"
+			;;
+		esac
+	done |
+	sort |
+	sed 's/^[0-9] //'
+}
+
+cached_classpath () {
+	if test ! -f "$CLASSPATH_CACHE" ||
+		test -n "`find "$IMAGEJ_ROOT/jars" "$IMAGEJ_ROOT/plugins" -newer "$CLASSPATH_CACHE" 2> /dev/null | head -n 1`"
+	then
+		list_jars > "$CLASSPATH_CACHE.tmp" &&
+		mv -f "$CLASSPATH_CACHE.tmp" "$CLASSPATH_CACHE" ||
+		{
+			# read-only installation; fall back to a fresh listing
+			rm -f "$CLASSPATH_CACHE.tmp"
+			list_jars
+			return
+		}
+	fi
+	cat "$CLASSPATH_CACHE"
+}
+
+add_cached_classpath () {
+	# split on newlines only, since paths may contain spaces
+	save_ifs="$IFS"
+	IFS='
+'
+	for path in `cached_classpath`
+	do
+		add_classpath "$IMAGEJ_ROOT/$path"
+	done
+	IFS="$save_ifs"
+}
+
 test -z "$needs_tools_jar" || {
 	add_classpath "`discover_tools_jar`"
 	case "$main_class" in
@@ -275,8 +340,45 @@ test -z "$needs_tools_jar" || {
 	esac
 }
 
+# Updates are staged in update/, mirroring the installation, since the files
+# of a running installation cannot always be replaced (JARs are locked on
+# Windows). Like the ImageJ launcher, move them into place before starting;
+# an empty staged file means that the file is to be removed. Downloads still
+# in progress never end in .jar, and are left alone.
+apply_updates () {
+	test -d "$IMAGEJ_ROOT/update" || return 0
+	(cd "$IMAGEJ_ROOT/update" && find . -type f 2> /dev/null) |
+	sed 's|^\./||' |
+	while read -r path
+	do
+		case "$path" in
+		*.part|*.delta)
+			continue
+			;;
+		esac
+		if test -s "$IMAGEJ_ROOT/update/$path"
+		then
+			mkdir -p "`dirname "$IMAGEJ_ROOT/$path"`" &&
+			mv -f "$IMAGEJ_ROOT/update/$path" "$IMAGEJ_ROOT/$path"
+		else
+			rm -f "$IMAGEJ_ROOT/$path" "$IMAGEJ_ROOT/update/$path"
+		fi ||
+		echo "Could not update $path" >&2
+	done
+	# remove the directories emptied by now, deepest first
+	find "$IMAGEJ_ROOT/update" -depth -type d \
+		-exec rmdir {} \; 2> /dev/null
+}
+
+test -n "$dry_run" || apply_updates
+
 case "$main_class" in
-net.imagej.Main|ij.ImageJ)
+net.imagej.Main|net.imagej.StartupTraining)
+	# NB: A flat class path lets the JVM (and its class data sharing archive)
+	# load classes directly, without the launcher's jar scanning.
+	add_cached_classpath
+	;;
+ij.ImageJ)
 	ij_options="$main_class $ij_options"
 	main_class="net.imagej.launcher.ClassLauncher -ijjarpath jars/ -ijjarpath plugins/"
 	add_classpath "`discover_jar imagej-launcher`" "`discover_jar ij`" "`discover_jar javassist`"
@@ -288,10 +390,31 @@ org.apache.tools.ant.Main)
 	done
 	;;
 *)
-	for path in "$IMAGEJ_ROOT"/jars/*.jar "$IMAGEJ_ROOT"/plugins/*.jar
-	do
-		add_classpath "$path"
-	done
+	add_cached_classpath
+esac
+
+# Use a class data sharing archive of this installation, if any. It is bound
+# to the class path, so the training run must use the same class path setup.
+CDS_ARCHIVE="$IMAGEJ_ROOT/ImageJ.jsa"
+case "$cds_dump" in
+t)
+	if ! java -XX:+PrintFlagsFinal -version 2> /dev/null |
+		grep ArchiveClassesAtExit > /dev/null
+	then
+		echo "Class data sharing archives require Java 13 or later; skipping" >&2
+		exit 0
+	fi
+	test -n "$dry_run" || rm -f "$CDS_ARCHIVE"
+	first_java_options="$first_java_options -Djava.awt.headless=true"
+	first_java_options="$first_java_options -XX:ArchiveClassesAtExit=`sq_quote "$CDS_ARCHIVE"`"
+	;;
+*)
+	if test -f "$CDS_ARCHIVE"
+	then
+		first_java_options="$first_java_options -XX:+IgnoreUnrecognizedVMOptions"
+		first_java_options="$first_java_options -Xshare:auto -XX:SharedArchiveFile=`sq_quote "$CDS_ARCHIVE"`"
+	fi
+	;;
 esac
 
 case "$dry_run" in
@@ -36,4 +36,10 @@ do
 	then
 		echo "WARNING: built by Eclipse: $jar"
 	fi
-done
+done &&
+# The class data sharing archive is bound to the installed JAR files. It is
+# merely an optimization, so failing to generate it is no reason to fail.
+{
+	sh ImageJ.app/ImageJ.sh --cds-dump ||
+	echo "WARNING: no CDS archive"
+}
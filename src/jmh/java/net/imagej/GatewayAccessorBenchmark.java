@@ -0,0 +1,215 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import io.scif.SCIFIO;
+
+import java.util.concurrent.TimeUnit;
+
+import net.imagej.animation.AnimationService;
+import net.imagej.blocks.BlockService;
+import net.imagej.display.ImageDisplayService;
+import net.imagej.display.OverlayService;
+import net.imagej.display.ScreenCaptureService;
+import net.imagej.display.WindowService;
+import net.imagej.lut.LUTService;
+import net.imagej.metrics.MetricsService;
+import net.imagej.movie.MovieExportService;
+import net.imagej.notebook.NotebookService;
+import net.imagej.opcache.OpCacheService;
+import net.imagej.ops.OpService;
+import net.imagej.pipeline.BatchPipelineService;
+import net.imagej.render.RenderingService;
+import net.imagej.rendering.RenderPipelineService;
+import net.imagej.sampler.SamplerService;
+import net.imagej.sampling.LazySamplerService;
+import net.imagej.storage.DatasetStorageService;
+import net.imagej.streaming.StreamingDatasetService;
+import net.imagej.updater.UpdateService;
+import net.imagej.updater.UploaderService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the service accessors of the {@link ImageJ} gateway.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GatewayAccessorBenchmark {
+
+	private ImageJ ij;
+
+	@Setup
+	public void setUp() {
+		ij = new ImageJ();
+	}
+
+	@TearDown
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Benchmark
+	public AnimationService animation() {
+		return ij.animation();
+	}
+
+	@Benchmark
+	public BatchPipelineService batch() {
+		return ij.batch();
+	}
+
+	@Benchmark
+	public BlockService blocks() {
+		return ij.blocks();
+	}
+
+	@Benchmark
+	public DatasetService dataset() {
+		return ij.dataset();
+	}
+
+	@Benchmark
+	public ImageDisplayService imageDisplay() {
+		return ij.imageDisplay();
+	}
+
+	@Benchmark
+	public LazySamplerService lazySampler() {
+		return ij.lazySampler();
+	}
+
+	@Benchmark
+	public LUTService lut() {
+		return ij.lut();
+	}
+
+	@Benchmark
+	public MetricsService metrics() {
+		return ij.metrics();
+	}
+
+	@Benchmark
+	public MovieExportService movieExport() {
+		return ij.movieExport();
+	}
+
+	@Benchmark
+	public NotebookService notebook() {
+		return ij.notebook();
+	}
+
+	@Benchmark
+	public OpService op() {
+		return ij.op();
+	}
+
+	@Benchmark
+	public OpCacheService opCache() {
+		return ij.opCache();
+	}
+
+	@Benchmark
+	public OverlayService overlay() {
+		return ij.overlay();
+	}
+
+	@Benchmark
+	public RenderingService rendering() {
+		return ij.rendering();
+	}
+
+	@Benchmark
+	public RenderPipelineService renderPipeline() {
+		return ij.renderPipeline();
+	}
+
+	@Benchmark
+	public SamplerService sampler() {
+		return ij.sampler();
+	}
+
+	@Benchmark
+	public ScreenCaptureService screenCapture() {
+		return ij.screenCapture();
+	}
+
+	@Benchmark
+	public SCIFIO scifio() {
+		return ij.scifio();
+	}
+
+	@Benchmark
+	public DatasetStorageService storage() {
+		return ij.storage();
+	}
+
+	@Benchmark
+	public StreamingDatasetService streaming() {
+		return ij.streaming();
+	}
+
+	@Benchmark
+	public UpdateService update() {
+		return ij.update();
+	}
+
+	@Benchmark
+	public UploaderService uploader() {
+		return ij.uploader();
+	}
+
+	@Benchmark
+	public WindowService window() {
+		return ij.window();
+	}
+
+	@Benchmark
+	public OpService getByClass() {
+		return ij.get(OpService.class);
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+
+/**
+ * Benchmarks creating, launching and disposing the {@link ImageJ} gateway.
+ * <p>
+ * The {@code cold} benchmarks measure a single gateway per fresh JVM, which is
+ * what users experience at startup; the {@code warm} benchmarks measure the
+ * steady state, after class loading and JIT compilation.
+ * </p>
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GatewayStartupBenchmark {
+
+	private Context context;
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		context = null;
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		if (context != null) context.dispose();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Fork(10)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	public ImageJ coldConstruction() {
+		return track(new ImageJ());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Fork(10)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	public ImageJ coldLazyConstruction() {
+		return track(ImageJ.lazy());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Fork(10)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	public ImageJ coldLaunchHeadless() {
+		// NB: Track the context anyway, in case the launch does not dispose it.
+		final ImageJ ij = track(new ImageJ());
+		ij.launch("--headless");
+		return ij;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@Fork(1)
+	@Warmup(iterations = 5)
+	@Measurement(iterations = 10)
+	public ImageJ warmConstruction() {
+		return track(new ImageJ());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@Fork(1)
+	@Warmup(iterations = 5)
+	@Measurement(iterations = 10)
+	public ImageJ warmLaunchHeadless() {
+		// NB: Track the context anyway, in case the launch does not dispose it.
+		final ImageJ ij = track(new ImageJ());
+		ij.launch("--headless");
+		return ij;
+	}
+
+	// -- Helper methods --
+
+	private ImageJ track(final ImageJ ij) {
+		context = ij.getContext();
+		return ij;
+	}
+
+	// -- Helper classes --
+
+	/** Benchmarks disposing the gateway's context. */
+	@State(Scope.Thread)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public static class Disposal {
+
+		private ImageJ ij;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			ij = new ImageJ();
+		}
+
+		@Benchmark
+		@BenchmarkMode(Mode.AverageTime)
+		@Fork(1)
+		@Warmup(iterations = 3)
+		@Measurement(iterations = 10)
+		public void dispose() {
+			ij.getContext().dispose();
+		}
+	}
+
+}
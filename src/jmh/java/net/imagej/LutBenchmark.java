@@ -0,0 +1,164 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.imagej.display.ColorTables;
+import net.imagej.rendering.ArgbLut;
+import net.imagej.rendering.ArgbTile;
+import net.imagej.rendering.DefaultRenderPipelineService;
+import net.imagej.rendering.RenderView;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.ColorTable;
+import net.imglib2.display.RealLUTConverter;
+import net.imglib2.display.projector.composite.CompositeXYProjector;
+import net.imglib2.display.screenimage.awt.ARGBScreenImage;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks compositing 16-bit channels into ARGB pixels: per pixel through
+ * {@link ColorTable#lookupARGB}, in bulk through {@link ArgbLut}, through a
+ * {@link RenderView} of a {@link PlanarImg}, and through the
+ * {@link CompositeXYProjector} and {@link RealLUTConverter}s with which image
+ * displays render color tables loaded via {@code ij.lut()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LutBenchmark {
+
+	private static final int SIZE = 1024;
+	private static final int PIXELS = SIZE * SIZE;
+	private static final double MIN = 0, MAX = 4095;
+
+	@Param({ "1", "3", "5" })
+	private int channels;
+
+	private ColorTable[] tables;
+	private ArgbLut[] luts;
+	private short[][] values;
+	private int[] out;
+	private RenderView view;
+	private CompositeXYProjector<UnsignedShortType> projector;
+	private ARGBScreenImage screen;
+
+	@Setup
+	public void setUp() {
+		final ColorTable[] all = { ColorTables.RED, ColorTables.GREEN,
+			ColorTables.BLUE, ColorTables.CYAN, ColorTables.MAGENTA };
+		tables = new ColorTable[channels];
+		luts = new ArgbLut[channels];
+		values = new short[channels][PIXELS];
+		final Random random = new Random(0xdeadbeef);
+		for (int c = 0; c < channels; c++) {
+			tables[c] = all[c];
+			luts[c] = new ArgbLut(tables[c], MIN, MAX, 65536);
+			for (int i = 0; i < PIXELS; i++) {
+				values[c][i] = (short) random.nextInt(4096);
+			}
+		}
+		out = new int[PIXELS];
+
+		final PlanarImg<UnsignedShortType, ?> img = PlanarImgs.unsignedShorts(
+			SIZE, SIZE, channels);
+		final ArrayList<Converter<UnsignedShortType, ARGBType>> converters =
+			new ArrayList<>();
+		view = new DefaultRenderPipelineService().createView(img, 2);
+		for (int c = 0; c < channels; c++) {
+			System.arraycopy(values[c], 0, img.getPlane(c).getCurrentStorageArray(),
+				0, PIXELS);
+			converters.add(new RealLUTConverter<UnsignedShortType>(MIN, MAX,
+				tables[c]));
+			view.setColorTable(c, tables[c]);
+			view.setDisplayRange(c, MIN, MAX);
+		}
+		screen = new ARGBScreenImage(SIZE, SIZE);
+		projector = new CompositeXYProjector<>(img, screen, converters, 2);
+		projector.setComposite(true);
+	}
+
+	@Benchmark
+	public int[] perPixel() {
+		for (int i = 0; i < PIXELS; i++) {
+			int r = 0, g = 0, b = 0;
+			for (int c = 0; c < channels; c++) {
+				final int color = tables[c].lookupARGB(MIN, MAX, values[c][i] &
+					0xffff);
+				r += (color >> 16) & 0xff;
+				g += (color >> 8) & 0xff;
+				b += color & 0xff;
+			}
+			out[i] = 0xff000000 | Math.min(r, 255) << 16 | Math.min(g, 255) << 8 |
+				Math.min(b, 255);
+		}
+		return out;
+	}
+
+	@Benchmark
+	public int[] bulk() {
+		ArgbLut.composite(luts, values, out);
+		return out;
+	}
+
+	@Benchmark
+	public ArgbTile renderView() {
+		return view.renderPlane(new long[0], 0);
+	}
+
+	@Benchmark
+	public ARGBScreenImage projector() {
+		projector.map();
+		return screen;
+	}
+
+}
@@ -34,25 +34,50 @@
 import io.scif.SCIFIO;
 import io.scif.SCIFIOService;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import net.imagej.animation.AnimationService;
 import net.imagej.app.ImageJApp;
+import net.imagej.blocks.BlockService;
 import net.imagej.display.ImageDisplayService;
 import net.imagej.display.OverlayService;
 import net.imagej.display.ScreenCaptureService;
 import net.imagej.display.WindowService;
 import net.imagej.lut.LUTService;
+import net.imagej.metrics.MetricsService;
+import net.imagej.movie.MovieExportService;
 import net.imagej.notebook.NotebookService;
+import net.imagej.opcache.OpCacheService;
 import net.imagej.ops.OpService;
+import net.imagej.pipeline.BatchPipelineService;
+import net.imagej.plugin.PluginIndexCache;
 import net.imagej.render.RenderingService;
+import net.imagej.rendering.RenderPipelineService;
 import net.imagej.sampler.SamplerService;
+import net.imagej.sampling.LazySamplerService;
+import net.imagej.storage.DatasetStorageService;
+import net.imagej.streaming.StreamingDatasetService;
 import net.imagej.updater.UpdateService;
 import net.imagej.updater.UploaderService;
 
 import org.scijava.AbstractGateway;
 import org.scijava.Context;
 import org.scijava.Gateway;
+import org.scijava.InstantiableException;
+import org.scijava.event.ContextDisposingEvent;
+import org.scijava.event.EventHandler;
+import org.scijava.event.EventService;
 import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.plugin.PluginInfo;
 import org.scijava.service.SciJavaService;
+import org.scijava.service.Service;
+import org.scijava.service.ServiceHelper;
 
 /**
  * Main entry point into ImageJ. This class enables working with ImageJ services
@@ -67,15 +92,62 @@ public class ImageJ extends AbstractGateway {
 	/** SCIFIO gateway instance, for access to SCIFIO services. */
 	private SCIFIO scifio;
 
+	/** Whether missing services are created on demand when requested. */
+	private final boolean lazy;
+
+	/** Helper for creating services on demand, when {@link #lazy} is set. */
+	private ServiceHelper serviceHelper;
+
+	/**
+	 * Services already resolved by the accessor methods, indexed by the
+	 * {@code *_INDEX} constants. Cleared when the context is disposed, possibly
+	 * while other threads read it, hence an atomic array.
+	 */
+	private final AtomicReferenceArray<Service> services =
+		new AtomicReferenceArray<>(SERVICE_COUNT);
+
+	/** Whether this gateway listens for disposal of its context. */
+	private boolean subscribed;
+
+	/** Whether the context is being disposed; guarded by {@link #services}. */
+	private boolean disposing;
+
+	private static final int ANIMATION_INDEX = 0;
+	private static final int BATCH_INDEX = 1;
+	private static final int BLOCKS_INDEX = 2;
+	private static final int DATASET_INDEX = 3;
+	private static final int IMAGE_DISPLAY_INDEX = 4;
+	private static final int LAZY_SAMPLER_INDEX = 5;
+	private static final int LUT_INDEX = 6;
+	private static final int METRICS_INDEX = 7;
+	private static final int MOVIE_EXPORT_INDEX = 8;
+	private static final int NOTEBOOK_INDEX = 9;
+	private static final int OP_INDEX = 10;
+	private static final int OP_CACHE_INDEX = 11;
+	private static final int OVERLAY_INDEX = 12;
+	private static final int RENDERING_INDEX = 13;
+	private static final int RENDER_PIPELINE_INDEX = 14;
+	private static final int SAMPLER_INDEX = 15;
+	private static final int SCREEN_CAPTURE_INDEX = 16;
+	private static final int STORAGE_INDEX = 17;
+	private static final int STREAMING_INDEX = 18;
+	private static final int UPDATE_INDEX = 19;
+	private static final int UPLOADER_INDEX = 20;
+	private static final int WINDOW_INDEX = 21;
+	private static final int SERVICE_COUNT = 22;
+
 	// -- Constructors --
 
 	/**
 	 * Creates a new ImageJ application context with all ImageJ, SCIFIO and
 	 * SciJava services.
+	 * <p>
+	 * Plugins are discovered from the {@link PluginIndexCache} when it matches
+	 * the class path, and by scanning the class path otherwise.
+	 * </p>
 	 */
 	public ImageJ() {
-		this(new Context(SciJavaService.class, SCIFIOService.class,
-			ImageJService.class));
+		this(createContext(serviceTypes(), null));
 	}
 
 	/**
@@ -85,8 +157,98 @@ public ImageJ() {
 	 * @see Context
 	 */
 	public ImageJ(final Context context) {
+		this(context, false);
+	}
+
+	/**
+	 * Creates a new ImageJ application context which wraps the given existing
+	 * SciJava context.
+	 * <p>
+	 * If {@code lazy} is set, any service requested through this gateway which
+	 * is not yet present in the context is created on demand, together with the
+	 * services it depends on. Combined with an empty context, this defers all
+	 * service creation until first use; see {@link #lazy()}.
+	 * </p>
+	 * 
+	 * @see Context
+	 */
+	public ImageJ(final Context context, final boolean lazy) {
 		super(ImageJApp.NAME, context);
-		scifio = new SCIFIO(context);
+		this.lazy = lazy;
+		// NB: Event handlers were subscribed when the context was injected.
+		subscribed = context.getService(EventService.class) != null;
+		scifio = lazy ? new SCIFIO(context) {
+
+			@Override
+			public <S extends Service> S get(final Class<S> serviceClass) {
+				return ImageJ.this.get(serviceClass);
+			}
+		} : new SCIFIO(context);
+	}
+
+	/**
+	 * Creates a new ImageJ application context with no services. Each service
+	 * is created the first time it is requested through the gateway (e.g., via
+	 * {@link #op()} or {@link #scifio()}), along with its dependencies.
+	 * <p>
+	 * This avoids the cost of initializing every available service up front,
+	 * which is worthwhile for short-lived, headless programs which only need a
+	 * handful of services.
+	 * </p>
+	 */
+	public static ImageJ lazy() {
+		final List<Class<? extends Service>> noServices = Collections.emptyList();
+		return new ImageJ(new Context(noServices, PluginIndexCache.load()), true);
+	}
+
+	/**
+	 * Creates a new ImageJ application context with all ImageJ, SCIFIO and
+	 * SciJava services, initializing independent services concurrently on the
+	 * common fork-join pool.
+	 * 
+	 * @see ParallelServiceLoader
+	 */
+	public static ImageJ parallel() {
+		return new ImageJ(new ParallelServiceLoader().createContext(
+			serviceTypes()));
+	}
+
+	/**
+	 * Creates a new headless ImageJ application context, with all ImageJ,
+	 * SCIFIO and SciJava services except those tied to a graphical user
+	 * interface (AWT and Swing services, and the {@link WindowService}).
+	 * <p>
+	 * These services are removed from the plugin index of the context, so that
+	 * they are not pulled in as dependencies of other services either; hence,
+	 * e.g., {@link #window()} is not available from such a gateway.
+	 * </p>
+	 */
+	public static ImageJ headless() {
+		final List<Class<? extends Service>> noServices = Collections.emptyList();
+		final Context context = new Context(noServices, PluginIndexCache.load());
+		final PluginIndex pluginIndex = context.getPluginIndex();
+		for (final PluginInfo<Service> info : new ArrayList<>(pluginIndex
+			.getPlugins(Service.class)))
+		{
+			try {
+				if (ServiceClasses.isUIBound(info)) pluginIndex.remove(info);
+			}
+			catch (final InstantiableException exc) {
+				// NB: Leave invalid services for the ServiceHelper to report.
+			}
+		}
+		new ServiceHelper(context, serviceTypes()).loadServices();
+
+		final ImageJ ij = new ImageJ(context);
+		ij.ui().setHeadless(true);
+		return ij;
+	}
+
+	// -- ImageJ methods --
+
+	/** Gets whether this gateway creates services on demand. */
+	public boolean isLazy() {
+		return lazy;
 	}
 
 	// -- ImageJ methods - gateways --
@@ -103,7 +265,25 @@ public SCIFIO scifio() {
 	 * @return The {@link AnimationService} of this application context.
 	 */
 	public AnimationService animation() {
-		return get(AnimationService.class);
+		return service(ANIMATION_INDEX, AnimationService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link BatchPipelineService}.
+	 *
+	 * @return The {@link BatchPipelineService} of this application context.
+	 */
+	public BatchPipelineService batch() {
+		return service(BATCH_INDEX, BatchPipelineService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link BlockService}.
+	 *
+	 * @return The {@link BlockService} of this application context.
+	 */
+	public BlockService blocks() {
+		return service(BLOCKS_INDEX, BlockService.class);
 	}
 
 	/**
@@ -112,7 +292,7 @@ public AnimationService animation() {
 	 * @return The {@link DatasetService} of this application context.
 	 */
 	public DatasetService dataset() {
-		return get(DatasetService.class);
+		return service(DATASET_INDEX, DatasetService.class);
 	}
 
 	/**
@@ -121,7 +301,16 @@ public DatasetService dataset() {
 	 * @return The {@link ImageDisplayService} of this application context.
 	 */
 	public ImageDisplayService imageDisplay() {
-		return get(ImageDisplayService.class);
+		return service(IMAGE_DISPLAY_INDEX, ImageDisplayService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link LazySamplerService}.
+	 *
+	 * @return The {@link LazySamplerService} of this application context.
+	 */
+	public LazySamplerService lazySampler() {
+		return service(LAZY_SAMPLER_INDEX, LazySamplerService.class);
 	}
 
 	/**
@@ -130,7 +319,25 @@ public ImageDisplayService imageDisplay() {
 	 * @return The {@link LUTService} of this application context.
 	 */
 	public LUTService lut() {
-		return get(LUTService.class);
+		return service(LUT_INDEX, LUTService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link MetricsService}.
+	 *
+	 * @return The {@link MetricsService} of this application context.
+	 */
+	public MetricsService metrics() {
+		return service(METRICS_INDEX, MetricsService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link MovieExportService}.
+	 *
+	 * @return The {@link MovieExportService} of this application context.
+	 */
+	public MovieExportService movieExport() {
+		return service(MOVIE_EXPORT_INDEX, MovieExportService.class);
 	}
 
 	/**
@@ -139,7 +346,7 @@ public LUTService lut() {
 	 * @return The {@link NotebookService} of this application context.
 	 */
 	public NotebookService notebook() {
-		return get(NotebookService.class);
+		return service(NOTEBOOK_INDEX, NotebookService.class);
 	}
 
 	/**
@@ -148,7 +355,16 @@ public NotebookService notebook() {
 	 * @return The {@link OpService} of this application context.
 	 */
 	public OpService op() {
-		return get(OpService.class);
+		return service(OP_INDEX, OpService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link OpCacheService}.
+	 *
+	 * @return The {@link OpCacheService} of this application context.
+	 */
+	public OpCacheService opCache() {
+		return service(OP_CACHE_INDEX, OpCacheService.class);
 	}
 
 	/**
@@ -157,7 +373,7 @@ public OpService op() {
 	 * @return The {@link OverlayService} of this application context.
 	 */
 	public OverlayService overlay() {
-		return get(OverlayService.class);
+		return service(OVERLAY_INDEX, OverlayService.class);
 	}
 
 	/**
@@ -166,7 +382,16 @@ public OverlayService overlay() {
 	 * @return The {@link RenderingService} of this application context.
 	 */
 	public RenderingService rendering() {
-		return get(RenderingService.class);
+		return service(RENDERING_INDEX, RenderingService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link RenderPipelineService}.
+	 *
+	 * @return The {@link RenderPipelineService} of this application context.
+	 */
+	public RenderPipelineService renderPipeline() {
+		return service(RENDER_PIPELINE_INDEX, RenderPipelineService.class);
 	}
 
 	/**
@@ -175,7 +400,7 @@ public RenderingService rendering() {
 	 * @return The {@link SamplerService} of this application context.
 	 */
 	public SamplerService sampler() {
-		return get(SamplerService.class);
+		return service(SAMPLER_INDEX, SamplerService.class);
 	}
 
 	/**
@@ -184,7 +409,25 @@ public SamplerService sampler() {
 	 * @return The {@link ScreenCaptureService} of this application context.
 	 */
 	public ScreenCaptureService screenCapture() {
-		return get(ScreenCaptureService.class);
+		return service(SCREEN_CAPTURE_INDEX, ScreenCaptureService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link DatasetStorageService}.
+	 *
+	 * @return The {@link DatasetStorageService} of this application context.
+	 */
+	public DatasetStorageService storage() {
+		return service(STORAGE_INDEX, DatasetStorageService.class);
+	}
+
+	/**
+	 * Gets this application context's {@link StreamingDatasetService}.
+	 *
+	 * @return The {@link StreamingDatasetService} of this application context.
+	 */
+	public StreamingDatasetService streaming() {
+		return service(STREAMING_INDEX, StreamingDatasetService.class);
 	}
 
 	/**
@@ -193,7 +436,7 @@ public ScreenCaptureService screenCapture() {
 	 * @return The {@link UpdateService} of this application context.
 	 */
 	public UpdateService update() {
-		return get(UpdateService.class);
+		return service(UPDATE_INDEX, UpdateService.class);
 	}
 
 	/**
@@ -202,7 +445,7 @@ public UpdateService update() {
 	 * @return The {@link UploaderService} of this application context.
 	 */
 	public UploaderService uploader() {
-		return get(UploaderService.class);
+		return service(UPLOADER_INDEX, UploaderService.class);
 	}
 
 	/**
@@ -211,13 +454,104 @@ public UploaderService uploader() {
 	 * @return The {@link WindowService} of this application context.
 	 */
 	public WindowService window() {
-		return get(WindowService.class);
+		return service(WINDOW_INDEX, WindowService.class);
 	}
 
 	// -- Gateway methods --
 
+	@Override
+	public <S extends Service> S get(final Class<S> serviceClass) {
+		if (!lazy) return super.get(serviceClass);
+		final Context context = getContext();
+		final S service = context.getService(serviceClass);
+		if (service != null) return service;
+		synchronized (this) {
+			if (serviceHelper == null) serviceHelper = new ServiceHelper(context);
+			return serviceHelper.loadService(serviceClass);
+		}
+	}
+
 	@Override
 	public String getShortName() {
 		return "ij";
 	}
+
+	/**
+	 * Launches ImageJ and, unless it runs headless, checks for updates in the
+	 * background; see {@link UpdateCheck}.
+	 */
+	@Override
+	public void launch(final String... args) {
+		super.launch(args);
+		if (!ui().isHeadless()) new UpdateCheck(this).start();
+	}
+
+	// -- Event handlers --
+
+	/** Forgets the cached services once the context is being disposed. */
+	@EventHandler
+	protected void onEvent(final ContextDisposingEvent evt) {
+		synchronized (services) {
+			disposing = true;
+			for (int i = 0; i < services.length(); i++) {
+				services.set(i, null);
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Gets the service of the given type, resolving it via {@link #get(Class)}
+	 * only on first access. Subsequent calls are a simple array lookup, which
+	 * matters for callers invoking accessors like {@link #op()} in tight loops.
+	 */
+	private <S extends Service> S service(final int index,
+		final Class<S> serviceClass)
+	{
+		final Service cached = services.get(index);
+		if (cached != null) {
+			@SuppressWarnings("unchecked")
+			final S s = (S) cached;
+			return s;
+		}
+		final S service = get(serviceClass);
+		synchronized (services) {
+			if (!subscribed) {
+				// NB: A lazy gateway may have gained an event service meanwhile.
+				final EventService eventService = //
+					getContext().getService(EventService.class);
+				if (eventService == null) return service;
+				eventService.subscribe(this);
+				subscribed = true;
+			}
+			// NB: Do not cache services which are being disposed.
+			if (!disposing) services.set(index, service);
+		}
+		return service;
+	}
+
+	/**
+	 * Creates a context with all services compatible with the given types, the
+	 * way the {@link #ImageJ()} constructor does.
+	 * 
+	 * @param profiler If non-null, profiles the creation of each service; the
+	 *          context is otherwise built exactly as it would be without one.
+	 */
+	static Context createContext(
+		final Collection<Class<? extends Service>> serviceTypes,
+		final StartupProfiler profiler)
+	{
+		final List<Class<? extends Service>> noServices = Collections.emptyList();
+		final Context context = new Context(noServices, PluginIndexCache.load());
+		if (profiler != null) profiler.loadServices(context, serviceTypes);
+		new ServiceHelper(context, serviceTypes).loadServices();
+		return context;
+	}
+
+	/** Gets the service types included in a full ImageJ context. */
+	static List<Class<? extends Service>> serviceTypes() {
+		return Arrays.<Class<? extends Service>> asList(SciJavaService.class,
+			SCIFIOService.class, ImageJService.class);
+	}
 }
@@ -0,0 +1,356 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.scijava.Disposable;
+import org.scijava.display.Display;
+import org.scijava.object.ObjectService;
+
+/**
+ * A pool of pre-initialized {@link ImageJ} gateways.
+ * <p>
+ * Creating a gateway is expensive, so programs which run many short tasks
+ * should lease an existing gateway from a pool, rather than creating and
+ * disposing one per task. When a gateway is returned to the pool, all
+ * displays are closed and all objects registered with the
+ * {@link ObjectService} since the gateway was created are removed, so that
+ * tasks do not see each other's datasets.
+ * </p>
+ * <p>
+ * A gateway which cannot be reset is replaced by a new one. If that fails as
+ * well, the pool remembers the missing gateway, and creates it on demand the
+ * next time a gateway is leased; hence a pool never shrinks, and a lease never
+ * waits for a gateway which no longer exists.
+ * </p>
+ */
+public class ImageJPool implements Disposable {
+
+	private final Supplier<ImageJ> factory;
+
+	/** Gateways available for lease; guarded by {@code this}. */
+	private final Deque<ImageJ> idle = new ArrayDeque<>();
+
+	/** Gateways currently leased; guarded by {@code this}. */
+	private final Set<ImageJ> leased = //
+		Collections.newSetFromMap(new IdentityHashMap<ImageJ, Boolean>());
+
+	/** Objects each gateway had when created, which are kept when resetting. */
+	private final Map<ImageJ, Set<Object>> baselines =
+		Collections.synchronizedMap(new IdentityHashMap<ImageJ, Set<Object>>());
+
+	private final AtomicLong leaseCount = new AtomicLong();
+	private final AtomicLong waitTime = new AtomicLong();
+	private final LongAccumulator maxWaitTime = new LongAccumulator(Math::max, 0);
+
+	/** Number of gateways which need to be recreated; guarded by {@code this}. */
+	private int missing;
+
+	private boolean disposed;
+
+	/** Creates a pool of the given number of full ImageJ gateways. */
+	public ImageJPool(final int size) {
+		this(size, ImageJ::new);
+	}
+
+	/** Creates a pool of the given number of gateways from the given factory. */
+	public ImageJPool(final int size, final Supplier<ImageJ> factory) {
+		if (size < 1) throw new IllegalArgumentException("Invalid size: " + size);
+		this.factory = factory;
+		try {
+			for (int i = 0; i < size; i++) {
+				idle.add(create());
+			}
+		}
+		catch (final RuntimeException | Error exc) {
+			// NB: Do not leak the gateways created so far.
+			dispose();
+			throw exc;
+		}
+	}
+
+	// -- ImageJPool methods --
+
+	/**
+	 * Leases a gateway, waiting for one to become available if needed. If a
+	 * gateway went missing, it is recreated instead of waiting.
+	 * 
+	 * @throws IllegalStateException if the pool is, or gets, disposed.
+	 */
+	public ImageJ lease() throws InterruptedException {
+		final long start = System.nanoTime();
+		synchronized (this) {
+			while (idle.isEmpty()) {
+				checkDisposed();
+				if (missing > 0) {
+					missing--;
+					break;
+				}
+				wait();
+			}
+			if (!idle.isEmpty()) return leased(idle.remove(), start);
+		}
+		return recreate(start);
+	}
+
+	/**
+	 * Leases a gateway, waiting up to the given time for one to become
+	 * available.
+	 * 
+	 * @return The leased gateway, or null if none became available in time.
+	 * @throws IllegalStateException if the pool is, or gets, disposed.
+	 */
+	public ImageJ lease(final long timeout, final TimeUnit unit)
+		throws InterruptedException
+	{
+		final long start = System.nanoTime();
+		final long deadline = start + unit.toNanos(timeout);
+		synchronized (this) {
+			while (idle.isEmpty()) {
+				checkDisposed();
+				if (missing > 0) {
+					missing--;
+					break;
+				}
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) return null;
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+			if (!idle.isEmpty()) return leased(idle.remove(), start);
+		}
+		return recreate(start);
+	}
+
+	/**
+	 * Resets the given leased gateway, and returns it to the pool. A gateway
+	 * which cannot be reset is replaced, or recreated by a later lease if it
+	 * cannot be replaced right away.
+	 * 
+	 * @throws IllegalArgumentException if the gateway is not currently leased
+	 *           from this pool, e.g. because it was already released.
+	 */
+	public void release(final ImageJ ij) {
+		synchronized (this) {
+			if (!leased.remove(ij)) {
+				throw new IllegalArgumentException(
+					"Not a leased gateway of this pool");
+			}
+			if (disposed) {
+				destroy(ij);
+				return;
+			}
+		}
+		ImageJ next;
+		try {
+			reset(ij);
+			next = ij;
+		}
+		catch (final RuntimeException exc) {
+			// NB: The task left the gateway in a bad state; replace it.
+			destroy(ij);
+			try {
+				next = create();
+			}
+			catch (final RuntimeException exc2) {
+				next = null;
+			}
+		}
+		synchronized (this) {
+			if (next == null) {
+				// NB: Leave it to the next lease to try again.
+				missing++;
+			}
+			else if (disposed) {
+				destroy(next);
+				return;
+			}
+			else idle.add(next);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Runs the given task with a leased gateway, returning it afterwards.
+	 * Failures to return the gateway never hide the outcome of the task.
+	 */
+	public <T> T run(final Function<ImageJ, T> task)
+		throws InterruptedException
+	{
+		final ImageJ ij = lease();
+		final T result;
+		try {
+			result = task.apply(ij);
+		}
+		catch (final RuntimeException | Error exc) {
+			try {
+				release(ij);
+			}
+			catch (final RuntimeException exc2) {
+				exc.addSuppressed(exc2);
+			}
+			throw exc;
+		}
+		try {
+			release(ij);
+		}
+		catch (final RuntimeException exc) {
+			// NB: The task succeeded; its gateway is recreated when needed.
+		}
+		return result;
+	}
+
+	/** Gets the number of gateways currently leased. */
+	public synchronized int getActiveCount() {
+		return leased.size();
+	}
+
+	/** Gets the number of gateways currently available for lease. */
+	public synchronized int getIdleCount() {
+		return idle.size();
+	}
+
+	/** Gets the total number of leases granted so far. */
+	public long getLeaseCount() {
+		return leaseCount.get();
+	}
+
+	/** Gets the total time spent waiting for leases, in nanoseconds. */
+	public long getWaitTime() {
+		return waitTime.get();
+	}
+
+	/** Gets the longest time spent waiting for a lease, in nanoseconds. */
+	public long getMaxWaitTime() {
+		return maxWaitTime.get();
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		final List<ImageJ> gateways;
+		synchronized (this) {
+			disposed = true;
+			gateways = new ArrayList<>(idle);
+			idle.clear();
+			// NB: Wake up any threads waiting for a lease, so that they fail.
+			notifyAll();
+		}
+		for (final ImageJ ij : gateways) {
+			destroy(ij);
+		}
+	}
+
+	// -- Helper methods --
+
+	private ImageJ create() {
+		final ImageJ ij = factory.get();
+		final Set<Object> baseline = //
+			Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		baseline.addAll(ij.object().getIndex().getAll());
+		baselines.put(ij, baseline);
+		return ij;
+	}
+
+	private void destroy(final ImageJ ij) {
+		baselines.remove(ij);
+		try {
+			ij.getContext().dispose();
+		}
+		catch (final RuntimeException exc) {
+			// NB: The gateway is gone either way.
+		}
+	}
+
+	/**
+	 * Creates a gateway in place of a missing one, and leases it. If that
+	 * fails, the gateway remains missing, for the next lease to try again.
+	 */
+	private ImageJ recreate(final long start) {
+		final ImageJ ij;
+		try {
+			ij = create();
+		}
+		catch (final RuntimeException | Error exc) {
+			synchronized (this) {
+				missing++;
+				notifyAll();
+			}
+			throw exc;
+		}
+		synchronized (this) {
+			if (!disposed) return leased(ij, start);
+		}
+		destroy(ij);
+		throw new IllegalStateException("Pool is disposed");
+	}
+
+	private ImageJ leased(final ImageJ ij, final long start) {
+		final long wait = System.nanoTime() - start;
+		leaseCount.incrementAndGet();
+		waitTime.addAndGet(wait);
+		maxWaitTime.accumulate(wait);
+		leased.add(ij);
+		return ij;
+	}
+
+	private void reset(final ImageJ ij) {
+		for (final Display<?> display : new ArrayList<>(ij.display()
+			.getDisplays()))
+		{
+			display.close();
+		}
+		final Set<Object> baseline = baselines.get(ij);
+		final ObjectService objectService = ij.object();
+		for (final Object o : new ArrayList<>(objectService.getIndex().getAll())) {
+			if (!baseline.contains(o)) objectService.removeObject(o);
+		}
+	}
+
+	private void checkDisposed() {
+		if (disposed) throw new IllegalStateException("Pool is disposed");
+	}
+
+}
@@ -0,0 +1,425 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.scijava.Cancelable;
+import org.scijava.Disposable;
+import org.scijava.command.CommandInfo;
+import org.scijava.convert.ConvertService;
+import org.scijava.log.LogListener;
+import org.scijava.log.LogMessage;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleException;
+import org.scijava.module.ModuleItem;
+import org.scijava.module.ModuleRunner;
+import org.scijava.module.process.PostprocessorPlugin;
+import org.scijava.module.process.PreprocessorPlugin;
+
+/**
+ * Serves script and command execution requests for a resident {@link ImageJ}
+ * gateway, so that clients need not pay the startup cost of ImageJ for each
+ * invocation.
+ * <p>
+ * The server listens on a port of the loopback interface only, and handles
+ * each connection on its own thread. Since other users of the machine can
+ * reach the loopback interface too, each connection must first authenticate
+ * with an {@code auth <token>} line, giving the random secret which the
+ * server writes to its token file (readable by its owner only; see
+ * {@link #getTokenFile()}). Clients then send one request per line, and may
+ * send any number of requests per connection:
+ * </p>
+ * <ul>
+ * <li>{@code script <path> [<name>=<value> ...]}: runs a script file.</li>
+ * <li>{@code command <class-name> [<name>=<value> ...]}: runs a command.</li>
+ * <li>{@code ping}: checks that the server is alive.</li>
+ * <li>{@code shutdown}: stops the server.</li>
+ * </ul>
+ * <p>
+ * Arguments containing spaces can be enclosed in double quotes. Input values
+ * are converted to the types of the corresponding module inputs. Each request
+ * runs on the thread of its connection, and the messages logged while it runs,
+ * by that thread and by the threads working on its behalf, are streamed back
+ * as {@code LOG <message>} lines; then each module output is reported as an {@code OUTPUT
+ * <name>=<value>} line, and the request is concluded by an {@code OK} or
+ * {@code ERROR <message>} line. Op invocations are available through scripts.
+ * </p>
+ * 
+ * @see Main
+ */
+public class ImageJServer implements Runnable, Disposable {
+
+	/** Port on which the server listens by default. */
+	public static final int DEFAULT_PORT = 7070;
+
+	/**
+	 * The request a thread works on, inherited by the threads it starts. This
+	 * covers threads outside of the {@link org.scijava.thread.ThreadService},
+	 * e.g. those of a {@link java.util.concurrent.ForkJoinPool}.
+	 */
+	private static final InheritableThreadLocal<Object> REQUEST =
+		new InheritableThreadLocal<>();
+
+	private final ImageJ ij;
+	private final ServerSocket serverSocket;
+	private final File tokenFile;
+	private final String token;
+
+	/**
+	 * Creates a server for the given gateway, listening on the given port of
+	 * the loopback interface (or on any free port, if zero). The token file is
+	 * {@code .imagej/server-<port>.token} in the user's home directory.
+	 */
+	public ImageJServer(final ImageJ ij, final int port) throws IOException {
+		this(ij, port, null);
+	}
+
+	/**
+	 * Creates a server for the given gateway, listening on the given port of
+	 * the loopback interface (or on any free port, if zero), and writing its
+	 * authentication token to the given file (or to the default token file, if
+	 * null).
+	 */
+	public ImageJServer(final ImageJ ij, final int port, final File tokenFile)
+		throws IOException
+	{
+		this.ij = ij;
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.tokenFile = tokenFile != null ? tokenFile : new File(System
+			.getProperty("user.home"), ".imagej" + File.separator + "server-" +
+				getPort() + ".token");
+		token = generateToken();
+		try {
+			writeToken(this.tokenFile, token);
+		}
+		catch (final IOException exc) {
+			serverSocket.close();
+			throw exc;
+		}
+	}
+
+	// -- ImageJServer methods --
+
+	/** Gets the port on which the server is listening. */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Gets the file containing the token with which clients authenticate. Only
+	 * the user running the server may read it, where the file system allows.
+	 * The file is deleted when the server is disposed.
+	 */
+	public File getTokenFile() {
+		return tokenFile;
+	}
+
+	// -- Runnable methods --
+
+	/** Accepts connections until the server is disposed. */
+	@Override
+	public void run() {
+		while (!serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			}
+			catch (final IOException exc) {
+				if (!serverSocket.isClosed()) ij.log().error(exc);
+				continue;
+			}
+			ij.thread().run(() -> serve(socket));
+		}
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		try {
+			serverSocket.close();
+			Files.deleteIfExists(tokenFile.toPath());
+		}
+		catch (final IOException exc) {
+			ij.log().debug(exc);
+		}
+	}
+
+	// -- Helper methods --
+
+	private void serve(final Socket socket) {
+		try (final Socket s = socket;
+				final BufferedReader in = new BufferedReader(new InputStreamReader(s
+					.getInputStream(), StandardCharsets.UTF_8));
+				final PrintWriter out = new PrintWriter(new OutputStreamWriter(s
+					.getOutputStream(), StandardCharsets.UTF_8), true))
+		{
+			if (!authenticate(in.readLine())) {
+				reply(out, "ERROR Unauthorized");
+				return;
+			}
+			reply(out, "OK");
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().isEmpty()) continue;
+				handle(tokenize(line), out);
+			}
+		}
+		catch (final SocketException exc) {
+			// NB: Client disconnected, or server shut down.
+		}
+		catch (final IOException exc) {
+			ij.log().error(exc);
+		}
+	}
+
+	private void handle(final List<String> request, final PrintWriter out) {
+		final String verb = request.get(0);
+		if (verb.equals("ping")) {
+			reply(out, "OK");
+			return;
+		}
+		if (verb.equals("shutdown")) {
+			reply(out, "OK");
+			dispose();
+			return;
+		}
+		if (request.size() < 2) {
+			reply(out, "ERROR Missing argument");
+			return;
+		}
+
+		final Map<String, Object> inputs = new HashMap<>();
+		for (final String arg : request.subList(2, request.size())) {
+			final int equals = arg.indexOf('=');
+			if (equals < 0) {
+				reply(out, "ERROR Invalid input: " + arg);
+				return;
+			}
+			inputs.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+
+		final Thread thread = Thread.currentThread();
+		final Object requestTag = new Object();
+		final LogListener listener = new LogListener() {
+
+			@Override
+			public void messageLogged(final LogMessage message) {
+				// NB: Do not leak the messages of other clients' requests.
+				if (isWorkingOn(thread, requestTag)) reply(out, "LOG " + message);
+			}
+		};
+		REQUEST.set(requestTag);
+		ij.log().addLogListener(listener);
+		try {
+			final Module module;
+			if (verb.equals("script")) {
+				final File file = new File(request.get(1));
+				module = file.isFile() ? ij.script().getScript(file).createModule()
+					: null;
+			}
+			else if (verb.equals("command")) {
+				final CommandInfo info = ij.command().getCommand(request.get(1));
+				module = info == null ? null : ij.module().createModule(info);
+			}
+			else {
+				reply(out, "ERROR Unknown request: " + verb);
+				return;
+			}
+			if (module == null) {
+				reply(out, "ERROR No such " + verb + ": " + request.get(1));
+				return;
+			}
+			assignInputs(module, inputs);
+			new ModuleRunner(ij.getContext(), module, ij.plugin()
+				.createInstancesOfType(PreprocessorPlugin.class), ij.plugin()
+					.createInstancesOfType(PostprocessorPlugin.class)).run();
+			if (module instanceof Cancelable && ((Cancelable) module).isCanceled()) {
+				reply(out, "ERROR Canceled: " + ((Cancelable) module)
+					.getCancelReason());
+				return;
+			}
+			for (final Map.Entry<String, Object> output : module.getOutputs()
+				.entrySet())
+			{
+				reply(out, "OUTPUT " + output.getKey() + "=" + output.getValue());
+			}
+			reply(out, "OK");
+		}
+		catch (final ModuleException exc) {
+			reply(out, "ERROR " + exc);
+		}
+		catch (final RuntimeException exc) {
+			reply(out, "ERROR " + exc);
+		}
+		finally {
+			ij.log().removeLogListener(listener);
+			REQUEST.remove();
+		}
+	}
+
+	/**
+	 * Checks whether the current thread works on the request with the given
+	 * thread and tag. Threads of the {@link org.scijava.thread.ThreadService}
+	 * are traced back to the thread which queued their task; since they are
+	 * reused, their inherited request tags may be stale. Any other thread
+	 * works on the request it inherited.
+	 */
+	private boolean isWorkingOn(final Thread thread, final Object requestTag) {
+		final Thread current = Thread.currentThread();
+		Thread t = current;
+		while (t != null) {
+			if (t == thread) return true;
+			t = ij.thread().getParent(t);
+		}
+		if (ij.thread().getParent(current) != null) return false;
+		return REQUEST.get() == requestTag;
+	}
+
+	/** Converts the given inputs to the types of the module's inputs. */
+	private void assignInputs(final Module module,
+		final Map<String, Object> inputs)
+	{
+		final ConvertService convertService = ij.get(ConvertService.class);
+		for (final Map.Entry<String, Object> entry : inputs.entrySet()) {
+			final ModuleItem<?> item = module.getInfo().getInput(entry.getKey());
+			if (item == null) {
+				throw new IllegalArgumentException("No such input: " + entry
+					.getKey());
+			}
+			module.setInput(item.getName(), convertService.convert(entry.getValue(),
+				item.getType()));
+			module.resolveInput(item.getName());
+		}
+	}
+
+	/** Checks the first line of a connection for the authentication token. */
+	private boolean authenticate(final String line) {
+		if (line == null || !line.startsWith("auth ")) return false;
+		final byte[] given = line.substring(5).trim().getBytes(
+			StandardCharsets.UTF_8);
+		// NB: Compare in constant time, to not leak the token through timing.
+		return MessageDigest.isEqual(given, token.getBytes(
+			StandardCharsets.UTF_8));
+	}
+
+	private static String generateToken() {
+		final byte[] bytes = new byte[32];
+		new SecureRandom().nextBytes(bytes);
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : bytes) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+
+	/** Writes the token to a file which only its owner can read and write. */
+	private static void writeToken(final File file, final String token)
+		throws IOException
+	{
+		final Path path = file.toPath();
+		final File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create directory: " + dir);
+		}
+		// NB: Recreate the file, so it never has looser permissions.
+		Files.deleteIfExists(path);
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains(
+			"posix"))
+		{
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(
+				PosixFilePermissions.fromString("rw-------")));
+		}
+		else {
+			Files.createFile(path);
+			file.setReadable(false, false);
+			file.setWritable(false, false);
+			file.setReadable(true, true);
+			file.setWritable(true, true);
+		}
+		Files.write(path, token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void reply(final PrintWriter out, final String message) {
+		// NB: Keep each reply on a single line.
+		final String line = message.replace('\r', ' ').replace('\n', ' ');
+		synchronized (out) {
+			out.println(line);
+		}
+	}
+
+	/** Splits a request line on whitespace, honoring double quotes. */
+	private static List<String> tokenize(final String line) {
+		final List<String> tokens = new ArrayList<>();
+		final StringBuilder token = new StringBuilder();
+		boolean quoted = false, inToken = false;
+		for (final char c : line.toCharArray()) {
+			if (c == '"') {
+				quoted = !quoted;
+				inToken = true;
+			}
+			else if (Character.isWhitespace(c) && !quoted) {
+				if (inToken) tokens.add(token.toString());
+				token.setLength(0);
+				inToken = false;
+			}
+			else {
+				token.append(c);
+				inToken = true;
+			}
+		}
+		if (inToken) tokens.add(token.toString());
+		return tokens;
+	}
+
+}
@@ -31,13 +31,37 @@
 
 package net.imagej;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
 /**
  * Launches ImageJ.
+ * <p>
+ * In addition to the usual ImageJ arguments, the following are supported:
+ * </p>
+ * <ul>
+ * <li>{@code --server[=<port>]}: keeps ImageJ running headless, serving
+ * script and command requests from local clients; see {@link ImageJServer}.
+ * </li>
+ * <li>{@code --startup-profile[=tree|json]}: profiles the creation of each
+ * service, printing a report to {@code stderr} once ImageJ has launched; see
+ * {@link StartupProfiler}.</li>
+ * </ul>
+ * <p>
+ * Once its user interface is shown, ImageJ checks for updates in the
+ * background; see {@link UpdateCheck}.
+ * </p>
  * 
  * @author Curtis Rueden
  */
 public final class Main {
 
+	private static final String SERVER = "--server";
+	private static final String STARTUP_PROFILE = "--startup-profile";
+
 	private Main() {
 		// prevent instantiation of utility class
 	}
@@ -51,8 +75,79 @@ public static ImageJ launch(final String... args) {
 	}
 
 	public static void main(final String... args) {
+		final List<String> argList = new ArrayList<>(Arrays.asList(args));
+		final String port = removeOption(argList, SERVER, //
+			String.valueOf(ImageJServer.DEFAULT_PORT));
+		if (port != null) {
+			final int portNumber;
+			try {
+				portNumber = Integer.parseInt(port);
+			}
+			catch (final NumberFormatException exc) {
+				System.err.println("[ERROR] Invalid port: " + port);
+				return;
+			}
+			serve(portNumber);
+			return;
+		}
+
+		final String profile = removeOption(argList, STARTUP_PROFILE, "tree");
+		if (profile == null) {
+			final ImageJ ij = new ImageJ();
+			ij.launch(args);
+			return;
+		}
+
+		final StartupProfiler profiler = new StartupProfiler();
+		final ImageJ ij = profiler.createGateway();
+		profiler.launch(ij, argList.toArray(new String[argList.size()]));
+		System.err.print("json".equals(profile) ? profiler.toJSON() : profiler
+			.toTree());
+	}
+
+	// -- Helper methods --
+
+	/** Runs an {@link ImageJServer} until it receives a shutdown request. */
+	private static void serve(final int port) {
 		final ImageJ ij = new ImageJ();
-		ij.launch(args);
+		ij.ui().setHeadless(true);
+		try {
+			final ImageJServer server = new ImageJServer(ij, port);
+			System.out.println("ImageJ server listening on port " + server
+				.getPort() + "; token file: " + server.getTokenFile());
+			server.run();
+		}
+		catch (final IOException exc) {
+			ij.log().error(exc);
+		}
+		finally {
+			ij.getContext().dispose();
+		}
+	}
+
+	/**
+	 * Removes the given option from the argument list.
+	 * 
+	 * @return The value of the option (given as {@code option=value}), the
+	 *         default value if the option was given without a value, or null if
+	 *         the option was not given at all.
+	 */
+	static String removeOption(final List<String> args,
+		final String option, final String defaultValue)
+	{
+		String value = null;
+		final Iterator<String> iter = args.iterator();
+		while (iter.hasNext()) {
+			final String arg = iter.next();
+			if (arg.equals("--")) break;
+			if (arg.equals(option)) value = defaultValue;
+			else if (arg.startsWith(option + "=")) {
+				value = arg.substring(option.length() + 1);
+			}
+			else continue;
+			iter.remove();
+		}
+		return value;
 	}
 
 }
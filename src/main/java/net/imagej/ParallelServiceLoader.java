@@ -0,0 +1,348 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import net.imagej.plugin.PluginIndexCache;
+
+import org.scijava.Context;
+import org.scijava.Priority;
+import org.scijava.event.EventService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.service.Service;
+import org.scijava.service.ServiceHelper;
+import org.scijava.service.event.ServicesLoadedEvent;
+
+/**
+ * Creates a SciJava context whose services are initialized concurrently.
+ * <p>
+ * The dependency graph of the services is derived from their
+ * {@link Parameter} fields. Services are then created in waves: each wave
+ * consists of the services whose dependencies were all created by earlier
+ * waves, and its services are instantiated and initialized in parallel on a
+ * {@link ForkJoinPool}. Once a wave completes, its services are added to the
+ * context in priority order.
+ * </p>
+ * <p>
+ * If any service of a wave fails to initialize, no further waves are started,
+ * and an {@link IllegalArgumentException} is thrown describing every failure
+ * of the wave in priority order, irrespective of the order in which the
+ * failures occurred.
+ * </p>
+ * <p>
+ * NB: Services which look up other services dynamically during
+ * {@link Service#initialize()}, rather than declaring them as parameters,
+ * may observe fewer services than when initialized sequentially.
+ * </p>
+ */
+public class ParallelServiceLoader {
+
+	private final ForkJoinPool pool;
+
+	/** Creates a loader which uses the common fork-join pool. */
+	public ParallelServiceLoader() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/** Creates a loader which uses the given fork-join pool. */
+	public ParallelServiceLoader(final ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	// -- ParallelServiceLoader methods --
+
+	/**
+	 * Creates a new context with all services compatible with the given types.
+	 * 
+	 * @throws IllegalArgumentException if any service fails to initialize.
+	 */
+	public Context createContext(
+		final Collection<Class<? extends Service>> serviceTypes)
+	{
+		final List<Class<? extends Service>> noServices = Collections.emptyList();
+		final Context context = //
+			new Context(noServices, PluginIndexCache.load());
+		try {
+			loadServices(context, serviceTypes);
+		}
+		catch (final RuntimeException exc) {
+			context.dispose();
+			throw exc;
+		}
+		return context;
+	}
+
+	/**
+	 * Adds all services compatible with the given types to the given context.
+	 * 
+	 * @throws IllegalArgumentException if any service fails to initialize.
+	 */
+	public void loadServices(final Context context,
+		final Collection<Class<? extends Service>> serviceTypes)
+	{
+		final PluginIndex pluginIndex = context.getPluginIndex();
+		final Map<String, Double> priorities = new HashMap<>();
+		for (final PluginInfo<Service> info : pluginIndex.getPlugins(
+			Service.class))
+		{
+			priorities.put(info.getClassName(), info.getPriority());
+		}
+
+		// NB: Nearly every service needs the event service, so it goes first.
+		final ServiceHelper serviceHelper = new ServiceHelper(context);
+		if (context.getService(EventService.class) == null) {
+			serviceHelper.loadService(EventService.class);
+		}
+
+		final List<Class<? extends Service>> allClasses = ServiceClasses.find(
+			pluginIndex, Collections.<Class<? extends Service>> singleton(
+				Service.class));
+		final Map<Class<? extends Service>, Node> plan = new LinkedHashMap<>();
+		for (final Class<? extends Service> c : ServiceClasses.find(pluginIndex,
+			serviceTypes))
+		{
+			plan(context, allClasses, plan, c);
+		}
+
+		for (final List<Node> wave : waves(plan)) {
+			sort(wave, priorities);
+			final Map<Node, Future<Service>> futures = new LinkedHashMap<>();
+			for (final Node node : wave) {
+				final Double priority = priorities.get(node.serviceClass.getName());
+				futures.put(node, pool.submit(new Callable<Service>() {
+
+					@Override
+					public Service call() throws Exception {
+						return create(context, node.serviceClass, priority);
+					}
+				}));
+			}
+
+			final List<Service> services = new ArrayList<>();
+			final Map<Class<?>, Throwable> failures = new LinkedHashMap<>();
+			for (final Map.Entry<Node, Future<Service>> entry : futures.entrySet()) {
+				try {
+					services.add(entry.getValue().get());
+				}
+				catch (final ExecutionException exc) {
+					failures.put(entry.getKey().serviceClass, exc.getCause());
+				}
+				catch (final InterruptedException exc) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(exc);
+				}
+			}
+			if (!failures.isEmpty()) throw failure(failures);
+
+			for (final Service service : services) {
+				context.getServiceIndex().add(service);
+				service.registerEventHandlers();
+			}
+		}
+
+		final EventService eventService = context.getService(EventService.class);
+		if (eventService != null) {
+			eventService.publishLater(new ServicesLoadedEvent());
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Adds the given service class and its dependencies to the plan.
+	 * 
+	 * @return The node responsible for the given class, or null if a compatible
+	 *         service already exists in the context.
+	 */
+	private Node plan(final Context context,
+		final List<Class<? extends Service>> allClasses,
+		final Map<Class<? extends Service>, Node> plan,
+		final Class<? extends Service> c)
+	{
+		if (context.getService(c) != null) return null;
+
+		// NB: As with the ServiceHelper, a service which is already planned
+		// satisfies any requests for its supertypes.
+		for (final Node node : plan.values()) {
+			if (c.isAssignableFrom(node.serviceClass)) return node;
+		}
+
+		final Node node = new Node(c);
+		plan.put(c, node);
+		for (final Class<? extends Service> type : ServiceClasses.dependencies(
+			c))
+		{
+			if (context.getService(type) != null) continue;
+			Node dependency = null;
+			for (final Node n : plan.values()) {
+				if (!type.isAssignableFrom(n.serviceClass)) continue;
+				dependency = n;
+				break;
+			}
+			if (dependency == null) {
+				final Class<? extends Service> impl = //
+					ServiceClasses.resolve(allClasses, type);
+				if (impl == null) continue; // reported when injecting
+				dependency = plan(context, allClasses, plan, impl);
+			}
+			if (dependency != null && dependency != node) {
+				node.dependencies.add(dependency);
+			}
+		}
+		return node;
+	}
+
+	/** Groups the planned nodes into waves of mutually independent services. */
+	private List<List<Node>> waves(final Map<Class<? extends Service>, Node> plan) {
+		final TreeMap<Integer, List<Node>> waves = new TreeMap<>();
+		for (final Node node : plan.values()) {
+			final int level = level(node, new ArrayList<Node>());
+			if (!waves.containsKey(level)) waves.put(level, new ArrayList<Node>());
+			waves.get(level).add(node);
+		}
+		return new ArrayList<>(waves.values());
+	}
+
+	/**
+	 * Sorts the nodes of a wave by decreasing priority, and by class name among
+	 * services of equal priority.
+	 */
+	private void sort(final List<Node> wave,
+		final Map<String, Double> priorities)
+	{
+		Collections.sort(wave, new Comparator<Node>() {
+
+			@Override
+			public int compare(final Node n1, final Node n2) {
+				final String name1 = n1.serviceClass.getName();
+				final String name2 = n2.serviceClass.getName();
+				final int result = Double.compare(priority(priorities, name2),
+					priority(priorities, name1));
+				return result != 0 ? result : name1.compareTo(name2);
+			}
+		});
+	}
+
+	private double priority(final Map<String, Double> priorities,
+		final String className)
+	{
+		final Double priority = priorities.get(className);
+		return priority == null ? Priority.NORMAL_PRIORITY : priority;
+	}
+
+	private int level(final Node node, final List<Node> path) {
+		if (node.level >= 0) return node.level;
+		if (path.contains(node)) {
+			throw new IllegalArgumentException("Circular service dependency: " +
+				node.serviceClass.getName());
+		}
+		path.add(node);
+		int level = 0;
+		for (final Node dependency : node.dependencies) {
+			level = Math.max(level, level(dependency, path) + 1);
+		}
+		path.remove(path.size() - 1);
+		node.level = level;
+		return level;
+	}
+
+	/** Instantiates, injects and initializes a service. */
+	private Service create(final Context context,
+		final Class<? extends Service> c, final Double priority)
+		throws InstantiationException, IllegalAccessException
+	{
+		final Service service = c.newInstance();
+		service.setContext(context);
+		if (priority != null) service.setPriority(priority);
+		for (final Field f : ServiceClasses.parameters(c)) {
+			if (!Service.class.isAssignableFrom(f.getType())) continue;
+			final Class<? extends Service> type = //
+				f.getType().asSubclass(Service.class);
+			final Service dependency = context.getService(type);
+			if (dependency == null && f.getAnnotation(Parameter.class).required()) {
+				throw new IllegalArgumentException("Required service is missing: " +
+					type.getName());
+			}
+			f.setAccessible(true);
+			f.set(service, dependency);
+		}
+		service.initialize();
+		return service;
+	}
+
+	private IllegalArgumentException failure(
+		final Map<Class<?>, Throwable> failures)
+	{
+		final StringBuilder sb = new StringBuilder("Invalid services:");
+		for (final Map.Entry<Class<?>, Throwable> entry : failures.entrySet()) {
+			sb.append("\n\t").append(entry.getKey().getName()).append(": ").append(
+				entry.getValue());
+		}
+		IllegalArgumentException exc = null;
+		for (final Throwable t : failures.values()) {
+			if (exc == null) exc = new IllegalArgumentException(sb.toString(), t);
+			else exc.addSuppressed(t);
+		}
+		return exc;
+	}
+
+	// -- Helper classes --
+
+	/** A service to be created, along with the services it depends on. */
+	private static class Node {
+
+		private final Class<? extends Service> serviceClass;
+		private final List<Node> dependencies = new ArrayList<>();
+		private int level = -1;
+
+		public Node(final Class<? extends Service> serviceClass) {
+			this.serviceClass = serviceClass;
+		}
+	}
+
+}
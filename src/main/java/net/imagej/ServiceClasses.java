@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import net.imagej.display.WindowService;
+
+import org.scijava.InstantiableException;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.service.Service;
+
+/**
+ * Utility methods for working with the available service classes, as needed
+ * when services are instantiated outside of the usual
+ * {@link org.scijava.service.ServiceHelper#loadServices()} sequence.
+ */
+final class ServiceClasses {
+
+	private ServiceClasses() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Gets the enabled service classes compatible with any of the given types,
+	 * in priority order.
+	 */
+	public static List<Class<? extends Service>> find(
+		final PluginIndex pluginIndex,
+		final Collection<Class<? extends Service>> serviceTypes)
+	{
+		final List<Class<? extends Service>> serviceClasses = new ArrayList<>();
+		for (final PluginInfo<Service> info : pluginIndex.getPlugins(
+			Service.class))
+		{
+			if (!info.isEnabled()) continue;
+			final Class<? extends Service> c;
+			try {
+				c = info.loadClass();
+			}
+			catch (final InstantiableException exc) {
+				// NB: Leave invalid services for the ServiceHelper to report.
+				continue;
+			}
+			for (final Class<? extends Service> serviceType : serviceTypes) {
+				if (serviceType.isAssignableFrom(c)) {
+					serviceClasses.add(c);
+					break;
+				}
+			}
+		}
+		return serviceClasses;
+	}
+
+	/**
+	 * Gets the highest priority service class compatible with the given type.
+	 * 
+	 * @return The matching service class, or null if none.
+	 */
+	public static Class<? extends Service> resolve(
+		final List<Class<? extends Service>> serviceClasses, final Class<?> type)
+	{
+		for (final Class<? extends Service> c : serviceClasses) {
+			if (type.isAssignableFrom(c)) return c;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets whether the given service class is tied to a graphical user
+	 * interface, and hence of no use to headless programs: that is, AWT and
+	 * Swing services, as well as any {@link WindowService}.
+	 */
+	public static boolean isUIBound(final PluginInfo<Service> info)
+		throws InstantiableException
+	{
+		// NB: Check the name first, to avoid loading AWT and Swing classes.
+		final String name = info.getClassName();
+		if (name.contains(".awt.") || name.contains(".swing.")) return true;
+		return WindowService.class.isAssignableFrom(info.loadClass());
+	}
+
+	/** Gets the {@link Parameter} fields of the given service class. */
+	public static List<Field> parameters(final Class<?> serviceClass) {
+		final List<Field> fields = new ArrayList<>();
+		for (Class<?> c = serviceClass; c != null; c = c.getSuperclass()) {
+			for (final Field f : c.getDeclaredFields()) {
+				if (f.isAnnotationPresent(Parameter.class)) fields.add(f);
+			}
+		}
+		return fields;
+	}
+
+	/** Gets the types of services the given service class depends on. */
+	public static List<Class<? extends Service>> dependencies(
+		final Class<?> serviceClass)
+	{
+		final List<Class<? extends Service>> types = new ArrayList<>();
+		for (final Field f : parameters(serviceClass)) {
+			if (!Service.class.isAssignableFrom(f.getType())) continue;
+			types.add(f.getType().asSubclass(Service.class));
+		}
+		return types;
+	}
+
+}
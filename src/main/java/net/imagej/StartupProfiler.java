@@ -0,0 +1,418 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.scijava.Context;
+import org.scijava.event.EventService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.service.Service;
+import org.scijava.service.ServiceHelper;
+
+/**
+ * Records where the time goes while an {@link ImageJ} gateway starts up.
+ * <p>
+ * Services are created one at a time in the usual priority order, but the
+ * dependencies of each service are created first, and profiled separately.
+ * This yields a tree of services, each annotated with its own creation time,
+ * split into construction (instantiation and injection) and
+ * {@link Service#initialize()}, the time spent waiting for its dependencies,
+ * and the bytes allocated while creating it.
+ * </p>
+ * <p>
+ * The context is built by the same code as in the regular
+ * {@link ImageJ#ImageJ()} startup path, with the same plugin index; the
+ * profiler merely creates the services one step ahead of the
+ * {@link ServiceHelper}, the same way as the {@link ParallelServiceLoader}.
+ * </p>
+ * 
+ * @see Main
+ */
+public class StartupProfiler {
+
+	private final List<Entry> entries = new ArrayList<>();
+	private final Map<String, Double> priorities = new HashMap<>();
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	private long servicesStart;
+	private long contextTime = -1;
+	private long servicesTime = -1;
+	private long gatewayTime = -1;
+	private long launchTime = -1;
+
+	// -- StartupProfiler methods --
+
+	/**
+	 * Creates a new gateway with all ImageJ, SCIFIO and SciJava services,
+	 * profiling the creation of each service.
+	 */
+	public ImageJ createGateway() {
+		return createGateway(ImageJ.serviceTypes());
+	}
+
+	/**
+	 * Creates a new gateway with all services compatible with the given types,
+	 * profiling the creation of each service.
+	 */
+	public ImageJ createGateway(
+		final Collection<Class<? extends Service>> serviceTypes)
+	{
+		final long start = System.nanoTime();
+		final Context context = ImageJ.createContext(serviceTypes, this);
+		final long end = System.nanoTime();
+		contextTime = servicesStart - start;
+		servicesTime = end - servicesStart;
+
+		final ImageJ ij = new ImageJ(context);
+		gatewayTime = System.nanoTime() - end;
+		return ij;
+	}
+
+	/** Launches the given gateway, recording the time taken to do so. */
+	public void launch(final ImageJ ij, final String... args) {
+		final long start = System.nanoTime();
+		ij.launch(args);
+		launchTime = System.nanoTime() - start;
+	}
+
+	/** Gets the profiled services, in creation order. */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	/** Formats the profile as a JSON document. */
+	public String toJSON() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"contextMs\": ").append(millis(contextTime)).append(",\n");
+		sb.append("  \"servicesMs\": ").append(millis(servicesTime)).append(",\n");
+		sb.append("  \"gatewayMs\": ").append(millis(gatewayTime)).append(",\n");
+		sb.append("  \"launchMs\": ").append(millis(launchTime)).append(",\n");
+		sb.append("  \"services\": ");
+		appendJSON(sb, entries, "  ");
+		sb.append("\n}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Formats the profile as an indented tree, flame graph style: each service
+	 * is followed by the dependencies it had to wait for.
+	 */
+	public String toTree() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("context:  ").append(millis(contextTime)).append(" ms\n");
+		sb.append("services: ").append(millis(servicesTime)).append(" ms\n");
+		sb.append("gateway:  ").append(millis(gatewayTime)).append(" ms\n");
+		sb.append("launch:   ").append(millis(launchTime)).append(" ms\n");
+		final List<Entry> sorted = new ArrayList<>(entries);
+		Collections.sort(sorted);
+		for (final Entry entry : sorted) {
+			appendTree(sb, entry, "");
+		}
+		return sb.toString();
+	}
+
+	// -- Internal methods --
+
+	/**
+	 * Creates the services compatible with the given types, profiling each one.
+	 * Called by {@link ImageJ#createContext} on the freshly created context,
+	 * right before its {@link ServiceHelper} loads the services as usual; the
+	 * helper then finds them already in place, and only publishes the
+	 * {@link org.scijava.service.event.ServicesLoadedEvent}.
+	 */
+	void loadServices(final Context context,
+		final Collection<Class<? extends Service>> serviceTypes)
+	{
+		servicesStart = System.nanoTime();
+		for (final PluginInfo<Service> info : context.getPluginIndex().getPlugins(
+			Service.class))
+		{
+			priorities.put(info.getClassName(), info.getPriority());
+		}
+		final List<Class<? extends Service>> serviceClasses = //
+			ServiceClasses.find(context.getPluginIndex(), serviceTypes);
+		final Set<Class<?>> pending = new HashSet<>();
+
+		// NB: Services with event handlers need the event service, so it goes
+		// first, as with the ServiceHelper.
+		final Class<? extends Service> eventService = ServiceClasses.resolve(
+			ServiceClasses.find(context.getPluginIndex(), Collections
+				.<Class<? extends Service>> singleton(EventService.class)),
+			EventService.class);
+		if (eventService != null) {
+			final Entry entry = profile(context, serviceClasses, eventService,
+				pending);
+			if (entry != null) entries.add(entry);
+		}
+
+		for (final Class<? extends Service> c : serviceClasses) {
+			final Entry entry = profile(context, serviceClasses, c, pending);
+			if (entry != null) entries.add(entry);
+		}
+	}
+
+	// -- Helper methods --
+
+	private Entry profile(final Context context,
+		final List<Class<? extends Service>> serviceClasses,
+		final Class<? extends Service> c, final Set<Class<?>> pending)
+	{
+		// skip services which already exist, or are in the works
+		if (context.getService(c) != null || !pending.add(c)) return null;
+
+		final long start = System.nanoTime();
+		final List<Entry> dependencies = new ArrayList<>();
+		for (final Class<? extends Service> type : ServiceClasses.dependencies(
+			c))
+		{
+			if (context.getService(type) != null) continue;
+			Class<? extends Service> impl = //
+				ServiceClasses.resolve(serviceClasses, type);
+			if (impl == null) {
+				// NB: The dependency is outside the profiled service types.
+				impl = ServiceClasses.resolve(ServiceClasses.find(context
+					.getPluginIndex(), Collections.<Class<? extends Service>> singleton(
+						type)), type);
+			}
+			if (impl == null) continue; // reported when injecting
+			final Entry dependency = profile(context, serviceClasses, impl,
+				pending);
+			if (dependency != null) dependencies.add(dependency);
+		}
+
+		final long selfStart = System.nanoTime();
+		final long allocStart = allocatedBytes();
+		final Service service;
+		try {
+			service = c.newInstance();
+			service.setContext(context);
+			final Double priority = priorities.get(c.getName());
+			if (priority != null) service.setPriority(priority);
+			inject(context, service);
+		}
+		catch (final InstantiationException | IllegalAccessException exc) {
+			throw new IllegalArgumentException("Invalid service: " + c.getName(),
+				exc);
+		}
+		final long initStart = System.nanoTime();
+		service.initialize();
+		final long initEnd = System.nanoTime();
+		context.getServiceIndex().add(service);
+		service.registerEventHandlers();
+		final long allocEnd = allocatedBytes();
+		final long end = System.nanoTime();
+
+		final long allocated = allocStart < 0 || allocEnd < 0 ? -1 : //
+			allocEnd - allocStart;
+		return new Entry(c.getName(), end - start, end - selfStart, initStart -
+			selfStart, initEnd - initStart, allocated, dependencies);
+	}
+
+	/** Injects the services the given service depends on. */
+	private void inject(final Context context, final Service service)
+		throws IllegalAccessException
+	{
+		for (final Field f : ServiceClasses.parameters(service.getClass())) {
+			if (!Service.class.isAssignableFrom(f.getType())) continue;
+			final Class<? extends Service> type = //
+				f.getType().asSubclass(Service.class);
+			final Service dependency = context.getService(type);
+			if (dependency == null && f.getAnnotation(Parameter.class).required()) {
+				throw new IllegalArgumentException("Required service is missing: " +
+					type.getName());
+			}
+			f.setAccessible(true);
+			f.set(service, dependency);
+		}
+	}
+
+	/** Gets the bytes allocated so far by the current thread, or -1. */
+	private long allocatedBytes() {
+		if (!(threadBean instanceof com.sun.management.ThreadMXBean)) return -1;
+		final com.sun.management.ThreadMXBean bean =
+			(com.sun.management.ThreadMXBean) threadBean;
+		if (!bean.isThreadAllocatedMemorySupported() || //
+			!bean.isThreadAllocatedMemoryEnabled()) return -1;
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static void appendJSON(final StringBuilder sb,
+		final List<Entry> list, final String indent)
+	{
+		if (list.isEmpty()) {
+			sb.append("[]");
+			return;
+		}
+		sb.append("[\n");
+		for (int i = 0; i < list.size(); i++) {
+			final Entry entry = list.get(i);
+			final String in = indent + "    ";
+			sb.append(indent).append("  {\n");
+			sb.append(in).append("\"service\": \"").append(entry.getName()).append(
+				"\",\n");
+			sb.append(in).append("\"totalMs\": ").append(millis(entry
+				.getTotalTime())).append(",\n");
+			sb.append(in).append("\"selfMs\": ").append(millis(entry.getSelfTime()))
+				.append(",\n");
+			sb.append(in).append("\"constructionMs\": ").append(millis(entry
+				.getConstructionTime())).append(",\n");
+			sb.append(in).append("\"initializeMs\": ").append(millis(entry
+				.getInitializeTime())).append(",\n");
+			sb.append(in).append("\"dependencyMs\": ").append(millis(entry
+				.getDependencyTime())).append(",\n");
+			sb.append(in).append("\"allocatedBytes\": ").append(entry
+				.getAllocatedBytes()).append(",\n");
+			sb.append(in).append("\"dependencies\": ");
+			appendJSON(sb, entry.getDependencies(), in);
+			sb.append("\n").append(indent).append("  }");
+			if (i < list.size() - 1) sb.append(",");
+			sb.append("\n");
+		}
+		sb.append(indent).append("]");
+	}
+
+	private static void appendTree(final StringBuilder sb, final Entry entry,
+		final String indent)
+	{
+		sb.append(indent).append(entry.getName());
+		sb.append("  ").append(millis(entry.getTotalTime())).append(" ms");
+		sb.append(" (self ").append(millis(entry.getSelfTime())).append(" ms");
+		sb.append(": new ").append(millis(entry.getConstructionTime()));
+		sb.append(" ms, init ").append(millis(entry.getInitializeTime()));
+		sb.append(" ms");
+		if (entry.getAllocatedBytes() >= 0) {
+			sb.append(", ").append(entry.getAllocatedBytes() / 1024).append(" KiB");
+		}
+		sb.append(")\n");
+		for (final Entry dependency : entry.getDependencies()) {
+			appendTree(sb, dependency, indent + "  ");
+		}
+	}
+
+	private static String millis(final long nanos) {
+		if (nanos < 0) return "null";
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	// -- Helper classes --
+
+	/** Startup profile of a single service. */
+	public static class Entry implements Comparable<Entry> {
+
+		private final String name;
+		private final long totalTime;
+		private final long selfTime;
+		private final long constructionTime;
+		private final long initializeTime;
+		private final long allocatedBytes;
+		private final List<Entry> dependencies;
+
+		public Entry(final String name, final long totalTime, final long selfTime,
+			final long constructionTime, final long initializeTime,
+			final long allocatedBytes, final List<Entry> dependencies)
+		{
+			this.name = name;
+			this.totalTime = totalTime;
+			this.selfTime = selfTime;
+			this.constructionTime = constructionTime;
+			this.initializeTime = initializeTime;
+			this.allocatedBytes = allocatedBytes;
+			this.dependencies = Collections.unmodifiableList(dependencies);
+		}
+
+		/** Gets the class name of the service. */
+		public String getName() {
+			return name;
+		}
+
+		/** Gets the nanoseconds taken, including creating dependencies. */
+		public long getTotalTime() {
+			return totalTime;
+		}
+
+		/** Gets the nanoseconds taken to create the service itself. */
+		public long getSelfTime() {
+			return selfTime;
+		}
+
+		/**
+		 * Gets the nanoseconds taken to instantiate the service and inject its
+		 * dependencies.
+		 */
+		public long getConstructionTime() {
+			return constructionTime;
+		}
+
+		/** Gets the nanoseconds taken by {@link Service#initialize()}. */
+		public long getInitializeTime() {
+			return initializeTime;
+		}
+
+		/** Gets the nanoseconds spent waiting for dependencies. */
+		public long getDependencyTime() {
+			return totalTime - selfTime;
+		}
+
+		/** Gets the bytes allocated creating the service itself, or -1. */
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		/** Gets the dependencies created on behalf of this service. */
+		public List<Entry> getDependencies() {
+			return dependencies;
+		}
+
+		// -- Comparable methods --
+
+		@Override
+		public int compareTo(final Entry that) {
+			// NB: Sort slowest first.
+			return Long.compare(that.totalTime, totalTime);
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * A short, representative headless workload: launching ImageJ the way
+ * {@link Main} does with {@code --headless}, running some common ops, and
+ * writing and reading an image with SCIFIO.
+ * <p>
+ * This is the training run used to generate the class data sharing (AppCDS)
+ * archive of an ImageJ installation, via {@code ImageJ.sh --cds-dump}, so that
+ * subsequent launches can map the classes it loads instead of loading and
+ * verifying them from scratch. The exit status is non-zero if the workload
+ * fails.
+ * </p>
+ */
+public final class StartupTraining {
+
+	private StartupTraining() {
+		// prevent instantiation of utility class
+	}
+
+	public static void main(final String... args) {
+		int status = 1;
+		try {
+			Main.main("--headless");
+			train();
+			status = 0;
+		}
+		catch (final Throwable t) {
+			t.printStackTrace();
+		}
+
+		// NB: Exit explicitly, so lingering non-daemon threads cannot prevent
+		// the JVM from shutting down and writing the archive.
+		System.exit(status);
+	}
+
+	// -- Helper methods --
+
+	private static void train() throws IOException {
+		final ImageJ ij = new ImageJ();
+		try {
+			ij.ui().setHeadless(true);
+
+			final Img<FloatType> img = ArrayImgs.floats(256, 256);
+			final Cursor<FloatType> cursor = img.localizingCursor();
+			while (cursor.hasNext()) {
+				cursor.fwd();
+				cursor.get().setReal(Math.sin(cursor.getDoublePosition(0) / 8) *
+					cursor.getDoublePosition(1));
+			}
+			ij.op().run("filter.gauss", img, 2.0);
+			ij.op().run("stats.mean", img);
+			ij.op().run("threshold.otsu", img);
+
+			final Dataset dataset = ij.dataset().create(img);
+			final File file = File.createTempFile("imagej-training", ".tif");
+			try {
+				ij.scifio().datasetIO().save(dataset, file.getAbsolutePath());
+				ij.scifio().datasetIO().open(file.getAbsolutePath());
+			}
+			finally {
+				file.delete();
+			}
+		}
+		finally {
+			ij.getContext().dispose();
+		}
+	}
+
+}
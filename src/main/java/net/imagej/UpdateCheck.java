@@ -0,0 +1,182 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import net.imagej.updater.UpToDate;
+
+import org.scijava.event.ContextDisposingEvent;
+import org.scijava.event.EventHandler;
+import org.scijava.event.EventService;
+import org.scijava.prefs.PrefService;
+
+/**
+ * Checks for updates in the background, once ImageJ has launched.
+ * <p>
+ * The check runs on a low-priority daemon thread, so that it neither delays
+ * startup nor keeps the JVM alive. It is started by
+ * {@link ImageJ#launch(String...)} whenever a user interface is shown, and
+ * stops using the gateway once its context is disposed.
+ * </p>
+ * <p>
+ * Checking involves querying every update site and checksumming the local
+ * files; the updater caches the checksums itself. The full check is skipped
+ * when the previous one found ImageJ up to date, less than {@link #INTERVAL}
+ * ago, and the path, size and modification time of every file in
+ * {@code jars/} and {@code plugins/} are unchanged since. No file contents
+ * are read for this.
+ * </p>
+ */
+final class UpdateCheck implements Runnable {
+
+	/** How long an up-to-date result is trusted for an unchanged install. */
+	static final long INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+	private static final String FINGERPRINT = "fingerprint";
+	private static final String TIMESTAMP = "timestamp";
+	private static final String RESULT = "result";
+
+	private final ImageJ ij;
+	private final File root;
+
+	private Thread thread;
+	private volatile boolean disposed;
+
+	UpdateCheck(final ImageJ ij) {
+		this.ij = ij;
+		root = ij.app().getApp().getBaseDirectory();
+	}
+
+	// -- UpdateCheck methods --
+
+	/** Starts checking for updates on a background thread. */
+	synchronized void start() {
+		if (root == null) return;
+		final EventService eventService = ij.get(EventService.class);
+		if (eventService != null) eventService.subscribe(this);
+		thread = new Thread(this, "ImageJ-update-check");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	// -- Runnable methods --
+
+	@Override
+	public void run() {
+		try {
+			final PrefService prefs = ij.get(PrefService.class);
+			final String fingerprint = fingerprint(root);
+			final long now = System.currentTimeMillis();
+			final boolean recent = now - prefs.getLong(UpdateCheck.class,
+				TIMESTAMP, 0) < INTERVAL;
+			if (recent && fingerprint.equals(prefs.get(UpdateCheck.class,
+				FINGERPRINT)) && UpToDate.Result.UP_TO_DATE.name().equals(prefs.get(
+					UpdateCheck.class, RESULT)))
+			{
+				ij.log().debug("Skipping update check: installation unchanged");
+				return;
+			}
+
+			final UpToDate.Result result = UpToDate.check(root);
+			// NB: The gateway may have been disposed while checking.
+			if (disposed) return;
+			prefs.put(UpdateCheck.class, FINGERPRINT, fingerprint);
+			prefs.put(UpdateCheck.class, TIMESTAMP, now);
+			prefs.put(UpdateCheck.class, RESULT, result.name());
+			if (result == UpToDate.Result.UPDATEABLE) {
+				ij.log().info("Updates are available: run Help > Update...");
+				ij.status().showStatus("Updates are available");
+			}
+		}
+		catch (final Exception exc) {
+			if (!disposed) ij.log().debug("Update check failed", exc);
+		}
+	}
+
+	// -- Event handlers --
+
+	/** Stops the check once the context is being disposed. */
+	@EventHandler
+	protected synchronized void onEvent(final ContextDisposingEvent evt) {
+		disposed = true;
+		if (thread != null) thread.interrupt();
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Computes a digest of the path, size and modification time of every file
+	 * in the {@code jars/} and {@code plugins/} directories of the given
+	 * installation. No file contents are read.
+	 */
+	static String fingerprint(final File root) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (final NoSuchAlgorithmException exc) {
+			throw new IllegalStateException(exc);
+		}
+		for (final String dirName : new String[] { "jars", "plugins" }) {
+			final Path dir = new File(root, dirName).toPath();
+			if (!Files.isDirectory(dir)) continue;
+			final List<Path> files;
+			try (final Stream<Path> paths = Files.walk(dir)) {
+				files = paths.filter(Files::isRegularFile).sorted().collect(Collectors
+					.toList());
+			}
+			for (final Path file : files) {
+				final String entry = root.toPath().relativize(file) + ":" + Files.size(
+					file) + ":" + Files.getLastModifiedTime(file).toMillis() + "\n";
+				digest.update(entry.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+}
@@ -32,15 +32,20 @@
 package net.imagej.app;
 
 import org.scijava.app.App;
-import org.scijava.log.LogService;
-import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.service.Service;
+import org.scijava.service.ServiceIndex;
 
 /**
  * An extension of {@link ImageJApp} that provides the legacy ImageJ 1.x version
  * in addition to the regular ImageJ version, when {@link #getVersion()} is
  * called.
+ * <p>
+ * The version is computed once, from the {@link VersionRegistry} where
+ * possible. The legacy service is found by name in the context's service index,
+ * so that no classes are loaded when imagej-legacy is absent. When it is not
+ * found, the index is only scanned again once more services were created.
+ * </p>
  * 
  * @author Curtis Rueden
  * @see org.scijava.app.AppService
@@ -52,8 +57,17 @@ public class ToplevelImageJApp extends ImageJApp {
 	// NB: This app uses the same name as ImageJApp, but with a higher priority,
 	// so that it takes precedence in the AppService.
 
-	@Parameter(required = false)
-	private LogService log;
+	private static final String LEGACY_SERVICE =
+		"net.imagej.legacy.LegacyService";
+
+	/** The combined version, once the legacy version is known. */
+	private volatile String version;
+
+	/** The ImageJ version, without the legacy version. */
+	private volatile String baseVersion;
+
+	/** Number of services when the index was last scanned in vain, or -1. */
+	private volatile int scannedServices = -1;
 
 	@Override
 	public String getArtifactId() {
@@ -62,30 +76,43 @@ public String getArtifactId() {
 
 	@Override
 	public String getVersion() {
-		final String version = super.getVersion();
+		final String cached = version;
+		if (cached != null) return cached;
+
+		String base = baseVersion;
+		if (base == null) {
+			base = VersionRegistry.getVersion(getGroupId(), getArtifactId());
+			if (base == null) base = super.getVersion();
+			baseVersion = base;
+		}
 		final String legacyVersion = getLegacyVersion();
-		return version + (legacyVersion == null ? "" : "/" + legacyVersion);
+		if (legacyVersion == null) {
+			// NB: The legacy service may not have been created yet, so we do not
+			// cache the combined version.
+			return base;
+		}
+		return version = base + "/" + legacyVersion;
 	}
 
 	// -- Helper methods --
 
 	private String getLegacyVersion() {
-		try {
-			final Class<?> c = Class.forName("net.imagej.legacy.LegacyService");
-			if (!Service.class.isAssignableFrom(c)) return null; // no imagej-legacy
-
-			@SuppressWarnings("unchecked")
-			final Class<? extends Service> sc = (Class<? extends Service>) c;
-
-			final Service legacyService = getContext().getService(sc);
-			if (legacyService == null) return null; // no LegacyService in context
-
-			return legacyService.getVersion();
-		}
-		catch (final ClassNotFoundException exc) {
-			if (log != null) log.debug(exc);
+		if (getContext() == null) return null;
+		final ServiceIndex index = getContext().getServiceIndex();
+		final int count = index.size();
+		if (count == scannedServices) return null; // no services created since
+		for (final Service service : index) {
+			if (isLegacyService(service.getClass())) return service.getVersion();
 		}
+		scannedServices = count;
 		return null;
 	}
 
+	private static boolean isLegacyService(final Class<?> c) {
+		for (Class<?> type = c; type != null; type = type.getSuperclass()) {
+			if (LEGACY_SERVICE.equals(type.getName())) return true;
+		}
+		return false;
+	}
+
 }
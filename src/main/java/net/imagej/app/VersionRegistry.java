@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.app;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Build-time registry of the version of ImageJ itself.
+ * <p>
+ * Determining the version of a component at runtime normally means locating
+ * its JAR file and reading its manifest or POM. This class instead reads a
+ * table of versions, generated at build time into
+ * {@code META-INF/imagej/versions.properties} (see {@link #main}), once on
+ * first use; afterwards, every lookup is a simple map access, which never
+ * triggers class loading.
+ * </p>
+ * <p>
+ * The registry only records the coordinates of the component being built,
+ * which ship in the same JAR. Versions of dependencies are not recorded:
+ * installations like Fiji update JARs individually, so they would go stale.
+ * </p>
+ */
+public final class VersionRegistry {
+
+	/** Class path resource from which the registry is read. */
+	public static final String RESOURCE = "META-INF/imagej/versions.properties";
+
+	private VersionRegistry() {
+		// prevent instantiation of utility class
+	}
+
+	// -- VersionRegistry methods --
+
+	/**
+	 * Gets the version of the given component.
+	 * 
+	 * @return The version, or null if the component is not registered.
+	 */
+	public static String getVersion(final String groupId,
+		final String artifactId)
+	{
+		return Holder.VERSIONS.get(groupId + ":" + artifactId);
+	}
+
+	/**
+	 * Gets all registered versions, keyed on {@code groupId:artifactId}.
+	 * 
+	 * @return An unmodifiable, sorted map; empty if there is no registry on the
+	 *         class path.
+	 */
+	public static Map<String, String> getVersions() {
+		return Holder.VERSIONS;
+	}
+
+	/**
+	 * Reads a registry in the format written by {@link #write}.
+	 * 
+	 * @return A sorted map of versions keyed on {@code groupId:artifactId}.
+	 */
+	public static Map<String, String> read(final InputStream in)
+		throws IOException
+	{
+		final Properties props = new Properties();
+		props.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+		final Map<String, String> versions = new TreeMap<>();
+		for (final String key : props.stringPropertyNames()) {
+			versions.put(key, props.getProperty(key));
+		}
+		return versions;
+	}
+
+	/**
+	 * Writes the given versions in the format of {@link #RESOURCE}.
+	 * <p>
+	 * Unlike {@link Properties#store}, the output is sorted and has no
+	 * timestamp, so that identical inputs produce identical files.
+	 * </p>
+	 */
+	public static void write(final Map<String, String> versions,
+		final OutputStream out) throws IOException
+	{
+		final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		writer.write("# Generated by " + VersionRegistry.class.getName() + "\n");
+		for (final Map.Entry<String, String> entry : new TreeMap<>(versions)
+			.entrySet())
+		{
+			writer.write(escape(entry.getKey()) + "=" + escape(entry.getValue()) +
+				"\n");
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Generates the registry, as part of the build.
+	 * 
+	 * @param args The output file, followed by the
+	 *          {@code groupId:artifactId:version} coordinates of the component
+	 *          being built.
+	 */
+	public static void main(final String... args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: " + VersionRegistry.class.getName() +
+				" <output-file> [<groupId:artifactId:version>...]");
+			System.exit(1);
+		}
+		final Map<String, String> versions = new TreeMap<>();
+		for (int i = 1; i < args.length; i++) {
+			final int colon = args[i].lastIndexOf(':');
+			if (colon < 0) throw new IllegalArgumentException(args[i]);
+			versions.put(args[i].substring(0, colon), args[i].substring(colon + 1));
+		}
+
+		final File file = new File(args[0]);
+		final File dir = file.getAbsoluteFile().getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create directory: " + dir);
+		}
+		try (final OutputStream out = new FileOutputStream(file)) {
+			write(versions, out);
+		}
+	}
+
+	// -- Helper methods --
+
+	private static String escape(final String s) {
+		final StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if ("\\:=#! ".indexOf(c) >= 0) sb.append('\\');
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/** Loads the registry on first access. */
+	private static final class Holder {
+
+		private static final Map<String, String> VERSIONS;
+
+		static {
+			Map<String, String> versions;
+			try (final InputStream in = VersionRegistry.class.getClassLoader()
+				.getResourceAsStream(RESOURCE))
+			{
+				versions = in == null ? new TreeMap<String, String>() : read(in);
+			}
+			catch (final IOException exc) {
+				versions = new TreeMap<>();
+			}
+			VERSIONS = Collections.unmodifiableMap(versions);
+		}
+	}
+
+}
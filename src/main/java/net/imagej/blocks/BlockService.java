@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.blocks;
+
+import java.util.function.BiConsumer;
+
+import net.imagej.ImageJService;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Interface for services which process images block by block in parallel.
+ * <p>
+ * The image is divided into a grid of blocks, each of which is processed
+ * independently on a fork-join pool. For neighborhood filters, each block is
+ * extended by a <em>halo</em> of surrounding pixels (mirrored at the image
+ * border), so that results near block edges match those of processing the
+ * whole image at once, provided the halo covers the filter's reach.
+ * </p>
+ */
+public interface BlockService extends ImageJService {
+
+	/**
+	 * Gets the number of threads used to process blocks. Defaults to the number
+	 * of available processors.
+	 */
+	int getParallelism();
+
+	/**
+	 * Sets the number of threads used to process blocks. Calls already in
+	 * progress finish with the previous number of threads.
+	 */
+	void setParallelism(int parallelism);
+
+	/**
+	 * Processes the given image block by block.
+	 * 
+	 * @param in The input image.
+	 * @param out The output image, with the same bounds as {@code in}.
+	 * @param blockSize Size of the blocks along each dimension.
+	 * @param halo Number of extra input pixels on each side of each block,
+	 *          along each dimension.
+	 * @param computer Function filling an output block, in the coordinates of
+	 *          {@code out}, from the corresponding input block extended by the
+	 *          halo, in the coordinates of {@code in}. It is called
+	 *          concurrently for different blocks.
+	 */
+	<I, O> void process(RandomAccessibleInterval<I> in,
+		RandomAccessibleInterval<O> out, long[] blockSize, long[] halo,
+		BiConsumer<RandomAccessibleInterval<I>, RandomAccessibleInterval<O>> computer);
+
+	/**
+	 * Runs the given op block by block, stitching the block results into a new
+	 * image.
+	 * <p>
+	 * The op is called as {@code op(block, args...)} for each input block
+	 * extended by the halo, and must return an image of the same size as that
+	 * block, e.g. {@code filter.gauss} or {@code math.multiply}.
+	 * </p>
+	 * 
+	 * @param name Name of the op, as for {@code OpService.run}.
+	 * @param in The input image.
+	 * @param blockSize Size of the blocks along each dimension.
+	 * @param halo Number of extra input pixels on each side of each block.
+	 * @param args Further arguments of the op, following the input image.
+	 * @return A new image with the stitched results, of the op's output type,
+	 *         with the same bounds (including min) as {@code in}.
+	 */
+	<T extends RealType<T>, O extends RealType<O> & NativeType<O>> Img<O> run(
+		String name, RandomAccessibleInterval<T> in, long[] blockSize, long[] halo,
+		Object... args);
+
+}
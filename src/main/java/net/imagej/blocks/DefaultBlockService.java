@@ -0,0 +1,272 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.blocks;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import net.imagej.ops.OpService;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgView;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link BlockService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultBlockService extends AbstractService implements
+	BlockService
+{
+
+	@Parameter
+	private OpService opService;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private ForkJoinPool pool;
+
+	/** Number of calls using each pool; guarded by {@code this}. */
+	private final Map<ForkJoinPool, Integer> users = new IdentityHashMap<>();
+
+	// -- BlockService methods --
+
+	@Override
+	public synchronized int getParallelism() {
+		return parallelism;
+	}
+
+	@Override
+	public synchronized void setParallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " +
+				parallelism);
+		}
+		this.parallelism = parallelism;
+		retire();
+	}
+
+	@Override
+	public <I, O> void process(final RandomAccessibleInterval<I> in,
+		final RandomAccessibleInterval<O> out, final long[] blockSize,
+		final long[] halo,
+		final BiConsumer<RandomAccessibleInterval<I>, RandomAccessibleInterval<O>> computer)
+	{
+		if (!Intervals.equals(in, out)) {
+			throw new IllegalArgumentException("Input and output bounds differ");
+		}
+		final RandomAccessible<I> extended = Views.extendMirrorSingle(in);
+		forEach(blocks(in, blockSize, halo), block -> computer.accept(Views
+			.interval(extended, Intervals.expand(block, halo)), Views.interval(out,
+				block)));
+	}
+
+	@Override
+	public <T extends RealType<T>, O extends RealType<O> & NativeType<O>> Img<O>
+		run(final String name, final RandomAccessibleInterval<T> in,
+			final long[] blockSize, final long[] halo, final Object... args)
+	{
+		final List<Interval> blocks = blocks(in, blockSize, halo);
+		final RandomAccessible<T> extended = Views.extendMirrorSingle(in);
+		final Object[] opArgs = new Object[args.length + 1];
+		System.arraycopy(args, 0, opArgs, 1, args.length);
+
+		// NB: The first block determines the output type.
+		final RandomAccessibleInterval<O> first = //
+			runBlock(name, extended, blocks.get(0), halo, opArgs);
+		final O type = Util.getTypeFromInterval(first).createVariable();
+		final Img<O> img = Util.getSuitableImgFactory(in, type).create(in);
+		final RandomAccessibleInterval<O> out = //
+			Views.translate(img, Intervals.minAsLongArray(in));
+
+		copy(first, Views.interval(out, blocks.get(0)));
+		forEach(blocks.subList(1, blocks.size()), block -> copy(runBlock(name,
+			extended, block, halo, opArgs), Views.interval(out, block)));
+		// NB: Keep the min of the input, which a new image cannot have.
+		return ImgView.wrap(out, img.factory());
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public synchronized void dispose() {
+		retire();
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Runs the op on the given block extended by the halo, returning the part
+	 * of the result which corresponds to the block itself, with zero min.
+	 */
+	private <T, O> RandomAccessibleInterval<O> runBlock(final String name,
+		final RandomAccessible<T> extended, final Interval block,
+		final long[] halo, final Object[] opArgs)
+	{
+		final Object[] blockArgs = opArgs.clone();
+		blockArgs[0] = Views.zeroMin(Views.interval(extended, Intervals.expand(
+			block, halo)));
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<O> result =
+			(RandomAccessibleInterval<O>) opService.run(name, blockArgs);
+		final long[] max = new long[halo.length];
+		for (int d = 0; d < max.length; d++) {
+			max[d] = halo[d] + block.dimension(d) - 1;
+		}
+		return Views.interval(Views.zeroMin(result), new FinalInterval(halo, max));
+	}
+
+	/** Copies the pixels of one interval to another of the same size. */
+	private static <O extends RealType<O>> void copy(
+		final RandomAccessibleInterval<O> src,
+		final RandomAccessibleInterval<O> dest)
+	{
+		final Cursor<O> s = Views.flatIterable(src).cursor();
+		final Cursor<O> d = Views.flatIterable(dest).cursor();
+		while (d.hasNext()) {
+			d.next().set(s.next());
+		}
+	}
+
+	/**
+	 * Runs the given action for each block on the pool, and waits for all.
+	 * Once a block fails, the blocks which have not started yet are cancelled,
+	 * and the failure is rethrown when the running ones are done.
+	 */
+	private void forEach(final List<Interval> blocks,
+		final Consumer<Interval> action)
+	{
+		final ForkJoinPool p = acquire();
+		try {
+			final List<ForkJoinTask<?>> tasks = new ArrayList<>(blocks.size());
+			for (final Interval block : blocks) {
+				tasks.add(p.submit(() -> action.accept(block)));
+			}
+			for (final ForkJoinTask<?> task : tasks) {
+				try {
+					task.join();
+				}
+				catch (final RuntimeException | Error exc) {
+					for (final ForkJoinTask<?> t : tasks) {
+						t.cancel(false);
+					}
+					for (final ForkJoinTask<?> t : tasks) {
+						t.quietlyJoin();
+					}
+					throw exc;
+				}
+			}
+		}
+		finally {
+			release(p);
+		}
+	}
+
+	/** Gets the current pool, registering the caller as one of its users. */
+	private synchronized ForkJoinPool acquire() {
+		if (pool == null) pool = new ForkJoinPool(parallelism);
+		final Integer count = users.get(pool);
+		users.put(pool, count == null ? 1 : count + 1);
+		return pool;
+	}
+
+	/** Unregisters a user of the given pool, shutting it down if retired. */
+	private synchronized void release(final ForkJoinPool p) {
+		final int count = users.get(p) - 1;
+		if (count > 0) {
+			users.put(p, count);
+			return;
+		}
+		users.remove(p);
+		if (p != pool) p.shutdown();
+	}
+
+	/** Replaces the current pool, shutting it down once no longer in use. */
+	private synchronized void retire() {
+		if (pool != null && !users.containsKey(pool)) pool.shutdown();
+		pool = null;
+	}
+
+	/** Divides the given interval into a grid of blocks. */
+	private static List<Interval> blocks(final Interval interval,
+		final long[] blockSize, final long[] halo)
+	{
+		final int n = interval.numDimensions();
+		if (blockSize.length != n || halo.length != n) {
+			throw new IllegalArgumentException("Expected block size and halo of " +
+				"length " + n);
+		}
+		for (int d = 0; d < n; d++) {
+			if (blockSize[d] < 1 || halo[d] < 0) {
+				throw new IllegalArgumentException("Invalid block size or halo in " +
+					"dimension " + d);
+			}
+		}
+
+		final List<Interval> blocks = new ArrayList<>();
+		final long[] min = Intervals.minAsLongArray(interval);
+		final long[] max = new long[n];
+		while (true) {
+			for (int d = 0; d < n; d++) {
+				max[d] = Math.min(min[d] + blockSize[d] - 1, interval.max(d));
+			}
+			blocks.add(new FinalInterval(min.clone(), max.clone()));
+			int d = 0;
+			for (; d < n; d++) {
+				min[d] += blockSize[d];
+				if (min[d] <= interval.max(d)) break;
+				min[d] = interval.min(d);
+			}
+			if (d == n) return blocks;
+		}
+	}
+
+}
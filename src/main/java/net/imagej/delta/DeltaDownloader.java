@@ -0,0 +1,309 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.delta;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads files from an update site concurrently, using {@link JarDelta}
+ * patches where the site provides them.
+ * <p>
+ * For a local JAR {@code jars/foo.jar} whose {@link JarDelta#contentChecksum
+ * content checksum} is {@code C}, the patch is expected at
+ * {@code jars/foo.jar.C.delta} relative to the site. If there is no such
+ * patch, or it cannot be applied, the whole file is downloaded instead.
+ * </p>
+ * <p>
+ * Like the ImageJ updater, the downloader never touches the files of the
+ * installation itself, which may be in use (and on Windows, locked) by a
+ * running ImageJ. New versions are staged in the {@value #UPDATE_DIRECTORY}
+ * directory of the installation, e.g. {@code update/jars/foo.jar}, once they
+ * are complete and verified, and are moved into place at the next launch.
+ * Incomplete files there never end in {@code .jar}.
+ * </p>
+ * <p>
+ * Given the expected {@link #checksum checksums} of the current versions,
+ * files which already match (or whose staged version does) are left alone,
+ * and both patched and downloaded files are verified against them before
+ * they are staged.
+ * </p>
+ */
+public class DeltaDownloader {
+
+	/** Suffix of patch files on the update site. */
+	public static final String SUFFIX = ".delta";
+
+	/** Directory of the installation in which new versions are staged. */
+	public static final String UPDATE_DIRECTORY = "update";
+
+	private final URL site;
+	private final File root;
+	private final int workers;
+
+	/**
+	 * Creates a downloader for the given update site.
+	 * 
+	 * @param site Base URL of the site, ending in a slash, e.g.
+	 *          {@code file:/srv/update-site/} or
+	 *          {@code https://sites.imagej.net/Example/}.
+	 * @param root Root directory of the local installation, in which files
+	 *          have the same paths as on the site.
+	 * @param workers Maximum number of concurrent downloads.
+	 */
+	public DeltaDownloader(final URL site, final File root, final int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("Invalid worker count: " + workers);
+		}
+		this.site = site;
+		this.root = root;
+		this.workers = workers;
+	}
+
+	// -- DeltaDownloader methods --
+
+	/**
+	 * Gets the path of the patch for updating the given local JAR.
+	 * 
+	 * @param path The path of the JAR on the update site.
+	 */
+	public static String patchPath(final String path, final File localJar)
+		throws IOException
+	{
+		return path + "." + JarDelta.contentChecksum(localJar) + SUFFIX;
+	}
+
+	/**
+	 * Gets the location where the new version of the given file is staged until
+	 * the next launch.
+	 * 
+	 * @param path The path of the file on the update site.
+	 */
+	public File staged(final String path) {
+		return new File(new File(root, UPDATE_DIRECTORY), path);
+	}
+
+	/**
+	 * Computes the checksum of the given local file, as expected by
+	 * {@link #download(Map, Map)}: the {@link JarDelta#contentChecksum content
+	 * checksum} for JARs, and the SHA-1 checksum of the file for anything else.
+	 * 
+	 * @param path The path of the file on the update site.
+	 */
+	public static String checksum(final String path, final File file)
+		throws IOException
+	{
+		if (path.endsWith(".jar")) return JarDelta.contentChecksum(file);
+		return JarDelta.sha1(Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * Stages new versions of the given files, without verifying full
+	 * downloads.
+	 * 
+	 * @see #download(Collection, Map)
+	 */
+	public DownloadReport download(final Collection<String> paths)
+		throws InterruptedException
+	{
+		return download(paths, Collections.<String, String> emptyMap());
+	}
+
+	/**
+	 * Stages new versions of the given files from the site.
+	 * 
+	 * @param paths Paths of the files to update (which need not exist locally
+	 *          yet), on the update site and in the installation alike.
+	 * @param checksums Expected {@link #checksum checksums} of the current
+	 *          versions, by path on the update site. Files which already match
+	 *          are skipped, and new versions which do not match are rejected.
+	 *          Files without an expected checksum are always updated.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *           downloads.
+	 */
+	public DownloadReport download(final Collection<String> paths,
+		final Map<String, String> checksums) throws InterruptedException
+	{
+		final List<String> current = //
+			Collections.synchronizedList(new ArrayList<String>());
+		final List<String> patched = //
+			Collections.synchronizedList(new ArrayList<String>());
+		final List<String> downloaded = //
+			Collections.synchronizedList(new ArrayList<String>());
+		final Map<String, Throwable> failures = //
+			Collections.synchronizedMap(new LinkedHashMap<String, Throwable>());
+		final AtomicLong bytes = new AtomicLong();
+
+		final AtomicInteger count = new AtomicInteger();
+		final ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+			final Thread t = new Thread(r, "download-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (final String path : paths) {
+				final File file = new File(root, path);
+				final File staged = staged(path);
+				final String checksum = checksums.get(path);
+				futures.add(pool.submit(() -> {
+					try {
+						final File latest = staged.isFile() ? staged : file;
+						if (checksum != null && latest.isFile() && checksum.equals(
+							checksum(path, latest)))
+						{
+							current.add(path);
+						}
+						else if (patch(path, file, staged, checksum, bytes)) {
+							patched.add(path);
+						}
+						else {
+							download(path, staged, checksum, bytes);
+							downloaded.add(path);
+						}
+					}
+					catch (final IOException | RuntimeException exc) {
+						failures.put(path, exc);
+					}
+				}));
+			}
+			for (final Future<?> future : futures) {
+				try {
+					future.get();
+				}
+				catch (final ExecutionException exc) {
+					// NB: Tasks record their own failures.
+					throw new IllegalStateException(exc.getCause());
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		return new DownloadReport(current, patched, downloaded, failures, bytes
+			.get());
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Tries to stage a new version of the given local JAR using a patch from the
+	 * site.
+	 * 
+	 * @return False if no applicable patch was found, or the result does not
+	 *         match the expected checksum.
+	 */
+	private boolean patch(final String path, final File file, final File staged,
+		final String checksum, final AtomicLong bytes)
+	{
+		if (!file.isFile() || !path.endsWith(".jar")) return false;
+		File patch = null;
+		File patched = null;
+		try {
+			patch = temp(staged, SUFFIX);
+			try (final InputStream in = new URL(site, patchPath(path, file))
+				.openStream())
+			{
+				bytes.addAndGet(JarDelta.copy(in, patch));
+			}
+			patched = temp(staged, ".part");
+			JarDelta.apply(file, patch, patched);
+			verify(path, patched, checksum);
+			Files.move(patched.toPath(), staged.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		}
+		catch (final IOException exc) {
+			// NB: No patch for this version, or it does not apply.
+			return false;
+		}
+		finally {
+			if (patch != null) patch.delete();
+			if (patched != null) patched.delete();
+		}
+	}
+
+	/** Downloads the whole file from the site, and stages it. */
+	private void download(final String path, final File staged,
+		final String checksum, final AtomicLong bytes) throws IOException
+	{
+		final File tmp = temp(staged, ".part");
+		try {
+			try (final InputStream in = new URL(site, path).openStream()) {
+				bytes.addAndGet(JarDelta.copy(in, tmp));
+			}
+			verify(path, tmp, checksum);
+			Files.move(tmp.toPath(), staged.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			tmp.delete();
+		}
+	}
+
+	/** Checks the given new version against the expected checksum, if any. */
+	private static void verify(final String path, final File file,
+		final String checksum) throws IOException
+	{
+		if (checksum != null && !checksum.equals(checksum(path, file))) {
+			throw new IOException("Checksum mismatch for " + path);
+		}
+	}
+
+	/** Creates a temporary file next to the given one. */
+	private static File temp(final File file, final String suffix)
+		throws IOException
+	{
+		final File dir = file.getAbsoluteFile().getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create directory: " + dir);
+		}
+		return File.createTempFile(file.getName() + "-", suffix, dir);
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.delta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary of a run of a {@link DeltaDownloader}.
+ */
+public class DownloadReport {
+
+	private final List<String> current;
+	private final List<String> patched;
+	private final List<String> downloaded;
+	private final Map<String, Throwable> failures;
+	private final long bytesTransferred;
+
+	DownloadReport(final List<String> current, final List<String> patched,
+		final List<String> downloaded, final Map<String, Throwable> failures,
+		final long bytesTransferred)
+	{
+		this.current = Collections.unmodifiableList(new ArrayList<>(current));
+		this.patched = Collections.unmodifiableList(new ArrayList<>(patched));
+		this.downloaded = Collections.unmodifiableList(new ArrayList<>(
+			downloaded));
+		this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(
+			failures));
+		this.bytesTransferred = bytesTransferred;
+	}
+
+	/** Gets the paths of the files skipped since they were up to date. */
+	public List<String> getCurrent() {
+		return current;
+	}
+
+	/** Gets the paths of the files updated by applying a patch. */
+	public List<String> getPatched() {
+		return patched;
+	}
+
+	/** Gets the paths of the files downloaded in full. */
+	public List<String> getDownloaded() {
+		return downloaded;
+	}
+
+	/** Gets the paths of the files which could not be updated, and why. */
+	public Map<String, Throwable> getFailures() {
+		return failures;
+	}
+
+	/** Gets the number of bytes downloaded, including unusable patches. */
+	public long getBytesTransferred() {
+		return bytesTransferred;
+	}
+
+	@Override
+	public String toString() {
+		return current.size() + " up to date, " + patched.size() + " patched, " +
+			downloaded.size() + " downloaded, " + failures.size() + " failed, " +
+			bytesTransferred + " bytes transferred";
+	}
+
+}
@@ -0,0 +1,283 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.delta;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Creates and applies entry-level patches between two versions of a JAR file.
+ * <p>
+ * A patch is a ZIP file holding an index plus the entries of the new JAR
+ * which are new or changed; unchanged entries are copied from the old JAR
+ * when the patch is applied. Since most releases of a component change only
+ * a few classes, patches are typically a small fraction of the JAR size.
+ * </p>
+ * <p>
+ * Every entry is verified against its SHA-1 checksum while applying a patch,
+ * and so is the {@link #contentChecksum content checksum} of both JARs. The
+ * patched JAR has the same entries as the new JAR, in the same order, but is
+ * not byte-identical to it, since entries are compressed anew.
+ * </p>
+ */
+public final class JarDelta {
+
+	private static final String INDEX = "jar-delta.index";
+	private static final String DATA = "data/";
+	private static final String HEADER = "jar-delta 1";
+
+	private JarDelta() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Writes a patch which turns {@code oldJar} into {@code newJar}.
+	 * 
+	 * @return The number of entries stored in the patch.
+	 */
+	public static int create(final File oldJar, final File newJar,
+		final File patch) throws IOException
+	{
+		final Map<String, String> oldChecksums = new HashMap<>();
+		try (final ZipFile zip = new ZipFile(oldJar)) {
+			for (final ZipEntry entry : entries(zip)) {
+				oldChecksums.put(entry.getName(), sha1(read(zip, entry)));
+			}
+		}
+
+		int stored = 0;
+		try (final ZipFile zip = new ZipFile(newJar);
+				final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(
+					patch)))
+		{
+			final StringBuilder index = new StringBuilder(HEADER).append("\n");
+			index.append("from ").append(contentChecksum(oldJar)).append("\n");
+			index.append("to ").append(contentChecksum(newJar)).append("\n");
+			final List<byte[]> data = new ArrayList<>();
+			final List<String> names = new ArrayList<>();
+			for (final ZipEntry entry : entries(zip)) {
+				final byte[] bytes = read(zip, entry);
+				final String checksum = sha1(bytes);
+				final boolean unchanged = checksum.equals(oldChecksums.get(entry
+					.getName()));
+				index.append(unchanged ? "= " : "+ ").append(checksum).append(" ");
+				index.append(entry.getName()).append("\n");
+				if (unchanged) continue;
+				names.add(entry.getName());
+				data.add(bytes);
+			}
+			write(out, INDEX, index.toString().getBytes(StandardCharsets.UTF_8));
+			for (int i = 0; i < names.size(); i++) {
+				write(out, DATA + names.get(i), data.get(i));
+				stored++;
+			}
+		}
+		return stored;
+	}
+
+	/**
+	 * Applies a patch to {@code oldJar}, writing the result to {@code newJar}.
+	 * 
+	 * @throws IOException If the patch does not belong to {@code oldJar}, or
+	 *           any entry or the result fails checksum verification; no output
+	 *           is left behind in that case.
+	 */
+	public static void apply(final File oldJar, final File patch,
+		final File newJar) throws IOException
+	{
+		try {
+			applyUnchecked(oldJar, patch, newJar);
+		}
+		catch (final IOException | RuntimeException exc) {
+			newJar.delete();
+			throw exc;
+		}
+	}
+
+	/**
+	 * Computes a checksum of the entry names and contents of a JAR file, which
+	 * unlike a checksum of the file itself does not depend on entry order,
+	 * timestamps or compression.
+	 */
+	public static String contentChecksum(final File jar) throws IOException {
+		final Map<String, String> checksums = new TreeMap<>();
+		try (final ZipFile zip = new ZipFile(jar)) {
+			for (final ZipEntry entry : entries(zip)) {
+				checksums.put(entry.getName(), sha1(read(zip, entry)));
+			}
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<String, String> e : checksums.entrySet()) {
+			sb.append(e.getKey()).append('\0').append(e.getValue()).append('\n');
+		}
+		return sha1(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	// -- Helper methods --
+
+	private static void applyUnchecked(final File oldJar, final File patch,
+		final File newJar) throws IOException
+	{
+		try (final ZipFile old = new ZipFile(oldJar);
+				final ZipFile delta = new ZipFile(patch))
+		{
+			final ZipEntry indexEntry = delta.getEntry(INDEX);
+			if (indexEntry == null) throw new IOException("Not a JAR patch: " + patch);
+			final BufferedReader index = new BufferedReader(new InputStreamReader(
+				delta.getInputStream(indexEntry), StandardCharsets.UTF_8));
+			if (!HEADER.equals(index.readLine())) {
+				throw new IOException("Unsupported JAR patch: " + patch);
+			}
+			final String from = value(index.readLine(), "from ");
+			final String to = value(index.readLine(), "to ");
+			if (!from.equals(contentChecksum(oldJar))) {
+				throw new IOException("Patch " + patch + " does not apply to " +
+					oldJar);
+			}
+
+			try (final ZipOutputStream out = new ZipOutputStream(
+				new FileOutputStream(newJar)))
+			{
+				while (true) {
+					final String line = index.readLine();
+					if (line == null) break;
+					if (line.length() < 44) throw new IOException("Bad index: " + line);
+					final boolean copy = line.charAt(0) == '=';
+					final String checksum = line.substring(2, 42);
+					final String name = line.substring(43);
+					final ZipEntry source = copy ? old.getEntry(name) : delta.getEntry(
+						DATA + name);
+					if (source == null) throw new IOException("Missing entry: " + name);
+					final byte[] bytes = read(copy ? old : delta, source);
+					if (!checksum.equals(sha1(bytes))) {
+						throw new IOException("Checksum mismatch for entry " + name);
+					}
+					write(out, name, bytes);
+				}
+			}
+			if (!to.equals(contentChecksum(newJar))) {
+				throw new IOException("Checksum mismatch for patched " + newJar);
+			}
+		}
+	}
+
+	private static String value(final String line, final String key)
+		throws IOException
+	{
+		if (line == null || !line.startsWith(key)) {
+			throw new IOException("Bad index line: " + line);
+		}
+		return line.substring(key.length());
+	}
+
+	private static List<ZipEntry> entries(final ZipFile zip) {
+		final List<ZipEntry> entries = new ArrayList<>();
+		final Enumeration<? extends ZipEntry> e = zip.entries();
+		while (e.hasMoreElements()) {
+			entries.add(e.nextElement());
+		}
+		return entries;
+	}
+
+	private static byte[] read(final ZipFile zip, final ZipEntry entry)
+		throws IOException
+	{
+		try (final InputStream in = zip.getInputStream(entry)) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[65536];
+			while (true) {
+				final int n = in.read(buffer);
+				if (n < 0) break;
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	private static void write(final ZipOutputStream out, final String name,
+		final byte[] bytes) throws IOException
+	{
+		out.putNextEntry(new ZipEntry(name));
+		out.write(bytes);
+		out.closeEntry();
+	}
+
+	/** Computes the SHA-1 checksum of the given bytes, in hexadecimal. */
+	static String sha1(final byte[] bytes) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (final NoSuchAlgorithmException exc) {
+			throw new IllegalStateException(exc);
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : digest.digest(bytes)) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/** Copies a stream to a file. */
+	static long copy(final InputStream in, final File file) throws IOException {
+		long total = 0;
+		try (final OutputStream out = new FileOutputStream(file)) {
+			final byte[] buffer = new byte[65536];
+			while (true) {
+				final int n = in.read(buffer);
+				if (n < 0) break;
+				out.write(buffer, 0, n);
+				total += n;
+			}
+		}
+		return total;
+	}
+
+}
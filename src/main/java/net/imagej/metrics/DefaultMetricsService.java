@@ -0,0 +1,484 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import net.imagej.Dataset;
+import net.imagej.ops.OpService;
+import net.imglib2.util.Intervals;
+
+import org.scijava.event.EventHandler;
+import org.scijava.io.event.DataOpenedEvent;
+import org.scijava.io.event.DataSavedEvent;
+import org.scijava.module.Module;
+import org.scijava.module.event.ModuleCanceledEvent;
+import org.scijava.module.event.ModuleErroredEvent;
+import org.scijava.module.event.ModuleFinishedEvent;
+import org.scijava.module.event.ModuleStartedEvent;
+import org.scijava.object.ObjectService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link MetricsService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultMetricsService extends AbstractService implements
+	MetricsService
+{
+
+	@Parameter
+	private ObjectService objectService;
+
+	private final Map<String, AtomicLong> counters =
+		new ConcurrentSkipListMap<>();
+	private final Map<String, DoubleSupplier> gauges =
+		new ConcurrentSkipListMap<>();
+	private final Map<String, DoubleSupplier> computedCounters =
+		new ConcurrentSkipListMap<>();
+	private final Map<String, Histogram> histograms =
+		new ConcurrentSkipListMap<>();
+
+	/** Start times of the modules currently executing. */
+	private final Map<Module, Long> starts = //
+		Collections.synchronizedMap(new IdentityHashMap<Module, Long>());
+
+	private volatile boolean enabled;
+	private ObjectName mbeanName;
+	private MeteredOpService meteredOps;
+	private HttpServer endpoint;
+
+	// -- MetricsService methods --
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public synchronized void setEnabled(final boolean enabled) {
+		if (enabled == this.enabled) return;
+		this.enabled = enabled;
+		if (enabled) registerMBean();
+		else unregisterMBean();
+	}
+
+	@Override
+	public synchronized OpService op() {
+		if (meteredOps == null) {
+			final MeteredOpService ops = new MeteredOpService();
+			ops.setContext(getContext());
+			getContext().inject(ops);
+			ops.initialize();
+			meteredOps = ops;
+		}
+		return meteredOps;
+	}
+
+	@Override
+	public void increment(final String name, final long delta) {
+		counters.computeIfAbsent(name, n -> new AtomicLong()).addAndGet(delta);
+	}
+
+	@Override
+	public void gauge(final String name, final DoubleSupplier value) {
+		gauges.put(name, value);
+	}
+
+	@Override
+	public void counter(final String name, final DoubleSupplier value) {
+		computedCounters.put(name, value);
+	}
+
+	@Override
+	public void removeGauge(final String name) {
+		gauges.remove(name);
+		computedCounters.remove(name);
+	}
+
+	@Override
+	public Histogram histogram(final String name) {
+		return histograms.computeIfAbsent(name, n -> new Histogram());
+	}
+
+	@Override
+	public Map<String, Double> snapshot() {
+		final Map<String, Double> values = new ConcurrentSkipListMap<>();
+		for (final Map.Entry<String, AtomicLong> e : counters.entrySet()) {
+			values.put(e.getKey(), e.getValue().doubleValue());
+		}
+		for (final Map.Entry<String, DoubleSupplier> e : computedCounters
+			.entrySet())
+		{
+			values.put(e.getKey(), e.getValue().getAsDouble());
+		}
+		for (final Map.Entry<String, DoubleSupplier> e : gauges.entrySet()) {
+			values.put(e.getKey(), e.getValue().getAsDouble());
+		}
+		for (final Map.Entry<String, Histogram> e : histograms.entrySet()) {
+			final String base = base(e.getKey());
+			final String labels = labels(e.getKey());
+			values.put(base + "_count" + labels, (double) e.getValue().getCount());
+			values.put(base + "_sum" + labels, e.getValue().getSum());
+		}
+		return values;
+	}
+
+	@Override
+	public String toPrometheus() {
+		final StringBuilder sb = new StringBuilder();
+		// NB: Sorted, so that each metric's samples are grouped together.
+		final Map<String, Double> counterValues = new TreeMap<>();
+		for (final Map.Entry<String, AtomicLong> e : counters.entrySet()) {
+			counterValues.put(e.getKey(), e.getValue().doubleValue());
+		}
+		for (final Map.Entry<String, DoubleSupplier> e : computedCounters
+			.entrySet())
+		{
+			counterValues.put(e.getKey(), e.getValue().getAsDouble());
+		}
+		append(sb, "counter", counterValues);
+		final Map<String, Double> gaugeValues = new LinkedHashMap<>();
+		for (final Map.Entry<String, DoubleSupplier> e : gauges.entrySet()) {
+			gaugeValues.put(e.getKey(), e.getValue().getAsDouble());
+		}
+		append(sb, "gauge", gaugeValues);
+
+		String type = null;
+		for (final Map.Entry<String, Histogram> e : histograms.entrySet()) {
+			final String base = base(e.getKey());
+			final String labels = labels(e.getKey());
+			final String prefix = labels.isEmpty() ? "{" : //
+				labels.substring(0, labels.length() - 1) + ",";
+			final Histogram h = e.getValue();
+			if (!base.equals(type)) {
+				sb.append("# TYPE ").append(base).append(" histogram\n");
+				type = base;
+			}
+			for (int b = 0; b < Histogram.BOUNDS.length; b++) {
+				sb.append(base).append("_bucket").append(prefix).append("le=\"");
+				sb.append(Histogram.BOUNDS[b]).append("\"} ");
+				sb.append(h.getCumulativeCount(b)).append("\n");
+			}
+			final long count = h.getCount();
+			sb.append(base).append("_bucket").append(prefix);
+			sb.append("le=\"+Inf\"} ").append(count).append("\n");
+			sb.append(base).append("_sum").append(labels).append(" ");
+			sb.append(format(h.getSum())).append("\n");
+			sb.append(base).append("_count").append(labels).append(" ");
+			sb.append(count).append("\n");
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public synchronized int startEndpoint(final int port) throws IOException {
+		if (endpoint != null) {
+			throw new IllegalStateException("Metrics endpoint already started");
+		}
+		final HttpServer server = HttpServer.create(new InetSocketAddress(
+			InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", exchange -> {
+			final byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type",
+				"text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (final OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		endpoint = server;
+		setEnabled(true);
+		return server.getAddress().getPort();
+	}
+
+	@Override
+	public synchronized void stopEndpoint() {
+		if (endpoint == null) return;
+		endpoint.stop(0);
+		endpoint = null;
+	}
+
+	// -- Service methods --
+
+	@Override
+	public void initialize() {
+		gauge("imagej_datasets", () -> objectService.getObjects(Dataset.class)
+			.size());
+		gauge("imagej_dataset_bytes", () -> {
+			double bytes = 0;
+			for (final Dataset d : objectService.getObjects(Dataset.class)) {
+				bytes += Intervals.numElements(d) * (double) d.getType()
+					.getBitsPerPixel() / 8;
+			}
+			return bytes;
+		});
+		final ForkJoinPool common = ForkJoinPool.commonPool();
+		gauge("imagej_forkjoin_common_queued_tasks", () -> common
+			.getQueuedSubmissionCount() + common.getQueuedTaskCount());
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		gauge("jvm_memory_heap_used_bytes", () -> memory.getHeapMemoryUsage()
+			.getUsed());
+		for (final GarbageCollectorMXBean gc : ManagementFactory
+			.getGarbageCollectorMXBeans())
+		{
+			counter(MetricsService.name("jvm_gc_collection_seconds_total", "gc", gc
+				.getName()), () -> gc.getCollectionTime() / 1000.0);
+			counter(MetricsService.name("jvm_gc_collections_total", "gc", gc
+				.getName()), gc::getCollectionCount);
+		}
+		if (Boolean.getBoolean(ENABLED_PROPERTY)) setEnabled(true);
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public synchronized void dispose() {
+		stopEndpoint();
+		unregisterMBean();
+		enabled = false;
+		if (meteredOps != null) {
+			meteredOps.dispose();
+			meteredOps = null;
+		}
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final ModuleStartedEvent evt) {
+		if (!enabled) return;
+		starts.put(evt.getModule(), System.nanoTime());
+	}
+
+	@EventHandler
+	protected void onEvent(final ModuleFinishedEvent evt) {
+		final Long start = starts.remove(evt.getModule());
+		if (start == null) return;
+		histogram(MetricsService.name("imagej_module_duration_seconds", "module",
+			id(evt.getModule()))).record(System.nanoTime() - start);
+	}
+
+	@EventHandler
+	protected void onEvent(final ModuleErroredEvent evt) {
+		starts.remove(evt.getModule());
+		if (!enabled) return;
+		increment(MetricsService.name("imagej_module_errors_total", "module", id(
+			evt.getModule())), 1);
+	}
+
+	@EventHandler
+	protected void onEvent(final ModuleCanceledEvent evt) {
+		starts.remove(evt.getModule());
+	}
+
+	@EventHandler
+	protected void onEvent(final DataOpenedEvent evt) {
+		if (!enabled) return;
+		increment("imagej_io_opened_total", 1);
+		increment("imagej_io_read_bytes_total", new File(evt.getSource())
+			.length());
+	}
+
+	@EventHandler
+	protected void onEvent(final DataSavedEvent evt) {
+		if (!enabled) return;
+		increment("imagej_io_saved_total", 1);
+		increment("imagej_io_written_bytes_total", new File(evt.getDestination())
+			.length());
+	}
+
+	// -- Helper methods --
+
+	/** Registers the metrics MBean with the platform MBean server. */
+	private void registerMBean() {
+		if (mbeanName != null) return;
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(
+				"net.imagej:type=Metrics,context=" + Integer.toHexString(System
+					.identityHashCode(getContext())));
+			server.registerMBean(new MetricsMBean(), name);
+			mbeanName = name;
+		}
+		catch (final JMException exc) {
+			log().warn("Cannot register metrics MBean", exc);
+		}
+	}
+
+	private void unregisterMBean() {
+		if (mbeanName == null) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+		}
+		catch (final JMException exc) {
+			log().debug("Cannot unregister metrics MBean", exc);
+		}
+		mbeanName = null;
+	}
+
+	private static String id(final Module module) {
+		final String id = module.getInfo().getIdentifier();
+		return id == null ? module.getInfo().getDelegateClassName() : id;
+	}
+
+	/** Appends the given samples, with a type line per metric name. */
+	private static void append(final StringBuilder sb, final String type,
+		final Map<String, Double> values)
+	{
+		String current = null;
+		for (final Map.Entry<String, Double> e : values.entrySet()) {
+			final String base = base(e.getKey());
+			if (!base.equals(current)) {
+				sb.append("# TYPE ").append(base).append(" ").append(type).append(
+					"\n");
+				current = base;
+			}
+			sb.append(e.getKey()).append(" ").append(format(e.getValue())).append(
+				"\n");
+		}
+	}
+
+	private static String format(final double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value)) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	/** Gets the metric name without labels. */
+	private static String base(final String name) {
+		final int brace = name.indexOf('{');
+		return brace < 0 ? name : name.substring(0, brace);
+	}
+
+	/** Gets the labels of the metric name, including braces, or "". */
+	private static String labels(final String name) {
+		final int brace = name.indexOf('{');
+		return brace < 0 ? "" : name.substring(brace);
+	}
+
+	// -- Helper classes --
+
+	/** Exposes the metrics snapshot as read-only JMX attributes. */
+	private class MetricsMBean implements DynamicMBean {
+
+		@Override
+		public Object getAttribute(final String attribute)
+			throws AttributeNotFoundException
+		{
+			final Double value = snapshot().get(attribute);
+			if (value == null) throw new AttributeNotFoundException(attribute);
+			return value;
+		}
+
+		@Override
+		public void setAttribute(final Attribute attribute)
+			throws AttributeNotFoundException
+		{
+			throw new AttributeNotFoundException("Metrics are read-only: " +
+				attribute.getName());
+		}
+
+		@Override
+		public AttributeList getAttributes(final String[] attributes) {
+			final Map<String, Double> values = snapshot();
+			final AttributeList list = new AttributeList();
+			for (final String attribute : attributes) {
+				final Double value = values.get(attribute);
+				if (value != null) list.add(new Attribute(attribute, value));
+			}
+			return list;
+		}
+
+		@Override
+		public AttributeList setAttributes(final AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(final String actionName, final Object[] params,
+			final String[] signature) throws ReflectionException
+		{
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			final Map<String, Double> values = snapshot();
+			final MBeanAttributeInfo[] attributes =
+				new MBeanAttributeInfo[values.size()];
+			int i = 0;
+			for (final String name : values.keySet()) {
+				attributes[i++] = new MBeanAttributeInfo(name, Double.class.getName(),
+					name, true, false, false);
+			}
+			return new MBeanInfo(getClass().getName(), "ImageJ metrics", attributes,
+				null, null, null);
+		}
+	}
+
+}
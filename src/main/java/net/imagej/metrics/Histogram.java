@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * A histogram of durations, with fixed buckets from one millisecond to one
+ * minute.
+ */
+public class Histogram {
+
+	/** Upper bounds of the buckets, in seconds. */
+	static final double[] BOUNDS = { 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5,
+		10, 60 };
+
+	/** Number of recorded values at most each bound; the last is unbounded. */
+	private final AtomicLongArray buckets = //
+		new AtomicLongArray(BOUNDS.length + 1);
+
+	private final DoubleAdder sum = new DoubleAdder();
+
+	// -- Histogram methods --
+
+	/** Records a duration, in nanoseconds. */
+	public void record(final long nanos) {
+		final double seconds = nanos / 1e9;
+		int b = 0;
+		while (b < BOUNDS.length && seconds > BOUNDS[b]) {
+			b++;
+		}
+		buckets.incrementAndGet(b);
+		sum.add(seconds);
+	}
+
+	/** Gets the number of recorded durations. */
+	public long getCount() {
+		long count = 0;
+		for (int b = 0; b < buckets.length(); b++) {
+			count += buckets.get(b);
+		}
+		return count;
+	}
+
+	/** Gets the sum of the recorded durations, in seconds. */
+	public double getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Gets the number of recorded durations of at most {@code BOUNDS[bucket]}
+	 * seconds, cumulative as in Prometheus histograms.
+	 */
+	long getCumulativeCount(final int bucket) {
+		long count = 0;
+		for (int b = 0; b <= bucket; b++) {
+			count += buckets.get(b);
+		}
+		return count;
+	}
+
+}
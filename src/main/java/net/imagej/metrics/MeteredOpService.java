@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.metrics;
+
+import java.util.function.Supplier;
+
+import net.imagej.ops.DefaultOpService;
+import net.imagej.ops.Op;
+import net.imagej.ops.OpService;
+
+import org.scijava.plugin.Parameter;
+
+/**
+ * {@link OpService} which records the duration and failures of each op
+ * invocation with the {@link MetricsService}, while metrics are enabled.
+ * <p>
+ * Ops do not run as modules of the {@link org.scijava.module.ModuleService},
+ * so they publish no module events for the metrics service to observe.
+ * Instead, this op environment times every call of its {@code run} methods,
+ * including those of the op namespaces (e.g.
+ * {@code metrics.op().filter().gauss(...)}) and ops called by other ops. It
+ * is not a plugin, and hence never replaces the {@link OpService} of a
+ * context; see {@link MetricsService#op()}.
+ * </p>
+ */
+class MeteredOpService extends DefaultOpService {
+
+	@Parameter
+	private MetricsService metricsService;
+
+	// -- OpEnvironment methods --
+
+	@Override
+	public Object run(final String name, final Object... args) {
+		return metered(name, () -> super.run(name, args));
+	}
+
+	@Override
+	public Object run(final Class<? extends Op> type, final Object... args) {
+		return metered(type.getName(), () -> super.run(type, args));
+	}
+
+	@Override
+	public Object run(final Op op, final Object... args) {
+		return metered(op.getClass().getName(), () -> super.run(op, args));
+	}
+
+	// -- Helper methods --
+
+	private Object metered(final String op, final Supplier<Object> action) {
+		if (!metricsService.isEnabled()) return action.get();
+		final long start = System.nanoTime();
+		try {
+			return action.get();
+		}
+		catch (final RuntimeException | Error exc) {
+			metricsService.increment(MetricsService.name("imagej_op_errors_total",
+				"op", op), 1);
+			throw exc;
+		}
+		finally {
+			metricsService.histogram(MetricsService.name(
+				"imagej_op_duration_seconds", "op", op)).record(System.nanoTime() -
+					start);
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import net.imagej.ImageJService;
+import net.imagej.ops.OpService;
+
+/**
+ * Interface for services which collect operational metrics of a running
+ * ImageJ instance.
+ * <p>
+ * Metrics are only recorded once enabled, via {@link #setEnabled(boolean)},
+ * the {@code imagej.metrics} system property, or by starting the Prometheus
+ * endpoint. Then the service tracks the duration and failures of executed
+ * modules (commands, scripts and ops run as modules) and of op invocations
+ * through its {@link #op()} environment, bytes opened and saved, the number
+ * and pixel memory of datasets, queued tasks of the common fork-join pool,
+ * heap usage and garbage collection counts and time. Other components add
+ * their own counters, gauges and histograms.
+ * </p>
+ * <p>
+ * While enabled, all metrics are registered as attributes of a JMX MBean
+ * named {@code net.imagej:type=Metrics,context=...}, and can be served in
+ * Prometheus text format via {@link #startEndpoint(int)}.
+ * </p>
+ * <p>
+ * Metric names follow Prometheus conventions, with optional labels in braces;
+ * see {@link #name(String, String...)}.
+ * </p>
+ */
+public interface MetricsService extends ImageJService {
+
+	/** System property which enables metrics when set to {@code true}. */
+	String ENABLED_PROPERTY = "imagej.metrics";
+
+	/** Gets whether metrics are recorded and published. */
+	boolean isEnabled();
+
+	/**
+	 * Enables or disables recording of metrics, and their JMX MBean. Metrics
+	 * are disabled by default, unless the {@value #ENABLED_PROPERTY} system
+	 * property is {@code true}.
+	 */
+	void setEnabled(boolean enabled);
+
+	/**
+	 * Gets an op environment which records the duration and failures of each
+	 * op invocation while metrics are enabled, including those of ops called
+	 * by other ops. The {@link OpService} of the context is left alone; op
+	 * calls through it are not timed.
+	 */
+	OpService op();
+
+	/** Adds the given amount to a counter, creating it if needed. */
+	void increment(String name, long delta);
+
+	/** Registers a gauge whose value is computed when metrics are read. */
+	void gauge(String name, DoubleSupplier value);
+
+	/**
+	 * Registers a counter whose value is computed when metrics are read, for
+	 * cumulative totals maintained elsewhere (e.g. by the JVM). The value must
+	 * never decrease.
+	 */
+	void counter(String name, DoubleSupplier value);
+
+	/** Removes the gauge or computed counter of the given name. */
+	void removeGauge(String name);
+
+	/** Gets the histogram of the given name, creating it if needed. */
+	Histogram histogram(String name);
+
+	/**
+	 * Runs the given action, recording its duration in the histogram of the
+	 * given name. For example, to time a particular op call:
+	 * 
+	 * <pre>
+	 * metrics.time(MetricsService.name("imagej_tile_duration_seconds",
+	 * 	"tile", "0,0"), () -&gt; renderTile(0, 0));
+	 * </pre>
+	 */
+	default <T> T time(final String name, final Supplier<T> action) {
+		final long start = System.nanoTime();
+		try {
+			return action.get();
+		}
+		finally {
+			histogram(name).record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Gets the current value of all counters and gauges, and the count and sum
+	 * of all histograms (with suffixes {@code _count} and {@code _sum}), sorted
+	 * by name.
+	 */
+	Map<String, Double> snapshot();
+
+	/** Formats all metrics in the Prometheus text exposition format. */
+	String toPrometheus();
+
+	/**
+	 * Starts serving {@link #toPrometheus()} over HTTP at {@code /metrics} on
+	 * the loopback interface, enabling metrics.
+	 * 
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @return The port actually listened on.
+	 * @throws IOException If the server socket cannot be opened.
+	 */
+	int startEndpoint(int port) throws IOException;
+
+	/** Stops serving metrics over HTTP, if started. */
+	void stopEndpoint();
+
+	/**
+	 * Composes a metric name with labels.
+	 * 
+	 * @param base The metric name, e.g. {@code imagej_io_read_bytes_total}.
+	 * @param labels Alternating label names and values.
+	 * @return e.g. {@code imagej_op_duration_seconds{op="filter.gauss"}}
+	 */
+	static String name(final String base, final String... labels) {
+		if (labels.length == 0) return base;
+		final StringBuilder sb = new StringBuilder(base).append("{");
+		for (int i = 0; i + 1 < labels.length; i += 2) {
+			if (i > 0) sb.append(",");
+			sb.append(labels[i]).append("=\"");
+			sb.append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")
+				.replace("\n", "\\n"));
+			sb.append("\"");
+		}
+		return sb.append("}").toString();
+	}
+
+}
@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.movie;
+
+import io.scif.services.FormatService;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+import net.imagej.rendering.ArgbTile;
+import net.imagej.rendering.RenderView;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link MovieExportService}.
+ * <p>
+ * At most twice as many frames as there are workers are in flight at once:
+ * rendering runs ahead of writing by that many frames, and waits otherwise.
+ * Changing the parallelism during an export replaces the worker pool for
+ * later exports only; the old pool is shut down once its exports are done.
+ * </p>
+ */
+@Plugin(type = Service.class)
+public class DefaultMovieExportService extends AbstractService implements
+	MovieExportService
+{
+
+	@Parameter
+	private FormatService formatService;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private ExecutorService pool;
+
+	/** Number of exports using each pool, including retired ones. */
+	private final Map<ExecutorService, Integer> users = new IdentityHashMap<>();
+
+	// -- MovieExportService methods --
+
+	@Override
+	public long export(final RenderView view, final int axis,
+		final long[] position, final int zoom, final String destination)
+		throws IOException
+	{
+		if (axis < 0 || axis >= view.getPlaneDimensions()) {
+			throw new IllegalArgumentException("Invalid axis: " + axis);
+		}
+		final long frameCount = view.getPlaneSize(axis);
+		final LongFunction<ArgbTile> renderer = t -> {
+			final long[] pos = position.clone();
+			pos[axis] = t;
+			return view.renderPlane(pos, zoom);
+		};
+
+		// NB: The first frame determines the size of the movie.
+		final ArgbTile first = renderer.apply(0);
+		try (final FrameWriter writer = createWriter(destination, first
+			.getWidth(), first.getHeight(), frameCount))
+		{
+			return export(frameCount, t -> t == 0 ? first : renderer.apply(t),
+				writer);
+		}
+	}
+
+	@Override
+	public long export(final long frameCount,
+		final LongFunction<ArgbTile> renderer, final FrameWriter writer)
+		throws IOException
+	{
+		final ExecutorService workers;
+		final int window;
+		synchronized (this) {
+			workers = acquire();
+			window = 2 * parallelism;
+		}
+
+		final Queue<Future<ArgbTile>> pending = new ArrayDeque<>();
+		long next = 0, written = 0;
+		try {
+			while (written < frameCount) {
+				while (next < frameCount && pending.size() < window) {
+					final long t = next++;
+					pending.add(workers.submit(() -> renderer.apply(t)));
+				}
+				writer.write(written, await(pending.remove(), written));
+				written++;
+			}
+		}
+		finally {
+			for (final Future<ArgbTile> future : pending) {
+				future.cancel(true);
+			}
+			release(workers);
+		}
+		return written;
+	}
+
+	@Override
+	public FrameWriter createWriter(final String destination, final int width,
+		final int height, final long frameCount) throws IOException
+	{
+		return new ScifioFrameWriter(formatService, destination, width, height,
+			frameCount);
+	}
+
+	@Override
+	public synchronized int getParallelism() {
+		return parallelism;
+	}
+
+	@Override
+	public synchronized void setParallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " +
+				parallelism);
+		}
+		this.parallelism = parallelism;
+		if (pool != null && !users.containsKey(pool)) pool.shutdown();
+		pool = null;
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public synchronized void dispose() {
+		if (pool != null) pool.shutdownNow();
+		pool = null;
+	}
+
+	// -- Helper methods --
+
+	/** Gets the current pool, registering the caller as one of its users. */
+	private synchronized ExecutorService acquire() {
+		final ExecutorService p = pool();
+		final Integer count = users.get(p);
+		users.put(p, count == null ? 1 : count + 1);
+		return p;
+	}
+
+	/** Unregisters a user of the given pool, shutting it down if retired. */
+	private synchronized void release(final ExecutorService p) {
+		final int count = users.get(p) - 1;
+		if (count > 0) {
+			users.put(p, count);
+			return;
+		}
+		users.remove(p);
+		if (p != pool) p.shutdown();
+	}
+
+	private ExecutorService pool() {
+		if (pool == null) {
+			final AtomicInteger count = new AtomicInteger();
+			pool = Executors.newFixedThreadPool(parallelism, r -> {
+				final Thread t = new Thread(r, "movie-export-" + count
+					.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return pool;
+	}
+
+	/** Waits for a rendered frame. */
+	private static ArgbTile await(final Future<ArgbTile> future,
+		final long index) throws IOException
+	{
+		try {
+			return future.get();
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted at frame " + index);
+		}
+		catch (final ExecutionException exc) {
+			final Throwable cause = exc.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			throw new IOException("Cannot render frame " + index, cause);
+		}
+	}
+
+}
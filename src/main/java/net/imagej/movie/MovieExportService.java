@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.movie;
+
+import java.io.IOException;
+import java.util.function.LongFunction;
+
+import net.imagej.ImageJService;
+import net.imagej.rendering.ArgbTile;
+import net.imagej.rendering.RenderView;
+
+/**
+ * Interface for services which export movies headlessly.
+ * <p>
+ * Frames are rendered concurrently on a bounded pool of workers, and handed to
+ * a {@link FrameWriter} in sequence as soon as they are ready. Only a small
+ * window of frames is held in memory at any time, regardless of the length of
+ * the movie, so export time scales with the number of cores while memory use
+ * stays constant.
+ * </p>
+ */
+public interface MovieExportService extends ImageJService {
+
+	/**
+	 * Exports the planes of a view along one of its plane dimensions as a
+	 * movie, in any format which SCIFIO can write.
+	 * 
+	 * @param view The view to render.
+	 * @param axis The {@link RenderView#getPlaneDimensions() plane dimension}
+	 *          to animate.
+	 * @param position Position of the frames along the other plane
+	 *          dimensions; the coordinate of {@code axis} is ignored.
+	 * @param zoom The zoom level at which to render the frames.
+	 * @param destination The movie file to write, e.g. {@code movie.avi}.
+	 * @return The number of frames written.
+	 */
+	long export(RenderView view, int axis, long[] position, int zoom,
+		String destination) throws IOException;
+
+	/**
+	 * Renders and writes the frames of a movie.
+	 * 
+	 * @param frameCount The number of frames.
+	 * @param renderer Renders the frame with the given index. It is called
+	 *          concurrently, possibly out of order.
+	 * @param writer Receives the frames in order; it is not closed.
+	 * @return The number of frames written.
+	 * @throws IOException If a frame cannot be rendered or written; no further
+	 *           frames are rendered in that case.
+	 */
+	long export(long frameCount, LongFunction<ArgbTile> renderer,
+		FrameWriter writer) throws IOException;
+
+	/**
+	 * Creates a writer of movie frames via SCIFIO.
+	 * 
+	 * @param destination The movie file to write; its extension determines the
+	 *          format.
+	 */
+	FrameWriter createWriter(String destination, int width, int height,
+		long frameCount) throws IOException;
+
+	/**
+	 * Gets the number of frames rendered concurrently. Defaults to the number
+	 * of available processors.
+	 */
+	int getParallelism();
+
+	/** Sets the number of frames rendered concurrently. */
+	void setParallelism(int parallelism);
+
+}
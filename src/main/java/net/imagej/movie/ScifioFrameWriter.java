@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.movie;
+
+import io.scif.ByteArrayPlane;
+import io.scif.FormatException;
+import io.scif.ImageMetadata;
+import io.scif.Metadata;
+import io.scif.Writer;
+import io.scif.services.FormatService;
+import io.scif.util.FormatTools;
+
+import java.io.IOException;
+
+import net.imagej.axis.Axes;
+import net.imagej.rendering.ArgbTile;
+import net.imglib2.FinalInterval;
+
+/**
+ * {@link FrameWriter} which writes RGB frames via a SCIFIO {@link Writer}.
+ */
+class ScifioFrameWriter implements FrameWriter {
+
+	private final Writer writer;
+	private final ImageMetadata meta;
+	private final int width;
+	private final int height;
+
+	ScifioFrameWriter(final FormatService formatService,
+		final String destination, final int width, final int height,
+		final long frameCount) throws IOException
+	{
+		this.width = width;
+		this.height = height;
+		try {
+			writer = formatService.getWriterByExtension(destination);
+		}
+		catch (final FormatException exc) {
+			throw new IOException(exc);
+		}
+		boolean initialized = false;
+		try {
+			final Metadata metadata = writer.getFormat().createMetadata();
+			metadata.createImageMetadata(1);
+			meta = metadata.get(0);
+			meta.setAxisTypes(Axes.CHANNEL, Axes.X, Axes.Y, Axes.TIME);
+			meta.setAxisLengths(new long[] { 3, width, height, frameCount });
+			meta.setPlanarAxisCount(3);
+			meta.setInterleavedAxisCount(1);
+			meta.setPixelType(FormatTools.UINT8);
+			meta.setBitsPerPixel(8);
+			writer.setMetadata(metadata);
+			writer.setDest(destination);
+			initialized = true;
+		}
+		catch (final FormatException exc) {
+			throw new IOException(exc);
+		}
+		finally {
+			if (!initialized) close(writer);
+		}
+	}
+
+	// -- FrameWriter methods --
+
+	@Override
+	public void write(final long index, final ArgbTile frame)
+		throws IOException
+	{
+		if (frame.getWidth() != width || frame.getHeight() != height) {
+			throw new IOException("Frame " + index + " is " + frame.getWidth() +
+				"x" + frame.getHeight() + " rather than " + width + "x" + height);
+		}
+		final int[] argb = frame.getPixels();
+		final byte[] rgb = new byte[3 * argb.length];
+		for (int i = 0; i < argb.length; i++) {
+			rgb[3 * i] = (byte) (argb[i] >> 16);
+			rgb[3 * i + 1] = (byte) (argb[i] >> 8);
+			rgb[3 * i + 2] = (byte) argb[i];
+		}
+		final ByteArrayPlane plane = new ByteArrayPlane(writer.getContext(), meta,
+			new FinalInterval(3, width, height));
+		plane.setData(rgb);
+		try {
+			writer.savePlane(0, index, plane);
+		}
+		catch (final FormatException exc) {
+			throw new IOException(exc);
+		}
+	}
+
+	// -- Closeable methods --
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	// -- Helper methods --
+
+	/** Closes a writer which failed to initialize. */
+	private static void close(final Writer writer) {
+		try {
+			writer.close();
+		}
+		catch (final IOException exc) {
+			// NB: The initialization failure is the one worth reporting.
+		}
+	}
+
+}
@@ -0,0 +1,638 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.opcache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.imagej.ops.OpService;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.ComplexType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.scijava.module.Module;
+import org.scijava.module.ModuleInfo;
+import org.scijava.module.ModuleItem;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link OpCacheService}.
+ * <p>
+ * Results are kept in least-recently-used order. The weight of an image
+ * result is its pixel count times the bytes per pixel of its type; other
+ * results count as a small constant. Evicted results are spilled in the same
+ * order, and the earliest spilled results are deleted once the spill
+ * directory exceeds {@link #getMaxSpillSize()}.
+ * </p>
+ */
+@Plugin(type = Service.class)
+public class DefaultOpCacheService extends AbstractService implements
+	OpCacheService
+{
+
+	/** Nominal weight of results which are not images. */
+	private static final long OBJECT_WEIGHT = 64;
+
+	@Parameter
+	private OpService opService;
+
+	private final Map<Key, Entry> entries = //
+		new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<Key, Spill> spilled = new LinkedHashMap<>();
+
+	private long maxWeight = DEFAULT_MAX_WEIGHT;
+	private long maxSpillSize = DEFAULT_MAX_SPILL_SIZE;
+	private File spillDirectory;
+	private long spillSize;
+
+	private long weight;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long spills;
+
+	// -- OpCacheService methods --
+
+	@Override
+	public Object run(final String name, final Object... args) {
+		final Module module = opService.module(name, args);
+		final ModuleInfo info = module.getInfo();
+		final Key key = isCacheable(info) ? //
+			Key.of(info.getDelegateClassName(), args) : null;
+		if (key == null) return run(module);
+
+		synchronized (this) {
+			final Entry entry = entries.get(key);
+			if (entry != null) {
+				hits++;
+				return entry.result;
+			}
+			final Object restored = restore(key);
+			if (restored != null) {
+				hits++;
+				put(key, restored);
+				return restored;
+			}
+			misses++;
+		}
+		// NB: Run the op without holding the lock. Concurrent callers with the
+		// same arguments may both execute it; the last result is kept.
+		final Object result = run(module);
+		if (result != null) {
+			synchronized (this) {
+				put(key, result);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized long getMaxWeight() {
+		return maxWeight;
+	}
+
+	@Override
+	public synchronized void setMaxWeight(final long maxWeight) {
+		this.maxWeight = maxWeight;
+		evict();
+	}
+
+	@Override
+	public synchronized File getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	@Override
+	public synchronized void setSpillDirectory(final File directory) {
+		spillDirectory = directory;
+	}
+
+	@Override
+	public synchronized long getMaxSpillSize() {
+		return maxSpillSize;
+	}
+
+	@Override
+	public synchronized void setMaxSpillSize(final long maxSpillSize) {
+		this.maxSpillSize = maxSpillSize;
+		trimSpilled();
+	}
+
+	@Override
+	public synchronized long getSpillSize() {
+		return spillSize;
+	}
+
+	@Override
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	@Override
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	@Override
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized long getSpillCount() {
+		return spills;
+	}
+
+	@Override
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	@Override
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+		for (final Spill spill : spilled.values()) {
+			spill.file.delete();
+		}
+		spilled.clear();
+		spillSize = 0;
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		clear();
+	}
+
+	// -- Helper methods --
+
+	/** Gets whether none of the op's inputs is also an output. */
+	private boolean isCacheable(final ModuleInfo info) {
+		for (final ModuleItem<?> item : info.inputs()) {
+			if (item.isOutput()) return false;
+		}
+		return true;
+	}
+
+	/** Runs the given op module, returning its output(s) as OpService does. */
+	private Object run(final Module module) {
+		module.run();
+		final List<Object> outputs = new ArrayList<>();
+		for (final ModuleItem<?> output : module.getInfo().outputs()) {
+			outputs.add(output.getValue(module));
+		}
+		if (outputs.isEmpty()) return null;
+		return outputs.size() == 1 ? outputs.get(0) : outputs;
+	}
+
+	private void put(final Key key, final Object result) {
+		final long w = weight(result);
+		if (w > maxWeight) return;
+		final Entry old = entries.put(key, new Entry(result, w));
+		if (old != null) weight -= old.weight;
+		weight += w;
+		evict();
+	}
+
+	/** Evicts least recently used results until within the weight bound. */
+	private void evict() {
+		final Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet()
+			.iterator();
+		while (weight > maxWeight && iter.hasNext()) {
+			final Map.Entry<Key, Entry> eldest = iter.next();
+			iter.remove();
+			weight -= eldest.getValue().weight;
+			evictions++;
+			spill(eldest.getKey(), eldest.getValue().result);
+		}
+	}
+
+	/** Writes an evicted result to the spill directory, if possible. */
+	private void spill(final Key key, final Object result) {
+		if (spillDirectory == null) return;
+		final Object data = result instanceof NativeImg ? //
+			ImageData.of((NativeImg<?, ?>) result) : result;
+		if (!(data instanceof Serializable)) return;
+		File file = null;
+		try {
+			if (!spillDirectory.isDirectory()) spillDirectory.mkdirs();
+			file = File.createTempFile("op-", ".ser", spillDirectory);
+			try (final ObjectOutputStream out = new ObjectOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file))))
+			{
+				out.writeObject(data);
+			}
+		}
+		catch (final IOException exc) {
+			log().debug("Cannot spill op result", exc);
+			if (file != null) file.delete();
+			return;
+		}
+		final Spill spill = new Spill(file);
+		final Spill old = spilled.put(key, spill);
+		if (old != null) discard(old);
+		spillSize += spill.size;
+		spills++;
+		trimSpilled();
+	}
+
+	/** Deletes the earliest spilled results until within the size bound. */
+	private void trimSpilled() {
+		final Iterator<Spill> iter = spilled.values().iterator();
+		while (spillSize > maxSpillSize && iter.hasNext()) {
+			final Spill eldest = iter.next();
+			iter.remove();
+			discard(eldest);
+		}
+	}
+
+	private void discard(final Spill spill) {
+		spill.file.delete();
+		spillSize -= spill.size;
+	}
+
+	/** Reads back a spilled result, or returns null if there is none. */
+	private Object restore(final Key key) {
+		final Spill spill = spilled.remove(key);
+		if (spill == null) return null;
+		try (final ObjectInputStream in = new ObjectInputStream(
+			new BufferedInputStream(new FileInputStream(spill.file))))
+		{
+			final Object data = in.readObject();
+			return data instanceof ImageData ? ((ImageData) data).toImage() : data;
+		}
+		catch (final IOException | ClassNotFoundException exc) {
+			log().debug("Cannot restore op result", exc);
+			return null;
+		}
+		finally {
+			discard(spill);
+		}
+	}
+
+	/** Estimates the memory used by the given op result, in bytes. */
+	private static long weight(final Object result) {
+		if (result instanceof IterableInterval) {
+			final IterableInterval<?> image = (IterableInterval<?>) result;
+			if (image.size() == 0) return OBJECT_WEIGHT;
+			final Object type = image.firstElement();
+			final long bits = type instanceof RealType ? //
+				((RealType<?>) type).getBitsPerPixel() : 64;
+			return Math.max(OBJECT_WEIGHT, image.size() * bits / 8);
+		}
+		if (result instanceof RandomAccessibleInterval) {
+			final RandomAccessibleInterval<?> image =
+				(RandomAccessibleInterval<?>) result;
+			return Math.max(OBJECT_WEIGHT, Intervals.numElements(image) * 8);
+		}
+		if (result instanceof Collection) {
+			long sum = 0;
+			for (final Object o : (Collection<?>) result) {
+				sum += weight(o);
+			}
+			return Math.max(OBJECT_WEIGHT, sum);
+		}
+		return OBJECT_WEIGHT;
+	}
+
+	// -- Helper classes --
+
+	private static class Entry {
+
+		private final Object result;
+		private final long weight;
+
+		private Entry(final Object result, final long weight) {
+			this.result = result;
+			this.weight = weight;
+		}
+	}
+
+	/** A result written to the spill directory. */
+	private static class Spill {
+
+		private final File file;
+		private final long size;
+
+		private Spill(final File file) {
+			this.file = file;
+			size = file.length();
+		}
+	}
+
+	/**
+	 * The pixels of an image of native type, in a serializable form: its type,
+	 * dimensions and storage array.
+	 */
+	private static class ImageData implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String type;
+		private final long[] dims;
+		private final Object storage;
+
+		private ImageData(final String type, final long[] dims,
+			final Object storage)
+		{
+			this.type = type;
+			this.dims = dims;
+			this.storage = storage;
+		}
+
+		/**
+		 * Captures the pixels of the given image, or returns null if they do
+		 * not fit into a single array.
+		 */
+		private static ImageData of(final NativeImg<?, ?> image) {
+			final long size = Intervals.numElements(image);
+			if (size == 0 || size > Integer.MAX_VALUE) return null;
+			final ArrayImg<?, ?> arrayImg = image instanceof ArrayImg ? //
+				(ArrayImg<?, ?>) image : copy(image);
+			final Object access = arrayImg.update(null);
+			if (!(access instanceof ArrayDataAccess)) return null;
+			return new ImageData(arrayImg.firstElement().getClass().getName(),
+				Intervals.dimensionsAsLongArray(arrayImg),
+				((ArrayDataAccess<?>) access).getCurrentStorageArray());
+		}
+
+		/** Copies the given image into an {@link ArrayImg}. */
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		private static ArrayImg<?, ?> copy(final NativeImg<?, ?> image) {
+			final NativeType type = (NativeType) ((NativeType) image.firstElement())
+				.createVariable();
+			final ArrayImg copy = (ArrayImg) new ArrayImgFactory(type).create(image);
+			final Cursor in = Views.flatIterable((NativeImg) image).cursor();
+			final Cursor out = copy.cursor();
+			while (out.hasNext()) {
+				((Type) out.next()).set((Type) in.next());
+			}
+			return copy;
+		}
+
+		/** Recreates the image. */
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		private Img<?> toImage() throws IOException {
+			final NativeType t;
+			try {
+				t = (NativeType) Class.forName(type).newInstance();
+			}
+			catch (final ReflectiveOperationException | ClassCastException exc) {
+				throw new IOException("Invalid pixel type: " + type, exc);
+			}
+			final ArrayImg image = (ArrayImg) new ArrayImgFactory(t).create(dims);
+			final Object target = ((ArrayDataAccess) image.update(null))
+				.getCurrentStorageArray();
+			final int length = Array.getLength(storage);
+			if (target.getClass() != storage.getClass() || //
+				Array.getLength(target) != length)
+			{
+				throw new IOException("Invalid pixel array for type " + type);
+			}
+			System.arraycopy(storage, 0, target, 0, length);
+			return image;
+		}
+	}
+
+	/** Identifies an op execution by op class and argument values. */
+	private static class Key {
+
+		/** Argument types which are compared by value. */
+		private static final Set<Class<?>> VALUE_TYPES = new HashSet<>(Arrays
+			.<Class<?>> asList(String.class, Boolean.class, Character.class,
+				Byte.class, Short.class, Integer.class, Long.class, Float.class,
+				Double.class, BigInteger.class, BigDecimal.class));
+
+		private final String op;
+		private final List<Object> args;
+		private final int hash;
+
+		private Key(final String op, final List<Object> args) {
+			this.op = op;
+			this.args = Collections.unmodifiableList(args);
+			hash = 31 * op.hashCode() + this.args.hashCode();
+		}
+
+		/**
+		 * Identifies the given op execution, or returns null if any argument
+		 * cannot be compared by value.
+		 */
+		private static Key of(final String op, final Object[] args) {
+			final List<Object> list = new ArrayList<>(args.length);
+			for (final Object arg : args) {
+				final Object value = fingerprint(arg);
+				if (value == null && arg != null) return null;
+				list.add(value);
+			}
+			return new Key(op, list);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Key)) return false;
+			final Key other = (Key) o;
+			return hash == other.hash && op.equals(other.op) && args.equals(
+				other.args);
+		}
+
+		/**
+		 * Gets a value-comparable stand-in for the given argument, or null if
+		 * there is none.
+		 */
+		private static Object fingerprint(final Object arg) {
+			if (arg == null) return null;
+			if (arg instanceof RandomAccessibleInterval) {
+				final RandomAccessibleInterval<?> image =
+					(RandomAccessibleInterval<?>) arg;
+				return new ImageFingerprint(image, Views.flatIterable(image));
+			}
+			if (arg instanceof IterableInterval) {
+				final IterableInterval<?> image = (IterableInterval<?>) arg;
+				return new ImageFingerprint(image, image);
+			}
+			if (arg instanceof ComplexType) {
+				final ComplexType<?> c = (ComplexType<?>) arg;
+				return Arrays.asList(arg.getClass().getName(), c.getRealDouble(), c
+					.getImaginaryDouble());
+			}
+			if (!isValue(arg)) return null;
+			if (arg.getClass().isArray()) {
+				return Arrays.asList(arg.getClass().getName(), Arrays.deepToString(
+					new Object[] { arg }));
+			}
+			return arg;
+		}
+
+		/**
+		 * Gets whether the given object is immutable, or an array of such
+		 * objects, so that its string representation identifies it.
+		 */
+		private static boolean isValue(final Object o) {
+			if (o == null || o instanceof Enum || o instanceof Class) return true;
+			final Class<?> c = o.getClass();
+			if (VALUE_TYPES.contains(c)) return true;
+			if (!c.isArray()) return false;
+			if (c.getComponentType().isPrimitive()) return true;
+			for (final Object element : (Object[]) o) {
+				if (!isValue(element)) return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Content-based identity of an image argument: a SHA-256 digest of its
+	 * pixel values. Unlike a plain hash, two different images cannot
+	 * practically share a digest, so a matching fingerprint is a cache hit.
+	 */
+	private static class ImageFingerprint {
+
+		private final String type;
+		private final long[] min;
+		private final long[] max;
+		private final byte[] digest;
+
+		private ImageFingerprint(final Interval interval,
+			final IterableInterval<?> pixels)
+		{
+			min = Intervals.minAsLongArray(interval);
+			max = Intervals.maxAsLongArray(interval);
+			type = pixels.size() == 0 ? "" : //
+				pixels.firstElement().getClass().getName();
+			final MessageDigest md = sha256();
+			final ByteBuffer buffer = ByteBuffer.allocate(8192);
+			for (final Object pixel : pixels) {
+				if (buffer.remaining() < 16) flush(md, buffer);
+				if (pixel instanceof RealType) {
+					buffer.putDouble(((RealType<?>) pixel).getRealDouble());
+				}
+				else if (pixel instanceof ComplexType) {
+					final ComplexType<?> c = (ComplexType<?>) pixel;
+					buffer.putDouble(c.getRealDouble());
+					buffer.putDouble(c.getImaginaryDouble());
+				}
+				else {
+					flush(md, buffer);
+					final byte[] bytes = String.valueOf(pixel).getBytes(
+						StandardCharsets.UTF_8);
+					buffer.putInt(bytes.length);
+					flush(md, buffer);
+					md.update(bytes);
+				}
+			}
+			flush(md, buffer);
+			digest = md.digest();
+		}
+
+		private static MessageDigest sha256() {
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			}
+			catch (final NoSuchAlgorithmException exc) {
+				// NB: Every Java platform supports SHA-256.
+				throw new IllegalStateException(exc);
+			}
+		}
+
+		private static void flush(final MessageDigest md,
+			final ByteBuffer buffer)
+		{
+			md.update(buffer.array(), 0, buffer.position());
+			buffer.clear();
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(digest);
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof ImageFingerprint)) return false;
+			final ImageFingerprint other = (ImageFingerprint) o;
+			return Arrays.equals(digest, other.digest) && type.equals(other.type) &&
+				Arrays.equals(min, other.min) && Arrays.equals(max, other.max);
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.opcache;
+
+import java.io.File;
+
+import net.imagej.ImageJService;
+import net.imagej.ops.OpService;
+
+/**
+ * Interface for services which memoize the results of ops.
+ * <p>
+ * {@link #run(String, Object...)} behaves like {@link OpService#run}, but
+ * reuses the result of an earlier call with the same op and equal arguments.
+ * Images among the arguments are compared by content, so a result is reused
+ * even for a different image instance with identical pixels. Other arguments
+ * must be values: strings, boxed primitives, enums, classes, numeric types,
+ * or arrays thereof. Calls with any other argument, which could only be
+ * compared by identity while possibly changing between calls, bypass the
+ * cache, as do ops which write into one of their arguments (i.e., with a
+ * {@code BOTH} parameter).
+ * </p>
+ * <p>
+ * Cached results are shared between callers, and must not be modified.
+ * </p>
+ */
+public interface OpCacheService extends ImageJService {
+
+	/** Default bound on the total estimated size of cached results, in bytes. */
+	long DEFAULT_MAX_WEIGHT = 256L * 1024 * 1024;
+
+	/** Default bound on the total size of spilled results, in bytes. */
+	long DEFAULT_MAX_SPILL_SIZE = 1024L * 1024 * 1024;
+
+	/**
+	 * Executes the given op with the given arguments, or returns the result
+	 * of an identical earlier execution.
+	 * 
+	 * @see OpService#run(String, Object...)
+	 */
+	Object run(String name, Object... args);
+
+	/** Gets the bound on the total estimated size of cached results. */
+	long getMaxWeight();
+
+	/**
+	 * Sets the bound on the total estimated size of cached results, evicting
+	 * least recently used results as needed.
+	 */
+	void setMaxWeight(long maxWeight);
+
+	/** Gets the directory to which evicted results are spilled, if any. */
+	File getSpillDirectory();
+
+	/**
+	 * Sets the directory to which evicted results are written, so that they
+	 * can be read back rather than recomputed. Images of native types are
+	 * written as their type, dimensions and pixel array; other results must be
+	 * {@link java.io.Serializable}. Null (the default) disables spilling.
+	 */
+	void setSpillDirectory(File directory);
+
+	/** Gets the bound on the total size of spilled results, in bytes. */
+	long getMaxSpillSize();
+
+	/**
+	 * Sets the bound on the total size of spilled results, deleting the
+	 * earliest spilled results as needed.
+	 */
+	void setMaxSpillSize(long maxSpillSize);
+
+	/** Gets the total size of the spilled results, in bytes. */
+	long getSpillSize();
+
+	/** Gets the number of calls answered from memory or from spilled results. */
+	long getHitCount();
+
+	/** Gets the number of calls which executed the op. */
+	long getMissCount();
+
+	/** Gets the number of results evicted from memory. */
+	long getEvictionCount();
+
+	/** Gets the number of evicted results written to the spill directory. */
+	long getSpillCount();
+
+	/** Gets the total estimated size of the results held in memory. */
+	long getWeight();
+
+	/** Gets the number of results held in memory. */
+	int getSize();
+
+	/** Discards all cached results, including spilled ones. */
+	void clear();
+
+}
@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJService;
+
+import org.scijava.module.ModuleInfo;
+
+/**
+ * Interface for services which run a module (e.g., a script or command) over
+ * many image files.
+ * <p>
+ * Each file is opened with SCIFIO and passed to the module as its
+ * {@link Dataset} input. Reading and processing happen in separate stages, so
+ * that I/O overlaps with computation; the reading stage blocks whenever the
+ * processing stage falls behind, to bound the number of images in memory.
+ * </p>
+ */
+public interface BatchPipelineService extends ImageJService {
+
+	/**
+	 * Finds the files matching the given pattern.
+	 * 
+	 * @param pattern Either a directory, in which case all files it contains
+	 *          are returned, or a path whose last component is a glob (e.g.
+	 *          {@code /data/*.tif}) matched against the files in its parent
+	 *          directory.
+	 * @return The matching files, in lexicographic order.
+	 * @throws IOException If the directory cannot be listed.
+	 */
+	List<File> findInputs(String pattern) throws IOException;
+
+	/**
+	 * Runs the given module once for each file matching the given pattern,
+	 * using one processing thread per available core.
+	 * 
+	 * @param pattern Directory or glob of input files; see
+	 *          {@link #findInputs(String)}.
+	 * @param module The module to run.
+	 * @param inputs Additional inputs to the module, shared by all runs.
+	 * @see #process(Collection, ModuleInfo, String, Map, int)
+	 */
+	default BatchReport process(final String pattern, final ModuleInfo module,
+		final Map<String, Object> inputs) throws IOException, InterruptedException
+	{
+		return process(findInputs(pattern), module, null, inputs, Runtime
+			.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Runs the given module once for each of the given files.
+	 * 
+	 * @param files The files to open and process.
+	 * @param module The module to run.
+	 * @param inputName Name of the module input which receives each opened
+	 *          {@link Dataset}, or null to use the first input of that type.
+	 * @param inputs Additional inputs to the module, shared by all runs.
+	 * @param parallelism Maximum number of files processed concurrently.
+	 * @return A report of the batch run, including the failed files.
+	 * @throws IllegalArgumentException If the module has no suitable input.
+	 * @throws InterruptedException If interrupted while waiting for the batch
+	 *           to complete; files not yet processed are then abandoned.
+	 */
+	BatchReport process(Collection<File> files, ModuleInfo module,
+		String inputName, Map<String, Object> inputs, int parallelism)
+		throws InterruptedException;
+
+}
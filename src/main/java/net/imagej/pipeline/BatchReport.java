@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pipeline;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summary of a batch run of a {@link BatchPipelineService}.
+ */
+public class BatchReport {
+
+	private final int count;
+	private final long elapsedTime;
+	private final Map<File, Long> latencies;
+	private final Map<File, Throwable> failures;
+
+	BatchReport(final int count, final long elapsedTime,
+		final Map<File, Long> latencies, final Map<File, Throwable> failures)
+	{
+		this.count = count;
+		this.elapsedTime = elapsedTime;
+		this.latencies = Collections.unmodifiableMap(new LinkedHashMap<>(
+			latencies));
+		this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(
+			failures));
+	}
+
+	// -- BatchReport methods --
+
+	/** Gets the number of files submitted for processing. */
+	public int getCount() {
+		return count;
+	}
+
+	/** Gets the number of files which were opened and processed successfully. */
+	public int getSucceededCount() {
+		return latencies.size() - failures.size();
+	}
+
+	/**
+	 * Gets the files which could not be opened or processed, together with the
+	 * reason why.
+	 */
+	public Map<File, Throwable> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Gets the time in nanoseconds from the start of reading each completed
+	 * file until the end of its processing, including failed files.
+	 */
+	public Map<File, Long> getLatencies() {
+		return latencies;
+	}
+
+	/** Gets the wall-clock duration of the batch run. */
+	public long getElapsedTime(final TimeUnit unit) {
+		return unit.convert(elapsedTime, TimeUnit.NANOSECONDS);
+	}
+
+	/** Gets the longest latency of any file. */
+	public long getMaxLatency(final TimeUnit unit) {
+		long max = 0;
+		for (final long latency : latencies.values()) {
+			max = Math.max(max, latency);
+		}
+		return unit.convert(max, TimeUnit.NANOSECONDS);
+	}
+
+	/** Gets the mean latency of the completed files. */
+	public long getMeanLatency(final TimeUnit unit) {
+		if (latencies.isEmpty()) return 0;
+		long sum = 0;
+		for (final long latency : latencies.values()) {
+			sum += latency;
+		}
+		return unit.convert(sum / latencies.size(), TimeUnit.NANOSECONDS);
+	}
+
+	/** Gets the number of completed files per second of wall-clock time. */
+	public double getThroughput() {
+		if (elapsedTime == 0) return 0;
+		return latencies.size() * 1e9 / elapsedTime;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return String.format(
+			"%d/%d files succeeded in %d ms (%.2f files/s, mean latency %d ms, " +
+				"max latency %d ms)", getSucceededCount(), count, getElapsedTime(
+					TimeUnit.MILLISECONDS), getThroughput(), getMeanLatency(
+						TimeUnit.MILLISECONDS), getMaxLatency(TimeUnit.MILLISECONDS));
+	}
+
+}
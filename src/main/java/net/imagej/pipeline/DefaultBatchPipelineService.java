@@ -0,0 +1,276 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pipeline;
+
+import io.scif.services.DatasetIOService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imagej.Dataset;
+
+import org.scijava.Cancelable;
+import org.scijava.log.LogService;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleInfo;
+import org.scijava.module.ModuleItem;
+import org.scijava.module.ModuleService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link BatchPipelineService}.
+ * <p>
+ * A small pool of reader threads opens the files, handing each opened
+ * {@link Dataset} to the processing threads through a queue with room for
+ * one image per processing thread.
+ * </p>
+ */
+@Plugin(type = Service.class)
+public class DefaultBatchPipelineService extends AbstractService implements
+	BatchPipelineService
+{
+
+	/** Maximum number of reader threads, which mostly wait on I/O. */
+	private static final int MAX_READERS = 2;
+
+	@Parameter
+	private DatasetIOService datasetIOService;
+
+	@Parameter
+	private ModuleService moduleService;
+
+	@Parameter
+	private LogService log;
+
+	// -- BatchPipelineService methods --
+
+	@Override
+	public List<File> findInputs(final String pattern) throws IOException {
+		final File file = new File(pattern);
+		final File dir;
+		final PathMatcher matcher;
+		if (file.isDirectory()) {
+			dir = file;
+			matcher = null;
+		}
+		else {
+			dir = file.getAbsoluteFile().getParentFile();
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + file
+				.getName());
+		}
+		final File[] list = dir == null ? null : dir.listFiles();
+		if (list == null) throw new IOException("Cannot list directory: " + dir);
+
+		final List<File> files = new ArrayList<>();
+		for (final File f : list) {
+			if (!f.isFile()) continue;
+			if (matcher == null || matcher.matches(Paths.get(f.getName()))) {
+				files.add(f);
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	@Override
+	public BatchReport process(final Collection<File> files,
+		final ModuleInfo module, final String inputName,
+		final Map<String, Object> inputs, final int parallelism)
+		throws InterruptedException
+	{
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " +
+				parallelism);
+		}
+		final String datasetInput = //
+			inputName == null ? datasetInput(module) : inputName;
+		final Map<String, Object> sharedInputs = //
+			inputs == null ? Collections.<String, Object> emptyMap() : inputs;
+
+		final Map<File, Long> latencies = //
+			Collections.synchronizedMap(new LinkedHashMap<File, Long>());
+		final Map<File, Throwable> failures = //
+			Collections.synchronizedMap(new LinkedHashMap<File, Throwable>());
+		final BlockingQueue<Opened> opened = //
+			new ArrayBlockingQueue<>(parallelism);
+		final AtomicInteger remaining = new AtomicInteger(files.size());
+
+		final ExecutorService readers = Executors.newFixedThreadPool(Math.min(
+			MAX_READERS, parallelism), threadFactory("reader"));
+		final ExecutorService workers = Executors.newFixedThreadPool(parallelism,
+			threadFactory("worker"));
+		final long start = System.nanoTime();
+		try {
+			for (final File file : files) {
+				readers.execute(() -> read(file, opened));
+			}
+			final List<Future<Void>> done = new ArrayList<>();
+			for (int i = 0; i < parallelism; i++) {
+				done.add(workers.submit(() -> {
+					while (remaining.getAndDecrement() > 0) {
+						run(opened.take(), module, datasetInput, sharedInputs, latencies,
+							failures);
+					}
+					return null;
+				}));
+			}
+			for (final Future<Void> future : done) {
+				try {
+					future.get();
+				}
+				catch (final ExecutionException exc) {
+					// NB: Workers only throw when interrupted; see run.
+					throw new IllegalStateException(exc.getCause());
+				}
+			}
+		}
+		finally {
+			readers.shutdownNow();
+			workers.shutdownNow();
+		}
+		return new BatchReport(files.size(), System.nanoTime() - start, latencies,
+			failures);
+	}
+
+	// -- Helper methods --
+
+	/** Opens the given file, passing the result on to the processing stage. */
+	private void read(final File file, final BlockingQueue<Opened> opened) {
+		final Opened item = new Opened(file);
+		try {
+			item.dataset = datasetIOService.open(file.getAbsolutePath());
+		}
+		catch (final Throwable t) {
+			// NB: Even errors must reach a worker, which would wait forever else.
+			item.error = t;
+		}
+		finally {
+			try {
+				// NB: Blocks while all processing threads are busy.
+				opened.put(item);
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/** Runs the module on the given opened file, recording the outcome. */
+	private void run(final Opened item, final ModuleInfo module,
+		final String datasetInput, final Map<String, Object> inputs,
+		final Map<File, Long> latencies, final Map<File, Throwable> failures)
+		throws InterruptedException
+	{
+		Throwable error = item.error;
+		if (error == null) {
+			final Map<String, Object> moduleInputs = new HashMap<>(inputs);
+			moduleInputs.put(datasetInput, item.dataset);
+			try {
+				final Module m = moduleService.run(module, true, moduleInputs).get();
+				if (m instanceof Cancelable && ((Cancelable) m).isCanceled()) {
+					error = new CancellationException(((Cancelable) m)
+						.getCancelReason());
+				}
+			}
+			catch (final ExecutionException exc) {
+				error = exc.getCause();
+			}
+			catch (final RuntimeException exc) {
+				error = exc;
+			}
+		}
+		latencies.put(item.file, System.nanoTime() - item.start);
+		if (error != null) {
+			failures.put(item.file, error);
+			log.warn("Batch processing failed for " + item.file, error);
+		}
+	}
+
+	/** Gets the name of the first {@link Dataset} input of the module. */
+	private String datasetInput(final ModuleInfo module) {
+		for (final ModuleItem<?> item : module.inputs()) {
+			if (Dataset.class.isAssignableFrom(item.getType())) {
+				return item.getName();
+			}
+		}
+		throw new IllegalArgumentException("Module has no dataset input: " +
+			module.getTitle());
+	}
+
+	private ThreadFactory threadFactory(final String role) {
+		final AtomicInteger count = new AtomicInteger();
+		return r -> {
+			final Thread t = new Thread(r, "batch-" + role + "-" + count
+				.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	// -- Helper classes --
+
+	/** A file which has been opened, or failed to open. */
+	private static class Opened {
+
+		private final File file;
+		private final long start = System.nanoTime();
+		private Dataset dataset;
+		private Throwable error;
+
+		private Opened(final File file) {
+			this.file = file;
+		}
+	}
+
+}
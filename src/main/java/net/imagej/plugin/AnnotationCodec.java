@@ -0,0 +1,360 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugin;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes annotation instances in a compact binary form.
+ * <p>
+ * Annotations are restored as dynamic proxies. Class and enum values are only
+ * resolved when the corresponding annotation member is first invoked, so that
+ * reading an annotation does not trigger any class loading beyond the
+ * annotation types themselves.
+ * </p>
+ */
+final class AnnotationCodec {
+
+	private static final byte STRING = 0;
+	private static final byte BOOLEAN = 1;
+	private static final byte BYTE = 2;
+	private static final byte CHAR = 3;
+	private static final byte SHORT = 4;
+	private static final byte INT = 5;
+	private static final byte LONG = 6;
+	private static final byte FLOAT = 7;
+	private static final byte DOUBLE = 8;
+	private static final byte CLASS = 9;
+	private static final byte ENUM = 10;
+	private static final byte ANNOTATION = 11;
+	private static final byte ARRAY = 12;
+
+	private AnnotationCodec() {
+		// prevent instantiation of utility class
+	}
+
+	// -- AnnotationCodec methods --
+
+	/** Writes the given annotation, including all of its member values. */
+	public static void write(final DataOutput out, final Annotation annotation)
+		throws IOException
+	{
+		final Class<? extends Annotation> type = annotation.annotationType();
+		out.writeUTF(type.getName());
+		final Method[] members = type.getDeclaredMethods();
+		out.writeShort(members.length);
+		for (final Method member : members) {
+			out.writeUTF(member.getName());
+			writeValue(out, invoke(member, annotation));
+		}
+	}
+
+	/** Reads an annotation previously written with {@link #write}. */
+	public static Annotation read(final DataInput in,
+		final ClassLoader classLoader) throws IOException
+	{
+		final String typeName = in.readUTF();
+		final Class<? extends Annotation> type;
+		try {
+			type = classLoader.loadClass(typeName).asSubclass(Annotation.class);
+		}
+		catch (final ClassNotFoundException | ClassCastException exc) {
+			throw new IOException("Invalid annotation type: " + typeName, exc);
+		}
+		final int count = in.readUnsignedShort();
+		final Map<String, Object> values = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			final String name = in.readUTF();
+			values.put(name, readValue(in, classLoader));
+		}
+		final Handler handler = new Handler(type, values, classLoader);
+		return type.cast(Proxy.newProxyInstance(classLoader, new Class<?>[] {
+			type }, handler));
+	}
+
+	// -- Helper methods --
+
+	private static Object invoke(final Method member,
+		final Annotation annotation) throws IOException
+	{
+		try {
+			return member.invoke(annotation);
+		}
+		catch (final IllegalAccessException | InvocationTargetException exc) {
+			throw new IOException("Cannot read annotation member: " + member, exc);
+		}
+	}
+
+	private static void writeValue(final DataOutput out, final Object value)
+		throws IOException
+	{
+		if (value instanceof String) {
+			out.writeByte(STRING);
+			out.writeUTF((String) value);
+		}
+		else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		}
+		else if (value instanceof Character) {
+			out.writeByte(CHAR);
+			out.writeChar((Character) value);
+		}
+		else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		}
+		else if (value instanceof Integer) {
+			out.writeByte(INT);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof Class) {
+			out.writeByte(CLASS);
+			out.writeUTF(((Class<?>) value).getName());
+		}
+		else if (value instanceof Enum) {
+			out.writeByte(ENUM);
+			out.writeUTF(((Enum<?>) value).name());
+		}
+		else if (value instanceof Annotation) {
+			out.writeByte(ANNOTATION);
+			write(out, (Annotation) value);
+		}
+		else if (value != null && value.getClass().isArray()) {
+			out.writeByte(ARRAY);
+			final int length = Array.getLength(value);
+			out.writeInt(length);
+			for (int i = 0; i < length; i++) {
+				writeValue(out, Array.get(value, i));
+			}
+		}
+		else {
+			throw new IOException("Unsupported annotation value: " + value);
+		}
+	}
+
+	private static Object readValue(final DataInput in,
+		final ClassLoader classLoader) throws IOException
+	{
+		final byte tag = in.readByte();
+		switch (tag) {
+			case STRING:
+				return in.readUTF();
+			case BOOLEAN:
+				return in.readBoolean();
+			case BYTE:
+				return in.readByte();
+			case CHAR:
+				return in.readChar();
+			case SHORT:
+				return in.readShort();
+			case INT:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case FLOAT:
+				return in.readFloat();
+			case DOUBLE:
+				return in.readDouble();
+			case CLASS:
+				return new ClassRef(in.readUTF());
+			case ENUM:
+				return new EnumRef(in.readUTF());
+			case ANNOTATION:
+				return read(in, classLoader);
+			case ARRAY:
+				final int length = in.readInt();
+				final List<Object> elements = new ArrayList<>(length);
+				for (int i = 0; i < length; i++) {
+					elements.add(readValue(in, classLoader));
+				}
+				return elements;
+			default:
+				throw new IOException("Invalid value tag: " + tag);
+		}
+	}
+
+	// -- Helper classes --
+
+	/** Unresolved class value. */
+	private static class ClassRef {
+
+		private final String name;
+
+		public ClassRef(final String name) {
+			this.name = name;
+		}
+	}
+
+	/** Unresolved enum value. */
+	private static class EnumRef {
+
+		private final String name;
+
+		public EnumRef(final String name) {
+			this.name = name;
+		}
+	}
+
+	/** Invocation handler backing a restored annotation. */
+	private static class Handler implements InvocationHandler {
+
+		private final Class<? extends Annotation> type;
+		private final Map<String, Object> values;
+		private final ClassLoader classLoader;
+
+		public Handler(final Class<? extends Annotation> type,
+			final Map<String, Object> values, final ClassLoader classLoader)
+		{
+			this.type = type;
+			this.values = values;
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method,
+			final Object[] args)
+		{
+			final String name = method.getName();
+			if (args != null && args.length == 1 && name.equals("equals")) {
+				return equals(proxy, args[0]);
+			}
+			if (args != null && args.length > 0) {
+				throw new UnsupportedOperationException(method.toString());
+			}
+			if (name.equals("annotationType")) return type;
+			if (name.equals("hashCode")) return hashCode(proxy);
+			if (name.equals("toString")) return "@" + type.getName() + values;
+			return value(method);
+		}
+
+		/** Gets the value of the given member. */
+		private Object value(final Method member) {
+			final String name = member.getName();
+			if (!values.containsKey(name)) return member.getDefaultValue();
+			return resolve(values.get(name), member.getReturnType());
+		}
+
+		/** Compares member by member, as specified by {@link Annotation}. */
+		private boolean equals(final Object proxy, final Object other) {
+			if (proxy == other) return true;
+			if (!type.isInstance(other)) return false;
+			for (final Method member : type.getDeclaredMethods()) {
+				final Object otherValue;
+				try {
+					member.setAccessible(true);
+					otherValue = member.invoke(other);
+				}
+				catch (final IllegalAccessException | InvocationTargetException exc) {
+					return false;
+				}
+				// NB: deepEquals compares primitive arrays by content, too.
+				if (!Arrays.deepEquals(new Object[] { value(member) },
+					new Object[] { otherValue }))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/** Computes the hash code specified by {@link Annotation#hashCode()}. */
+		private int hashCode(final Object proxy) {
+			int hash = 0;
+			for (final Method member : type.getDeclaredMethods()) {
+				// NB: deepHashCode of a one-element array is 31 + the hash code of
+				// the element, with arrays hashed by content.
+				final int valueHash = Arrays.deepHashCode(new Object[] { value(
+					member) }) - 31;
+				hash += (127 * member.getName().hashCode()) ^ valueHash;
+			}
+			return hash;
+		}
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		private Object resolve(final Object value, final Class<?> type) {
+			if (value instanceof ClassRef) {
+				final String className = ((ClassRef) value).name;
+				try {
+					return classLoader.loadClass(className);
+				}
+				catch (final ClassNotFoundException exc) {
+					throw new TypeNotPresentException(className, exc);
+				}
+			}
+			if (value instanceof EnumRef) {
+				return Enum.valueOf((Class<Enum>) type, ((EnumRef) value).name);
+			}
+			if (value instanceof List) {
+				final List<?> elements = (List<?>) value;
+				final Class<?> componentType = type.getComponentType();
+				final Object array = Array.newInstance(componentType, elements
+					.size());
+				for (int i = 0; i < elements.size(); i++) {
+					Array.set(array, i, resolve(elements.get(i), componentType));
+				}
+				return array;
+			}
+			return value;
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugin;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginFinder;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.plugin.SciJavaPlugin;
+
+/**
+ * A {@link PluginFinder} which serves plugin metadata read from a
+ * {@link PluginIndexCache}, rather than scanning the class path for annotation
+ * indexes.
+ */
+public class CachedPluginFinder implements PluginFinder {
+
+	/** Plugin annotations, keyed on plugin class name. */
+	private final Map<String, Plugin> plugins;
+
+	/** Class loader to use when loading the plugin classes. */
+	private final ClassLoader classLoader;
+
+	public CachedPluginFinder(final Map<String, Plugin> plugins,
+		final ClassLoader classLoader)
+	{
+		this.plugins = new LinkedHashMap<>(plugins);
+		this.classLoader = classLoader;
+	}
+
+	// -- PluginFinder methods --
+
+	@Override
+	public HashMap<String, Throwable> findPlugins(
+		final List<PluginInfo<?>> infos)
+	{
+		final HashMap<String, Throwable> exceptions = new HashMap<>();
+		for (final Map.Entry<String, Plugin> entry : plugins.entrySet()) {
+			final String className = entry.getKey();
+			try {
+				infos.add(createInfo(className, entry.getValue()));
+			}
+			catch (final Throwable t) {
+				exceptions.put(className, t);
+			}
+		}
+		return exceptions;
+	}
+
+	// -- Helper methods --
+
+	private PluginInfo<SciJavaPlugin> createInfo(final String className,
+		final Plugin plugin)
+	{
+		// NB: This mirrors the logic of DefaultPluginFinder.
+		@SuppressWarnings("unchecked")
+		final Class<SciJavaPlugin> type = (Class<SciJavaPlugin>) plugin.type();
+		return new PluginInfo<>(className, type, plugin, classLoader);
+	}
+
+}
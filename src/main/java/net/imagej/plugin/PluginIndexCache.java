@@ -0,0 +1,264 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.scijava.plugin.DefaultPluginFinder;
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.plugin.PluginInfo;
+
+/**
+ * Ahead-of-time cache of the SciJava {@link PluginIndex}.
+ * <p>
+ * Building the plugin index normally requires reading and parsing the
+ * annotation index of every JAR file on the class path. This class serializes
+ * the merged result into a single binary file, which can then be used to
+ * populate the plugin index directly, for as long as the set of annotation
+ * indexes on the class path remains the same.
+ * </p>
+ * <p>
+ * The cache is generated at build time into
+ * {@code META-INF/imagej/plugin-index.bin}; see {@link #main}. An alternative
+ * location can be given via the {@code imagej.plugin.cache} system property,
+ * which can also be set to {@code none} to disable the cache altogether.
+ * </p>
+ */
+public final class PluginIndexCache {
+
+	/** Class path resource from which the cache is read by default. */
+	public static final String RESOURCE = "META-INF/imagej/plugin-index.bin";
+
+	/** System property overriding the location of the cache. */
+	public static final String CACHE_PROPERTY = "imagej.plugin.cache";
+
+	/** Annotation index resource of the SciJava plugin framework. */
+	private static final String INDEX_RESOURCE = "META-INF/json/" +
+		Plugin.class.getName();
+
+	private static final int MAGIC = 0x494a5049; // IJPI
+	private static final int VERSION = 2;
+
+	private PluginIndexCache() {
+		// prevent instantiation of utility class
+	}
+
+	// -- PluginIndexCache methods --
+
+	/**
+	 * Creates a plugin index backed by the cache, if available and still valid
+	 * for the current class path.
+	 * 
+	 * @return A new plugin index, or null if there is no valid cache, in which
+	 *         case the caller should fall back to the default plugin index.
+	 */
+	public static PluginIndex load() {
+		final String location = System.getProperty(CACHE_PROPERTY);
+		if ("none".equals(location)) return null;
+		final ClassLoader classLoader = classLoader();
+		try {
+			final InputStream in = location == null ? //
+				classLoader.getResourceAsStream(RESOURCE) : //
+				new FileInputStream(location);
+			if (in == null) return null; // no cache
+			try {
+				return load(in, classLoader);
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (final IOException exc) {
+			// NB: A broken cache is not fatal; discover plugins as usual.
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a plugin index backed by the cache read from the given stream.
+	 * 
+	 * @return A new plugin index, or null if the cache does not match the
+	 *         annotation indexes visible to the given class loader.
+	 */
+	public static PluginIndex load(final InputStream in,
+		final ClassLoader classLoader) throws IOException
+	{
+		final DataInputStream din = //
+			new DataInputStream(new BufferedInputStream(in));
+		if (din.readInt() != MAGIC) throw new IOException("Not a plugin cache");
+		if (din.readInt() != VERSION) return null; // incompatible cache
+		if (!din.readUTF().equals(fingerprint(classLoader))) return null; // stale
+
+		final int count = din.readInt();
+		final Map<String, Plugin> plugins = new LinkedHashMap<>();
+		for (int i = 0; i < count; i++) {
+			final String className = din.readUTF();
+			plugins.put(className, (Plugin) AnnotationCodec.read(din, classLoader));
+		}
+		return new PluginIndex(new CachedPluginFinder(plugins, classLoader));
+	}
+
+	/**
+	 * Discovers the plugins visible to the given class loader, and writes them
+	 * to the given stream as a cache.
+	 */
+	public static void write(final OutputStream out,
+		final ClassLoader classLoader) throws IOException
+	{
+		final List<PluginInfo<?>> infos = new ArrayList<>();
+		final Map<String, Throwable> exceptions = //
+			new DefaultPluginFinder(classLoader).findPlugins(infos);
+		// NB: Invalid plugins are left out of the cache, just as the regular
+		// discovery mechanism leaves them out of the plugin index.
+		for (final Map.Entry<String, Throwable> entry : exceptions.entrySet()) {
+			System.err.println("[WARNING] Skipping invalid plugin " + entry
+				.getKey() + ": " + entry.getValue());
+		}
+
+		final DataOutputStream dout = //
+			new DataOutputStream(new BufferedOutputStream(out));
+		dout.writeInt(MAGIC);
+		dout.writeInt(VERSION);
+		dout.writeUTF(fingerprint(classLoader));
+		dout.writeInt(infos.size());
+		for (final PluginInfo<?> info : infos) {
+			dout.writeUTF(info.getClassName());
+			AnnotationCodec.write(dout, info.getAnnotation());
+		}
+		dout.flush();
+	}
+
+	/**
+	 * Computes a fingerprint of the annotation indexes visible to the given
+	 * class loader, including the one of this component. Each index is
+	 * identified by a digest of its contents, so that the fingerprint remains
+	 * valid when an installation is moved elsewhere, but changes whenever any
+	 * {@link Plugin} is added or removed, even by a rebuild of the same size.
+	 */
+	public static String fingerprint(final ClassLoader classLoader)
+		throws IOException
+	{
+		final List<String> entries = new ArrayList<>();
+		final Enumeration<URL> urls = classLoader.getResources(INDEX_RESOURCE);
+		while (urls.hasMoreElements()) {
+			final URLConnection connection = urls.nextElement().openConnection();
+			// NB: Do not keep JAR files open, nor read stale cached copies.
+			connection.setUseCaches(false);
+			try (final InputStream in = connection.getInputStream()) {
+				final MessageDigest digest = sha1();
+				final byte[] buffer = new byte[8192];
+				while (true) {
+					final int n = in.read(buffer);
+					if (n < 0) break;
+					digest.update(buffer, 0, n);
+				}
+				entries.add(hex(digest.digest()));
+			}
+		}
+		Collections.sort(entries);
+
+		final MessageDigest digest = sha1();
+		for (final String entry : entries) {
+			digest.update(entry.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+		}
+		return hex(digest.digest());
+	}
+
+	/**
+	 * Writes the plugin cache for the current class path to the file given as
+	 * the first argument. This is invoked at build time.
+	 */
+	public static void main(final String... args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: " + PluginIndexCache.class.getName() +
+				" <output-file>");
+			System.exit(1);
+		}
+		final File file = new File(args[0]);
+		final File dir = file.getAbsoluteFile().getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create directory: " + dir);
+		}
+		try (final OutputStream out = new FileOutputStream(file)) {
+			write(out, classLoader());
+		}
+	}
+
+	// -- Helper methods --
+
+	private static ClassLoader classLoader() {
+		final ClassLoader classLoader = //
+			Thread.currentThread().getContextClassLoader();
+		return classLoader == null ? PluginIndexCache.class.getClassLoader()
+			: classLoader;
+	}
+
+	private static MessageDigest sha1() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (final NoSuchAlgorithmException exc) {
+			throw new IOException(exc);
+		}
+	}
+
+	private static String hex(final byte[] bytes) {
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : bytes) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+
+}
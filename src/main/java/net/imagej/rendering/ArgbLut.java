@@ -0,0 +1,273 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.rendering;
+
+import net.imglib2.display.ColorTable;
+
+/**
+ * A {@link ColorTable} precomputed for all values of an unsigned integer type,
+ * for applying it to whole planes at once.
+ * <p>
+ * Mapping a value through a {@link ColorTable} means scaling it into the
+ * display range and interpolating the table, per pixel. Here, that is done
+ * once per possible value, so that applying the table is a single array
+ * lookup. When compositing channels, the red, green and blue components of
+ * each pixel are summed in 10-bit fields of a single {@code int}, so that up
+ * to four channels are added with one integer addition each, and clamped to
+ * 8 bits without branching at the end. The loops are simple enough for the
+ * JIT compiler to unroll.
+ * </p>
+ */
+public final class ArgbLut {
+
+	/** Number of channels whose packed components may be summed safely. */
+	private static final int MAX_SUMMED = 4;
+
+	private final int[] argb;
+	private final int[] packed;
+
+	/**
+	 * Precomputes the given color table.
+	 * 
+	 * @param table The color table to apply.
+	 * @param min Value mapped to the first color of the table.
+	 * @param max Value mapped to the last color of the table.
+	 * @param size Number of values to precompute, e.g. 256 for 8-bit or 65536
+	 *          for 16-bit data; larger values are treated as {@code size - 1}.
+	 */
+	public ArgbLut(final ColorTable table, final double min, final double max,
+		final int size)
+	{
+		if (size < 1) throw new IllegalArgumentException("Invalid size: " + size);
+		argb = new int[size];
+		packed = new int[size];
+		for (int v = 0; v < size; v++) {
+			final int c = table.lookupARGB(min, max, v);
+			argb[v] = 0xff000000 | c;
+			packed[v] = (c & 0xff0000) << 4 | (c & 0xff00) << 2 | c & 0xff;
+		}
+	}
+
+	// -- ArgbLut methods --
+
+	/** Gets the number of precomputed values. */
+	public int size() {
+		return argb.length;
+	}
+
+	/** Gets the ARGB color of the given value. */
+	public int lookup(final int value) {
+		return argb[clamp(value)];
+	}
+
+	/** Maps unsigned 8-bit values to ARGB colors. */
+	public void apply(final byte[] values, final int[] out) {
+		check(values.length, out);
+		if (argb.length >= 256) {
+			for (int i = 0; i < values.length; i++) {
+				out[i] = argb[values[i] & 0xff];
+			}
+		}
+		else {
+			for (int i = 0; i < values.length; i++) {
+				out[i] = argb[clamp(values[i] & 0xff)];
+			}
+		}
+	}
+
+	/** Maps unsigned 16-bit values to ARGB colors. */
+	public void apply(final short[] values, final int[] out) {
+		check(values.length, out);
+		if (argb.length >= 65536) {
+			for (int i = 0; i < values.length; i++) {
+				out[i] = argb[values[i] & 0xffff];
+			}
+		}
+		else {
+			for (int i = 0; i < values.length; i++) {
+				out[i] = argb[clamp(values[i] & 0xffff)];
+			}
+		}
+	}
+
+	/** Maps values to ARGB colors. */
+	public void apply(final int[] values, final int[] out) {
+		check(values.length, out);
+		for (int i = 0; i < values.length; i++) {
+			out[i] = argb[clamp(values[i])];
+		}
+	}
+
+	/**
+	 * Maps each channel of unsigned 8-bit values through its own table, and
+	 * adds up the resulting colors, saturating at white.
+	 * 
+	 * @param luts The table of each channel.
+	 * @param channels The values of each channel.
+	 * @param out The composited ARGB colors.
+	 */
+	public static void composite(final ArgbLut[] luts, final byte[][] channels,
+		final int[] out)
+	{
+		checkChannels(luts, channels.length);
+		for (int c = 0; c < channels.length; c++) {
+			final byte[] values = channels[c];
+			check(values.length, out);
+			final ArgbLut lut = luts[c];
+			final int[] packed = lut.packed;
+			if (c == 0) {
+				for (int i = 0; i < values.length; i++) {
+					out[i] = packed[lut.clamp(values[i] & 0xff)];
+				}
+			}
+			else {
+				for (int i = 0; i < values.length; i++) {
+					out[i] += packed[lut.clamp(values[i] & 0xff)];
+				}
+				// NB: The clamped sum counts as one more channel.
+				if (c % (MAX_SUMMED - 1) == 0) saturate(out);
+			}
+		}
+		finish(out);
+	}
+
+	/**
+	 * Maps each channel of unsigned 16-bit values through its own table, and
+	 * adds up the resulting colors, saturating at white.
+	 * 
+	 * @param luts The table of each channel.
+	 * @param channels The values of each channel.
+	 * @param out The composited ARGB colors.
+	 */
+	public static void composite(final ArgbLut[] luts, final short[][] channels,
+		final int[] out)
+	{
+		checkChannels(luts, channels.length);
+		for (int c = 0; c < channels.length; c++) {
+			final short[] values = channels[c];
+			check(values.length, out);
+			final ArgbLut lut = luts[c];
+			final int[] packed = lut.packed;
+			if (c == 0) {
+				for (int i = 0; i < values.length; i++) {
+					out[i] = packed[lut.clamp(values[i] & 0xffff)];
+				}
+			}
+			else {
+				for (int i = 0; i < values.length; i++) {
+					out[i] += packed[lut.clamp(values[i] & 0xffff)];
+				}
+				// NB: The clamped sum counts as one more channel.
+				if (c % (MAX_SUMMED - 1) == 0) saturate(out);
+			}
+		}
+		finish(out);
+	}
+
+	/**
+	 * Maps each channel of values through its own table, and adds up the
+	 * resulting colors, saturating at white.
+	 * 
+	 * @param luts The table of each channel.
+	 * @param channels The values of each channel.
+	 * @param out The composited ARGB colors.
+	 */
+	public static void composite(final ArgbLut[] luts, final int[][] channels,
+		final int[] out)
+	{
+		checkChannels(luts, channels.length);
+		for (int c = 0; c < channels.length; c++) {
+			final int[] values = channels[c];
+			check(values.length, out);
+			final ArgbLut lut = luts[c];
+			final int[] packed = lut.packed;
+			if (c == 0) {
+				for (int i = 0; i < values.length; i++) {
+					out[i] = packed[lut.clamp(values[i])];
+				}
+			}
+			else {
+				for (int i = 0; i < values.length; i++) {
+					out[i] += packed[lut.clamp(values[i])];
+				}
+				// NB: The clamped sum counts as one more channel.
+				if (c % (MAX_SUMMED - 1) == 0) saturate(out);
+			}
+		}
+		finish(out);
+	}
+
+	// -- Helper methods --
+
+	private int clamp(final int value) {
+		return value < 0 ? 0 : value >= argb.length ? argb.length - 1 : value;
+	}
+
+	/** Clamps a component sum to 8 bits, without branching. */
+	private static int sat(final int x) {
+		return (x | (255 - x) >> 31) & 0xff;
+	}
+
+	/** Clamps the packed components, so that more channels can be added. */
+	private static void saturate(final int[] out) {
+		for (int i = 0; i < out.length; i++) {
+			final int p = out[i];
+			out[i] = sat(p >>> 20) << 20 | sat(p >>> 10 & 0x3ff) << 10 | //
+				sat(p & 0x3ff);
+		}
+	}
+
+	/** Converts packed components to ARGB colors. */
+	private static void finish(final int[] out) {
+		for (int i = 0; i < out.length; i++) {
+			final int p = out[i];
+			out[i] = 0xff000000 | sat(p >>> 20) << 16 | sat(p >>> 10 & 0x3ff) << 8 |
+				sat(p & 0x3ff);
+		}
+	}
+
+	private static void check(final int length, final int[] out) {
+		if (out.length != length) {
+			throw new IllegalArgumentException("Expected " + length +
+				" output pixels but got " + out.length);
+		}
+	}
+
+	private static void checkChannels(final ArgbLut[] luts, final int count) {
+		if (count == 0) throw new IllegalArgumentException("No channels");
+		if (luts.length != count) {
+			throw new IllegalArgumentException("Expected " + count +
+				" tables but got " + luts.length);
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.rendering;
+
+/**
+ * A rendered tile of ARGB pixels.
+ */
+public final class ArgbTile {
+
+	private final int width;
+	private final int height;
+	private final int[] pixels;
+
+	public ArgbTile(final int width, final int height, final int[] pixels) {
+		if (pixels.length != width * height) {
+			throw new IllegalArgumentException("Expected " + width * height +
+				" pixels but got " + pixels.length);
+		}
+		this.width = width;
+		this.height = height;
+		this.pixels = pixels;
+	}
+
+	/** Gets the width of the tile in pixels. */
+	public int getWidth() {
+		return width;
+	}
+
+	/** Gets the height of the tile in pixels. */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Gets the ARGB pixels of the tile, row by row. The array is shared with
+	 * the cache, and must not be modified.
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	/** Gets the ARGB value of the given pixel. */
+	public int get(final int x, final int y) {
+		return pixels[y * width + x];
+	}
+
+}
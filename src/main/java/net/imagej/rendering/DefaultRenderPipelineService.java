@@ -0,0 +1,399 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.rendering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link RenderPipelineService}.
+ * <p>
+ * Requested tiles take precedence over prefetched ones in the work queue. A
+ * pending request is stale once a tile of a plane which is neither the same
+ * nor an immediate neighbor (at the same zoom level) is requested from its
+ * view, or once the view's settings change.
+ * </p>
+ */
+@Plugin(type = Service.class)
+public class DefaultRenderPipelineService extends AbstractService implements
+	RenderPipelineService
+{
+
+	private static final int REQUEST = 0;
+	private static final int PREFETCH = 1;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int tileSize = DEFAULT_TILE_SIZE;
+	private long cacheCapacity = 16L << 20; // 64 MB of ARGB pixels
+
+	private ThreadPoolExecutor pool;
+
+	/** Rendered tiles, in access order. */
+	private final LinkedHashMap<Key, ArgbTile> cache = //
+		new LinkedHashMap<>(16, 0.75f, true);
+	private long cachedPixels;
+
+	/** Tiles queued or being rendered. */
+	private final Map<Key, Task> pending = new HashMap<>();
+
+	private final AtomicLong sequence = new AtomicLong();
+	private long hits, renders, cancels;
+
+	// -- RenderPipelineService methods --
+
+	@Override
+	public RenderView createView(
+		final RandomAccessibleInterval<? extends RealType<?>> image,
+		final int channelAxis)
+	{
+		return new RenderView(this, image, channelAxis);
+	}
+
+	@Override
+	public synchronized Future<ArgbTile> render(final RenderView view,
+		final long[] position, final int zoom, final long tileX,
+		final long tileY)
+	{
+		view.validate(position, zoom, tileX, tileY, tileSize);
+		final Key key = new Key(view, view.revision(), position.clone(), zoom,
+			tileX, tileY, tileSize);
+		cancelStale(key);
+
+		final Future<ArgbTile> result;
+		final ArgbTile tile = cache.get(key);
+		if (tile != null) {
+			hits++;
+			result = CompletableFuture.completedFuture(tile);
+		}
+		else result = submit(key, REQUEST);
+
+		// prefetch the same tile of the neighboring planes
+		for (int d = 0; d < position.length; d++) {
+			for (int delta = -1; delta <= 1; delta += 2) {
+				final long p = position[d] + delta;
+				if (p < 0 || p >= view.getPlaneSize(d)) continue;
+				final long[] neighbor = position.clone();
+				neighbor[d] = p;
+				final Key k = new Key(view, key.revision, neighbor, zoom, tileX,
+					tileY, tileSize);
+				if (!cache.containsKey(k)) submit(k, PREFETCH);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized int getTileSize() {
+		return tileSize;
+	}
+
+	@Override
+	public synchronized void setTileSize(final int tileSize) {
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("Invalid tile size: " + tileSize);
+		}
+		this.tileSize = tileSize;
+		clearCache();
+	}
+
+	@Override
+	public synchronized int getParallelism() {
+		return parallelism;
+	}
+
+	@Override
+	public synchronized void setParallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " +
+				parallelism);
+		}
+		this.parallelism = parallelism;
+		if (pool == null) return;
+		// NB: The core size may never exceed the maximum size.
+		if (parallelism > pool.getMaximumPoolSize()) {
+			pool.setMaximumPoolSize(parallelism);
+			pool.setCorePoolSize(parallelism);
+		}
+		else {
+			pool.setCorePoolSize(parallelism);
+			pool.setMaximumPoolSize(parallelism);
+		}
+	}
+
+	@Override
+	public synchronized long getCacheCapacity() {
+		return cacheCapacity;
+	}
+
+	@Override
+	public synchronized void setCacheCapacity(final long pixels) {
+		if (pixels < 0) {
+			throw new IllegalArgumentException("Invalid capacity: " + pixels);
+		}
+		cacheCapacity = pixels;
+		evict();
+	}
+
+	@Override
+	public synchronized void clearCache() {
+		for (final Task task : new ArrayList<>(pending.values())) {
+			task.cancel(true);
+		}
+		cache.clear();
+		cachedPixels = 0;
+	}
+
+	@Override
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	@Override
+	public synchronized long getRenderCount() {
+		return renders;
+	}
+
+	@Override
+	public synchronized long getCancelCount() {
+		return cancels;
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public synchronized void dispose() {
+		clearCache();
+		if (pool != null) pool.shutdownNow();
+		pool = null;
+	}
+
+	// -- Helper methods --
+
+	/** Queues the given tile for rendering, unless it is already pending. */
+	private Future<ArgbTile> submit(final Key key, final int priority) {
+		Task task = pending.get(key);
+		if (task != null) {
+			if (priority < task.priority && pool.remove(task)) {
+				// NB: Move the queued prefetch ahead of the other prefetches.
+				task.priority = priority;
+				pool.execute(task);
+			}
+			return task;
+		}
+		task = new Task(key, priority);
+		pending.put(key, task);
+		pool().execute(task);
+		return task;
+	}
+
+	/** Cancels the pending requests made stale by a request for the given key. */
+	private void cancelStale(final Key key) {
+		final List<Task> stale = new ArrayList<>();
+		for (final Task task : pending.values()) {
+			if (task.key.view == key.view && !key.isNear(task.key)) stale.add(task);
+		}
+		for (final Task task : stale) {
+			if (task.cancel(true)) {
+				cancels++;
+				pool.remove(task);
+			}
+		}
+	}
+
+	/** Caches a rendered tile, evicting the least recently used ones. */
+	private synchronized void store(final Key key, final ArgbTile tile) {
+		renders++;
+		// NB: A tile rendered after the settings changed may not match its key.
+		if (key.tileSize != tileSize || key.revision != key.view.revision()) {
+			return; // obsolete
+		}
+		final ArgbTile old = cache.put(key, tile);
+		if (old != null) cachedPixels -= old.getPixels().length;
+		cachedPixels += tile.getPixels().length;
+		evict();
+	}
+
+	/** Forgets a pending tile, once rendered, cancelled or failed. */
+	private synchronized void done(final Task task) {
+		pending.remove(task.key, task);
+		if (task.isCancelled()) return;
+		try {
+			task.get();
+		}
+		catch (final InterruptedException | ExecutionException exc) {
+			log().error("Cannot render tile", exc);
+		}
+	}
+
+	private void evict() {
+		final Iterator<ArgbTile> iter = cache.values().iterator();
+		while (cachedPixels > cacheCapacity && iter.hasNext()) {
+			cachedPixels -= iter.next().getPixels().length;
+			iter.remove();
+		}
+	}
+
+	private ThreadPoolExecutor pool() {
+		if (pool == null) {
+			final AtomicInteger count = new AtomicInteger();
+			pool = new ThreadPoolExecutor(parallelism, parallelism, 60,
+				TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), r -> {
+					final Thread t = new Thread(r, "render-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+			pool.allowCoreThreadTimeOut(true);
+		}
+		return pool;
+	}
+
+	// -- Helper classes --
+
+	/** Identifies a tile of a particular revision of a view. */
+	private static final class Key {
+
+		private final RenderView view;
+		private final int revision;
+		private final long[] position;
+		private final int zoom;
+		private final long tileX, tileY;
+		private final int tileSize;
+
+		private Key(final RenderView view, final int revision,
+			final long[] position, final int zoom, final long tileX,
+			final long tileY, final int tileSize)
+		{
+			this.view = view;
+			this.revision = revision;
+			this.position = position;
+			this.zoom = zoom;
+			this.tileX = tileX;
+			this.tileY = tileY;
+			this.tileSize = tileSize;
+		}
+
+		/**
+		 * Whether the given key is for the same or a neighboring plane of the
+		 * same revision of the view, at the same zoom level and tile size.
+		 */
+		private boolean isNear(final Key key) {
+			if (view != key.view || revision != key.revision || zoom != key.zoom ||
+				tileSize != key.tileSize)
+			{
+				return false;
+			}
+			long distance = 0;
+			for (int d = 0; d < position.length; d++) {
+				distance += Math.abs(position[d] - key.position[d]);
+			}
+			return distance <= 1;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Key)) return false;
+			final Key key = (Key) o;
+			return view == key.view && revision == key.revision &&
+				zoom == key.zoom && tileX == key.tileX && tileY == key.tileY &&
+				tileSize == key.tileSize && Arrays.equals(position, key.position);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = System.identityHashCode(view);
+			hash = 31 * hash + revision;
+			hash = 31 * hash + Arrays.hashCode(position);
+			hash = 31 * hash + zoom;
+			hash = 31 * hash + Long.hashCode(tileX);
+			hash = 31 * hash + Long.hashCode(tileY);
+			return 31 * hash + tileSize;
+		}
+	}
+
+	/** Renders a tile, ordered by priority, then by submission. */
+	private final class Task extends FutureTask<ArgbTile> implements
+		Comparable<Task>
+	{
+
+		private final Key key;
+		private final long order = sequence.getAndIncrement();
+		private volatile int priority;
+
+		private Task(final Key key, final int priority) {
+			super(() -> key.view.render(key.position, key.zoom, key.tileX,
+				key.tileY, key.tileSize));
+			this.key = key;
+			this.priority = priority;
+		}
+
+		@Override
+		public int compareTo(final Task task) {
+			if (priority != task.priority) return priority < task.priority ? -1 : 1;
+			return Long.compare(order, task.order);
+		}
+
+		@Override
+		protected void set(final ArgbTile tile) {
+			// NB: Cache the tile before completing, so that it is found by any
+			// request made once the future is done.
+			store(key, tile);
+			super.set(tile);
+		}
+
+		@Override
+		protected void done() {
+			DefaultRenderPipelineService.this.done(this);
+		}
+	}
+
+}
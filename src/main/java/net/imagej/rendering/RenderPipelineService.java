@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.rendering;
+
+import java.util.concurrent.Future;
+
+import net.imagej.ImageJService;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Interface for services which render image planes asynchronously.
+ * <p>
+ * Planes are rendered tile by tile into ARGB pixels, on a pool of background
+ * workers, so that the calling (e.g. UI) thread never blocks. Rendered tiles
+ * are cached per plane and zoom level, with the least recently used tiles
+ * evicted first. Whenever a tile is requested, the same tile of the
+ * neighboring planes is prefetched, and pending requests for planes which are
+ * no longer of interest are cancelled, so that scrolling through a large
+ * image stays responsive. The service does not depend on AWT, and so works
+ * headless.
+ * </p>
+ * 
+ * @see RenderView
+ */
+public interface RenderPipelineService extends ImageJService {
+
+	/** Default width and height of rendered tiles, in pixels. */
+	int DEFAULT_TILE_SIZE = 256;
+
+	/**
+	 * Creates a view for rendering the given image.
+	 * 
+	 * @param image The image to render. Dimensions 0 and 1 are X and Y; all
+	 *          other dimensions except the channel axis select a plane.
+	 * @param channelAxis The dimension whose positions are composited into each
+	 *          rendered pixel, or -1 if the image has no channels.
+	 */
+	RenderView createView(RandomAccessibleInterval<? extends RealType<?>> image,
+		int channelAxis);
+
+	/**
+	 * Requests a tile of the given view, as {@link RenderView#getTile}.
+	 * 
+	 * @return The tile, possibly already rendered. The future is cancelled if
+	 *         the request goes stale before being rendered.
+	 */
+	Future<ArgbTile> render(RenderView view, long[] position, int zoom,
+		long tileX, long tileY);
+
+	/** Gets the width and height of rendered tiles, in pixels. */
+	int getTileSize();
+
+	/**
+	 * Sets the width and height of rendered tiles, in pixels, discarding all
+	 * cached tiles.
+	 */
+	void setTileSize(int tileSize);
+
+	/**
+	 * Gets the number of workers used to render tiles. Defaults to the number
+	 * of available processors.
+	 */
+	int getParallelism();
+
+	/** Sets the number of workers used to render tiles. */
+	void setParallelism(int parallelism);
+
+	/** Gets the maximum number of pixels held by the tile cache. */
+	long getCacheCapacity();
+
+	/** Sets the maximum number of pixels held by the tile cache. */
+	void setCacheCapacity(long pixels);
+
+	/** Discards all cached tiles. */
+	void clearCache();
+
+	/** Gets the number of tile requests answered from the cache. */
+	long getHitCount();
+
+	/** Gets the number of tiles rendered, including prefetched ones. */
+	long getRenderCount();
+
+	/** Gets the number of requests cancelled because they went stale. */
+	long getCancelCount();
+
+}
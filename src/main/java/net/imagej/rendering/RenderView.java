@@ -0,0 +1,476 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.rendering;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+import net.imagej.ImgPlus;
+import net.imagej.display.ColorTables;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.display.ColorTable;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Util;
+
+/**
+ * A view of an image, rendered by a {@link RenderPipelineService}.
+ * <p>
+ * Each channel of the image is mapped through its own {@link ColorTable}
+ * (e.g. one loaded via {@code ij.lut()}) and display range, and the channels
+ * are composited additively into ARGB pixels. For unsigned integer data of up
+ * to 16 bits, the color tables are precomputed as {@link ArgbLut}s; tiles of
+ * an {@link ArrayImg} or {@link PlanarImg} of such values are copied straight
+ * out of its storage arrays. Changing the color tables or display ranges
+ * invalidates the view's rendered tiles.
+ * </p>
+ */
+public class RenderView {
+
+	/** Default color tables of successive channels. */
+	private static final ColorTable[] CHANNEL_TABLES = { ColorTables.RED,
+		ColorTables.GREEN, ColorTables.BLUE, ColorTables.CYAN,
+		ColorTables.MAGENTA, ColorTables.YELLOW };
+
+	private final RenderPipelineService service;
+	private final RandomAccessibleInterval<? extends RealType<?>> image;
+	private final int channelAxis;
+	private final int[] planeAxes;
+
+	private final ColorTable[] tables;
+	private final double[] min;
+	private final double[] max;
+
+	/** Incremented whenever the color tables or display ranges change. */
+	private volatile int revision;
+
+	/**
+	 * Number of values of the image's unsigned integer type, or 0 if its
+	 * values cannot be mapped through an {@link ArgbLut}.
+	 */
+	private final int lutSize;
+
+	/** Precomputed tables, as of {@link #lutRevision}. */
+	private ArgbLut[] luts;
+	private int lutRevision = -1;
+
+	RenderView(final RenderPipelineService service,
+		final RandomAccessibleInterval<? extends RealType<?>> image,
+		final int channelAxis)
+	{
+		final int n = image.numDimensions();
+		if (n < 2) throw new IllegalArgumentException("Image has no XY plane");
+		if (channelAxis != -1 && (channelAxis < 2 || channelAxis >= n)) {
+			throw new IllegalArgumentException("Invalid channel axis: " +
+				channelAxis);
+		}
+		this.service = service;
+		this.image = image;
+		this.channelAxis = channelAxis;
+
+		planeAxes = new int[n - 2 - (channelAxis < 0 ? 0 : 1)];
+		for (int d = 2, i = 0; d < n; d++) {
+			if (d != channelAxis) planeAxes[i++] = d;
+		}
+
+		final int channels = channelAxis < 0 ? 1 : (int) image.dimension(
+			channelAxis);
+		tables = new ColorTable[channels];
+		min = new double[channels];
+		max = new double[channels];
+		final RealType<?> type = Util.getTypeFromInterval(image);
+		for (int c = 0; c < channels; c++) {
+			tables[c] = channels == 1 ? ColorTables.GRAYS : CHANNEL_TABLES[c %
+				CHANNEL_TABLES.length];
+			min[c] = type.getMinValue();
+			max[c] = type.getMaxValue();
+		}
+		lutSize = type instanceof IntegerType && type.getMinValue() >= 0 && //
+			type.getMaxValue() < 65536 ? (int) type.getMaxValue() + 1 : 0;
+	}
+
+	// -- RenderView methods --
+
+	/** Gets the rendered image. */
+	public RandomAccessibleInterval<? extends RealType<?>> getImage() {
+		return image;
+	}
+
+	/** Gets the number of channels composited into each pixel. */
+	public int getChannelCount() {
+		return tables.length;
+	}
+
+	/**
+	 * Gets the number of plane dimensions, i.e. the length of the positions
+	 * passed to {@link #getTile}.
+	 */
+	public int getPlaneDimensions() {
+		return planeAxes.length;
+	}
+
+	/** Gets the size of the given plane dimension. */
+	public long getPlaneSize(final int d) {
+		return image.dimension(planeAxes[d]);
+	}
+
+	/** Sets the color table of the given channel. */
+	public synchronized void setColorTable(final int channel,
+		final ColorTable table)
+	{
+		tables[channel] = table;
+		revision++;
+	}
+
+	/** Sets the display range of the given channel. */
+	public synchronized void setDisplayRange(final int channel,
+		final double min, final double max)
+	{
+		this.min[channel] = min;
+		this.max[channel] = max;
+		revision++;
+	}
+
+	/**
+	 * Requests a tile of a plane of the image.
+	 * 
+	 * @param position Zero-based position of the plane along each of the
+	 *          {@link #getPlaneDimensions() plane dimensions}.
+	 * @param zoom The zoom level: level {@code z} shows every
+	 *          {@code 2^z}-th pixel along X and Y.
+	 * @param tileX Column of the tile at this zoom level.
+	 * @param tileY Row of the tile at this zoom level.
+	 * @return The tile, possibly already rendered.
+	 */
+	public Future<ArgbTile> getTile(final long[] position, final int zoom,
+		final long tileX, final long tileY)
+	{
+		return service.render(this, position, zoom, tileX, tileY);
+	}
+
+	/**
+	 * Renders a whole plane of the image at once, on the calling thread and
+	 * bypassing the tile cache, e.g. for exporting it.
+	 * 
+	 * @param position Zero-based position of the plane along each of the
+	 *          {@link #getPlaneDimensions() plane dimensions}.
+	 * @param zoom The zoom level: level {@code z} shows every
+	 *          {@code 2^z}-th pixel along X and Y.
+	 */
+	public ArgbTile renderPlane(final long[] position, final int zoom) {
+		final long size = Math.max(image.dimension(0), image.dimension(1));
+		final int planeSize = (int) Math.min(Integer.MAX_VALUE, //
+			(size + (1L << zoom) - 1) >> zoom);
+		validate(position, zoom, 0, 0, planeSize);
+		return render(position, zoom, 0, 0, planeSize);
+	}
+
+	// -- Internal methods --
+
+	/** Gets the current revision of the view's settings. */
+	int revision() {
+		return revision;
+	}
+
+	/** Checks that the given tile exists. */
+	void validate(final long[] position, final int zoom, final long tileX,
+		final long tileY, final int tileSize)
+	{
+		if (position.length != planeAxes.length) {
+			throw new IllegalArgumentException("Expected " + planeAxes.length +
+				" plane coordinates but got " + position.length);
+		}
+		for (int d = 0; d < position.length; d++) {
+			if (position[d] < 0 || position[d] >= getPlaneSize(d)) {
+				throw new IllegalArgumentException("Plane position out of bounds: " +
+					Arrays.toString(position));
+			}
+		}
+		if (zoom < 0 || zoom > 30) {
+			throw new IllegalArgumentException("Invalid zoom level: " + zoom);
+		}
+		if (tileX < 0 || tileX >= tiles(image.dimension(0), zoom, tileSize) ||
+			tileY < 0 || tileY >= tiles(image.dimension(1), zoom, tileSize))
+		{
+			throw new IllegalArgumentException("Tile out of bounds: " + tileX +
+				", " + tileY);
+		}
+	}
+
+	/**
+	 * Renders the given tile.
+	 * 
+	 * @throws CancellationException If the thread is interrupted meanwhile.
+	 */
+	ArgbTile render(final long[] position, final int zoom, final long tileX,
+		final long tileY, final int tileSize)
+	{
+		final ColorTable[] t;
+		final double[] lo, hi;
+		final int rev;
+		ArgbLut[] l;
+		synchronized (this) {
+			t = tables.clone();
+			lo = min.clone();
+			hi = max.clone();
+			rev = revision;
+			l = lutRevision == rev ? luts : null;
+		}
+		if (l == null && lutSize > 0) {
+			// NB: Build the tables without holding the monitor, so that changing
+			// the settings meanwhile never blocks.
+			l = luts(t, lo, hi);
+			synchronized (this) {
+				if (revision == rev) {
+					luts = l;
+					lutRevision = rev;
+				}
+			}
+		}
+
+		final long step = 1L << zoom;
+		final long x0 = tileX * tileSize, y0 = tileY * tileSize;
+		final int w = (int) Math.min(tileSize, pixels(image.dimension(0), zoom) -
+			x0);
+		final int h = (int) Math.min(tileSize, pixels(image.dimension(1), zoom) -
+			y0);
+		final long minX = image.min(0), minY = image.min(1);
+
+		final RandomAccess<? extends RealType<?>> access = image.randomAccess();
+		for (int d = 0; d < planeAxes.length; d++) {
+			access.setPosition(image.min(planeAxes[d]) + position[d], planeAxes[d]);
+		}
+		final int[] argb = new int[w * h];
+
+		if (l != null) {
+			// unsigned 8/16-bit arrays: copy the tile out of the storage in bulk
+			final Object stored = readStorage(position, step, x0, y0, w, h);
+			if (stored instanceof byte[][]) {
+				final byte[][] values = (byte[][]) stored;
+				if (l.length == 1) l[0].apply(values[0], argb);
+				else ArgbLut.composite(l, values, argb);
+				return new ArgbTile(w, h, argb);
+			}
+			if (stored instanceof short[][]) {
+				final short[][] values = (short[][]) stored;
+				if (l.length == 1) l[0].apply(values[0], argb);
+				else ArgbLut.composite(l, values, argb);
+				return new ArgbTile(w, h, argb);
+			}
+
+			// other integer data: read raw values, then apply the tables
+			final int[][] values = new int[t.length][w * h];
+			for (int c = 0; c < t.length; c++) {
+				if (channelAxis >= 0) {
+					access.setPosition(image.min(channelAxis) + c, channelAxis);
+				}
+				for (int y = 0; y < h; y++) {
+					if (Thread.interrupted()) throw new CancellationException();
+					access.setPosition(minY + (y0 + y) * step, 1);
+					for (int x = 0; x < w; x++) {
+						access.setPosition(minX + (x0 + x) * step, 0);
+						values[c][y * w + x] = ((IntegerType<?>) access.get())
+							.getInteger();
+					}
+				}
+			}
+			ArgbLut.composite(l, values, argb);
+			return new ArgbTile(w, h, argb);
+		}
+
+		// other data: map each value through its color table
+		final int[] r = new int[w * h], g = new int[w * h], b = new int[w * h];
+		for (int c = 0; c < t.length; c++) {
+			if (channelAxis >= 0) {
+				access.setPosition(image.min(channelAxis) + c, channelAxis);
+			}
+			for (int y = 0; y < h; y++) {
+				if (Thread.interrupted()) throw new CancellationException();
+				access.setPosition(minY + (y0 + y) * step, 1);
+				for (int x = 0; x < w; x++) {
+					access.setPosition(minX + (x0 + x) * step, 0);
+					final int color = t[c].lookupARGB(lo[c], hi[c], access.get()
+						.getRealDouble());
+					final int i = y * w + x;
+					r[i] += (color >> 16) & 0xff;
+					g[i] += (color >> 8) & 0xff;
+					b[i] += color & 0xff;
+				}
+			}
+		}
+		for (int i = 0; i < argb.length; i++) {
+			argb[i] = 0xff000000 | Math.min(r[i], 255) << 16 | //
+				Math.min(g[i], 255) << 8 | Math.min(b[i], 255);
+		}
+		return new ArgbTile(w, h, argb);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Reads the given tile of each channel straight from the storage arrays of
+	 * the image, if it is an {@link ArrayImg} or {@link PlanarImg} (possibly
+	 * wrapped in an {@link ImgPlus}) of unsigned 8- or 16-bit values.
+	 * 
+	 * @return The values of each channel, as {@code byte[][]} or
+	 *         {@code short[][]}, or null if the image has no such storage.
+	 */
+	private Object readStorage(final long[] position, final long step,
+		final long x0, final long y0, final int w, final int h)
+	{
+		RandomAccessibleInterval<?> img = image;
+		if (img instanceof ImgPlus) img = ((ImgPlus<?>) img).getImg();
+		if (!(img instanceof ArrayImg) && !(img instanceof PlanarImg)) return null;
+		final Object type = Util.getTypeFromInterval(img);
+		final boolean bytes = type instanceof UnsignedByteType;
+		if (!bytes && !(type instanceof UnsignedShortType)) return null;
+
+		final long width = img.dimension(0);
+		final long[] pos = new long[img.numDimensions()];
+		for (int d = 0; d < planeAxes.length; d++) {
+			pos[planeAxes[d]] = position[d];
+		}
+		final int channels = tables.length;
+		final byte[][] byteValues = bytes ? new byte[channels][] : null;
+		final short[][] shortValues = bytes ? null : new short[channels][];
+		for (int c = 0; c < channels; c++) {
+			if (channelAxis >= 0) pos[channelAxis] = c;
+			// NB: Planes are numbered like the storage of a PlanarImg.
+			long no = 0;
+			for (int d = pos.length - 1; d >= 2; d--) {
+				no = no * img.dimension(d) + pos[d];
+			}
+			final Object array;
+			final long offset;
+			if (img instanceof PlanarImg) {
+				array = ((ArrayDataAccess<?>) ((PlanarImg<?, ?>) img).getPlane(
+					(int) no)).getCurrentStorageArray();
+				offset = 0;
+			}
+			else {
+				array = ((ArrayDataAccess<?>) ((ArrayImg<?, ?>) img).update(null))
+					.getCurrentStorageArray();
+				offset = no * width * img.dimension(1);
+			}
+			final long start = offset + y0 * step * width + x0 * step;
+			if (array instanceof byte[] && bytes) {
+				byteValues[c] = copy((byte[]) array, start, width * step, step, w, h);
+			}
+			else if (array instanceof short[] && !bytes) {
+				shortValues[c] = copy((short[]) array, start, width * step, step, w,
+					h);
+			}
+			else return null;
+		}
+		return bytes ? byteValues : shortValues;
+	}
+
+	/**
+	 * Copies a tile out of a plane.
+	 * 
+	 * @param start Index of the tile's first pixel.
+	 * @param stride Distance between the rows of the tile.
+	 * @param step Distance between the columns of the tile.
+	 */
+	private static byte[] copy(final byte[] array, final long start,
+		final long stride, final long step, final int w, final int h)
+	{
+		final byte[] tile = new byte[w * h];
+		for (int y = 0; y < h; y++) {
+			if (Thread.interrupted()) throw new CancellationException();
+			final int row = (int) (start + y * stride);
+			if (step == 1) System.arraycopy(array, row, tile, y * w, w);
+			else {
+				for (int x = 0; x < w; x++) {
+					tile[y * w + x] = array[row + (int) (x * step)];
+				}
+			}
+		}
+		return tile;
+	}
+
+	/**
+	 * Copies a tile out of a plane.
+	 * 
+	 * @param start Index of the tile's first pixel.
+	 * @param stride Distance between the rows of the tile.
+	 * @param step Distance between the columns of the tile.
+	 */
+	private static short[] copy(final short[] array, final long start,
+		final long stride, final long step, final int w, final int h)
+	{
+		final short[] tile = new short[w * h];
+		for (int y = 0; y < h; y++) {
+			if (Thread.interrupted()) throw new CancellationException();
+			final int row = (int) (start + y * stride);
+			if (step == 1) System.arraycopy(array, row, tile, y * w, w);
+			else {
+				for (int x = 0; x < w; x++) {
+					tile[y * w + x] = array[row + (int) (x * step)];
+				}
+			}
+		}
+		return tile;
+	}
+
+	/** Precomputes the given settings, for unsigned integer data. */
+	private ArgbLut[] luts(final ColorTable[] t, final double[] lo,
+		final double[] hi)
+	{
+		final ArgbLut[] l = new ArgbLut[t.length];
+		for (int c = 0; c < l.length; c++) {
+			if (Thread.interrupted()) throw new CancellationException();
+			l[c] = new ArgbLut(t[c], lo[c], hi[c], lutSize);
+		}
+		return l;
+	}
+
+	/** Gets the number of pixels along an axis at the given zoom level. */
+	private static long pixels(final long size, final int zoom) {
+		return (size + (1L << zoom) - 1) >> zoom;
+	}
+
+	/** Gets the number of tiles along an axis at the given zoom level. */
+	private static long tiles(final long size, final int zoom,
+		final int tileSize)
+	{
+		return (pixels(size, zoom) + tileSize - 1) / tileSize;
+	}
+
+}
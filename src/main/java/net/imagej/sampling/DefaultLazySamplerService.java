@@ -0,0 +1,182 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.sampling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.LinearAxis;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgView;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link LazySamplerService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultLazySamplerService extends AbstractService implements
+	LazySamplerService
+{
+
+	@Parameter
+	private DatasetService datasetService;
+
+	/** Thread on which views are materialized, one at a time. */
+	private ExecutorService materializer;
+
+	// -- LazySamplerService methods --
+
+	@Override
+	public <T> RandomAccessibleInterval<T> sample(
+		final RandomAccessibleInterval<T> source, final Interval region,
+		final long... steps)
+	{
+		final int n = source.numDimensions();
+		if (region.numDimensions() != n || steps.length != n) {
+			throw new IllegalArgumentException("Expected " + n + " dimensions");
+		}
+		if (!Intervals.contains(source, region)) {
+			throw new IllegalArgumentException("Region exceeds the source bounds");
+		}
+		for (final long step : steps) {
+			if (step < 1) {
+				throw new IllegalArgumentException("Invalid steps: " + Arrays
+					.toString(steps));
+			}
+		}
+		return Views.subsample(Views.interval(source, region), steps);
+	}
+
+	@Override
+	public <T> RandomAccessibleInterval<T> selectChannels(
+		final RandomAccessibleInterval<T> source, final int axis,
+		final long... channels)
+	{
+		final int n = source.numDimensions();
+		if (n < 2 || axis < 0 || axis >= n) {
+			throw new IllegalArgumentException("Invalid channel axis: " + axis);
+		}
+		if (channels.length == 0) {
+			throw new IllegalArgumentException("No channels selected");
+		}
+		final List<RandomAccessibleInterval<T>> slices = new ArrayList<>();
+		for (final long c : channels) {
+			if (c < 0 || c >= source.dimension(axis)) {
+				throw new IllegalArgumentException("Invalid channel: " + c);
+			}
+			slices.add(Views.hyperSlice(source, axis, source.min(axis) + c));
+		}
+		// NB: Stacking appends the channels as the last dimension.
+		return Views.moveAxis(Views.stack(slices), n - 1, axis);
+	}
+
+	@Override
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public Dataset sample(final Dataset dataset, final Interval region,
+		final long... steps)
+	{
+		return sampleImgPlus((ImgPlus) dataset.getImgPlus(), region, steps);
+	}
+
+	@Override
+	public synchronized <T extends NativeType<T>> Materialization<T>
+		materialize(final RandomAccessibleInterval<T> view)
+	{
+		if (materializer == null) {
+			materializer = Executors.newSingleThreadExecutor(r -> {
+				final Thread t = new Thread(r, "materializer");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		final Materialization<T> materialization = new Materialization<>(view);
+		materializer.execute(materialization);
+		return materialization;
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public synchronized void dispose() {
+		if (materializer == null) return;
+		// NB: Cancel the queued materializations, so that nobody waits for them.
+		for (final Runnable task : materializer.shutdownNow()) {
+			((Future<?>) task).cancel(false);
+		}
+		materializer = null;
+	}
+
+	// -- Helper methods --
+
+	private <T extends RealType<T>> Dataset sampleImgPlus(
+		final ImgPlus<T> imgPlus, final Interval region, final long[] steps)
+	{
+		final RandomAccessibleInterval<T> view = sample(imgPlus, region, steps);
+		final Img<T> img = ImgView.wrap(view, imgPlus.factory());
+
+		final CalibratedAxis[] axes = new CalibratedAxis[view.numDimensions()];
+		for (int d = 0; d < axes.length; d++) {
+			axes[d] = imgPlus.axis(d).copy();
+			if (axes[d] instanceof LinearAxis) {
+				final LinearAxis axis = (LinearAxis) axes[d];
+				axis.setOrigin(axis.origin() + axis.scale() * region.min(d));
+				axis.setScale(axis.scale() * steps[d]);
+			}
+			else if (region.min(d) != 0 || steps[d] != 1) {
+				throw new IllegalArgumentException("Cannot crop or stride axis " + d +
+					" (" + axes[d].type() + "), since it is not linear");
+			}
+		}
+		final ImgPlus<T> sampled = new ImgPlus<>(img, imgPlus.getName(), axes);
+		sampled.setSource(imgPlus.getSource());
+		return datasetService.create(sampled);
+	}
+
+}
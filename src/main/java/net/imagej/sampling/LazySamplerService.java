@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.sampling;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJService;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.NativeType;
+
+/**
+ * Interface for services which sample images lazily.
+ * <p>
+ * Unlike the {@link net.imagej.sampler.SamplerService}, which copies the
+ * sampled pixels into a new image up front, the samples returned here are
+ * views: creating one is near-instant regardless of the size of the source,
+ * and pixels are read from the source only as they are accessed. Where a
+ * sample is accessed repeatedly, it can be {@link #materialize materialized}
+ * into memory in the background.
+ * </p>
+ */
+public interface LazySamplerService extends ImageJService {
+
+	/**
+	 * Creates a cropped, strided view of an image.
+	 * 
+	 * @param source The image to sample.
+	 * @param region The region of {@code source} to sample.
+	 * @param steps Stride along each dimension; 1 takes every pixel, 2 every
+	 *          other pixel, and so on.
+	 * @return A view with zero min, showing the first pixel of the region at
+	 *         the origin.
+	 */
+	<T> RandomAccessibleInterval<T> sample(RandomAccessibleInterval<T> source,
+		Interval region, long... steps);
+
+	/**
+	 * Creates a view of a subset of the channels of an image.
+	 * 
+	 * @param source The image to sample.
+	 * @param axis The channel dimension.
+	 * @param channels Zero-based indices of the channels to keep, in order.
+	 * @return A view with the same dimensions as {@code source}, except for the
+	 *         number of channels.
+	 */
+	<T> RandomAccessibleInterval<T> selectChannels(
+		RandomAccessibleInterval<T> source, int axis, long... channels);
+
+	/**
+	 * Creates a cropped, strided dataset backed by a view of the given one, as
+	 * {@link #sample(RandomAccessibleInterval, Interval, long...)}. Linear axis
+	 * calibrations are adjusted to the region and strides.
+	 * 
+	 * @throws IllegalArgumentException If an axis with a non-linear calibration
+	 *           would be cropped or strided.
+	 */
+	Dataset sample(Dataset dataset, Interval region, long... steps);
+
+	/**
+	 * Copies the given view into memory on a background thread.
+	 * 
+	 * @return A handle to the copy, which can be used while it is in progress.
+	 *         It is cancelled if the service is disposed before it is done.
+	 */
+	<T extends NativeType<T>> Materialization<T> materialize(
+		RandomAccessibleInterval<T> view);
+
+}
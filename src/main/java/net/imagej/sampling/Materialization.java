@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.sampling;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * An in-memory copy of a view, which is made in the background.
+ * <p>
+ * The copy proceeds slice by slice along the last dimension. Until it is
+ * done, the {@link #current() current} image is the view itself, so callers
+ * can switch over to the copy without waiting for it.
+ * </p>
+ * 
+ * @see LazySamplerService#materialize
+ */
+public class Materialization<T extends NativeType<T>> extends
+	FutureTask<Img<T>>
+{
+
+	private final RandomAccessibleInterval<T> view;
+	private final long sliceCount;
+	private final AtomicLong slicesDone;
+
+	Materialization(final RandomAccessibleInterval<T> view) {
+		this(view, new AtomicLong());
+	}
+
+	private Materialization(final RandomAccessibleInterval<T> view,
+		final AtomicLong slicesDone)
+	{
+		super(() -> copy(view, slicesDone));
+		this.view = view;
+		this.slicesDone = slicesDone;
+		final int n = view.numDimensions();
+		sliceCount = n < 2 ? 1 : view.dimension(n - 1);
+	}
+
+	// -- Materialization methods --
+
+	/** Gets the view being copied. */
+	public RandomAccessibleInterval<T> getView() {
+		return view;
+	}
+
+	/** Gets the fraction of the view copied so far, between 0 and 1. */
+	public double getProgress() {
+		return (double) slicesDone.get() / sliceCount;
+	}
+
+	/**
+	 * Gets the copy if it is done, or else the view.
+	 * 
+	 * @return The copy, with zero min, or the view if the copy is not done,
+	 *         was cancelled or failed.
+	 */
+	public RandomAccessibleInterval<T> current() {
+		if (!isDone() || isCancelled()) return view;
+		try {
+			return get();
+		}
+		catch (final Exception exc) {
+			return view;
+		}
+	}
+
+	// -- Helper methods --
+
+	private static <T extends NativeType<T>> Img<T> copy(
+		final RandomAccessibleInterval<T> view, final AtomicLong slicesDone)
+	{
+		final T type = Util.getTypeFromInterval(view).createVariable();
+		final Img<T> img = Util.getSuitableImgFactory(view, type).create(view);
+		final RandomAccessibleInterval<T> src = Views.zeroMin(view);
+		final int n = view.numDimensions();
+		if (n < 2) {
+			copy(src, img);
+			slicesDone.set(1);
+			return img;
+		}
+		for (long i = 0; i < view.dimension(n - 1); i++) {
+			if (Thread.interrupted()) throw new CancellationException();
+			copy(Views.hyperSlice(src, n - 1, i), Views.hyperSlice(img, n - 1, i));
+			slicesDone.incrementAndGet();
+		}
+		return img;
+	}
+
+	private static <T extends NativeType<T>> void copy(
+		final RandomAccessibleInterval<T> src,
+		final RandomAccessibleInterval<T> dest)
+	{
+		final Cursor<T> s = Views.flatIterable(src).cursor();
+		final Cursor<T> d = Views.flatIterable(dest).cursor();
+		while (d.hasNext()) {
+			d.next().set(s.next());
+		}
+	}
+
+}
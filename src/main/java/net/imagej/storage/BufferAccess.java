@@ -0,0 +1,209 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+
+import net.imglib2.img.basictypeaccess.ByteAccess;
+import net.imglib2.img.basictypeaccess.DoubleAccess;
+import net.imglib2.img.basictypeaccess.FloatAccess;
+import net.imglib2.img.basictypeaccess.IntAccess;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.img.basictypeaccess.ShortAccess;
+
+/**
+ * ImgLib2 pixel access backed by a {@link ByteBuffer}, which may be direct or
+ * a mapped file.
+ * <p>
+ * Pixels are read and written in place through a typed view of the buffer, so
+ * no data is copied. This is deliberately not an
+ * {@link net.imglib2.img.basictypeaccess.array.ArrayDataAccess}: code which
+ * finds one in a {@link net.imglib2.img.planar.PlanarImg} (e.g. SCIFIO's image
+ * saver, or {@link net.imagej.Dataset#getPlane}) expects its storage to be a
+ * Java array, whereas these pixels are only reachable through the access.
+ * </p>
+ */
+abstract class BufferAccess {
+
+	/** The underlying buffer, in native byte order. */
+	private final ByteBuffer bytes;
+
+	BufferAccess(final ByteBuffer bytes) {
+		this.bytes = bytes.order(ByteOrder.nativeOrder());
+	}
+
+	// -- BufferAccess methods --
+
+	/** Gets the underlying buffer. */
+	ByteBuffer bytes() {
+		return bytes;
+	}
+
+	/** Writes changes of a mapped buffer to its file. */
+	void force() {
+		if (bytes instanceof MappedByteBuffer) ((MappedByteBuffer) bytes).force();
+	}
+
+	// -- Helper methods --
+
+	/** Allocates a direct buffer of the given size, in native byte order. */
+	static ByteBuffer allocate(final int bytes) {
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+
+	// -- Helper classes --
+
+	static class Bytes extends BufferAccess implements ByteAccess {
+
+		Bytes(final ByteBuffer bytes) {
+			super(bytes);
+		}
+
+		@Override
+		public byte getValue(final int index) {
+			return bytes().get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final byte value) {
+			bytes().put(index, value);
+		}
+	}
+
+	static class Shorts extends BufferAccess implements ShortAccess {
+
+		private final ShortBuffer data;
+
+		Shorts(final ByteBuffer bytes) {
+			super(bytes);
+			data = bytes().asShortBuffer();
+		}
+
+		@Override
+		public short getValue(final int index) {
+			return data.get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final short value) {
+			data.put(index, value);
+		}
+	}
+
+	static class Ints extends BufferAccess implements IntAccess {
+
+		private final IntBuffer data;
+
+		Ints(final ByteBuffer bytes) {
+			super(bytes);
+			data = bytes().asIntBuffer();
+		}
+
+		@Override
+		public int getValue(final int index) {
+			return data.get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final int value) {
+			data.put(index, value);
+		}
+	}
+
+	static class Longs extends BufferAccess implements LongAccess {
+
+		private final LongBuffer data;
+
+		Longs(final ByteBuffer bytes) {
+			super(bytes);
+			data = bytes().asLongBuffer();
+		}
+
+		@Override
+		public long getValue(final int index) {
+			return data.get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final long value) {
+			data.put(index, value);
+		}
+	}
+
+	static class Floats extends BufferAccess implements FloatAccess {
+
+		private final FloatBuffer data;
+
+		Floats(final ByteBuffer bytes) {
+			super(bytes);
+			data = bytes().asFloatBuffer();
+		}
+
+		@Override
+		public float getValue(final int index) {
+			return data.get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final float value) {
+			data.put(index, value);
+		}
+	}
+
+	static class Doubles extends BufferAccess implements DoubleAccess {
+
+		private final DoubleBuffer data;
+
+		Doubles(final ByteBuffer bytes) {
+			super(bytes);
+			data = bytes().asDoubleBuffer();
+		}
+
+		@Override
+		public double getValue(final int index) {
+			return data.get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final double value) {
+			data.put(index, value);
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.storage;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImageJService;
+import net.imagej.axis.AxisType;
+
+/**
+ * Interface for services which create datasets whose pixels live outside the
+ * Java heap.
+ * <p>
+ * Such datasets are {@link net.imglib2.img.cell.CellImg}s with one cell per
+ * plane, each backed by a direct or memory-mapped buffer. Ops and displays
+ * access their pixels in place; code which needs a plane as a Java array,
+ * such as SCIFIO when saving, gets a copy. They do not add to garbage
+ * collection pauses nor count against the maximum heap size.
+ * </p>
+ * <p>
+ * Mapped datasets are stored in a directory holding one raw file per plane
+ * ({@code plane-000000.raw}, ...) in native byte order, plus an
+ * {@code attributes.properties} file describing dimensions, axes and type,
+ * so that they can be reopened with {@link #open(File)}.
+ * </p>
+ */
+public interface DatasetStorageService extends ImageJService {
+
+	/**
+	 * Creates a new dataset with the given storage; see
+	 * {@link DatasetService#create(long[], String, AxisType[], int, boolean, boolean)}
+	 * for the other parameters.
+	 * <p>
+	 * {@link Storage#MAPPED} datasets are stored in a new temporary directory,
+	 * which is deleted when the JVM exits.
+	 * </p>
+	 * 
+	 * @throws IOException If the files of a mapped dataset cannot be created.
+	 */
+	Dataset create(long[] dims, String name, AxisType[] axes, int bitsPerPixel,
+		boolean signed, boolean floating, Storage storage) throws IOException;
+
+	/**
+	 * Creates a new dataset stored in memory-mapped files in the given
+	 * directory, which is created if necessary.
+	 * 
+	 * @throws IOException If the directory or its files cannot be created.
+	 */
+	Dataset create(long[] dims, String name, AxisType[] axes, int bitsPerPixel,
+		boolean signed, boolean floating, File directory) throws IOException;
+
+	/**
+	 * Opens a mapped dataset previously created in the given directory.
+	 * 
+	 * @throws IOException If the directory does not hold a mapped dataset.
+	 */
+	Dataset open(File directory) throws IOException;
+
+	/** Gets where the pixels of the given dataset are stored. */
+	Storage getStorage(Dataset dataset);
+
+	/**
+	 * Writes all changes to the pixels of a mapped dataset to its files. Does
+	 * nothing for other datasets.
+	 */
+	void flush(Dataset dataset);
+
+}
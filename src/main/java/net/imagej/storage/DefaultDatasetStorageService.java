@@ -0,0 +1,368 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Function;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.img.Img;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default implementation of {@link DatasetStorageService}.
+ */
+@Plugin(type = Service.class)
+public class DefaultDatasetStorageService extends AbstractService implements
+	DatasetStorageService
+{
+
+	private static final String ATTRIBUTES = "attributes.properties";
+
+	@Parameter
+	private DatasetService datasetService;
+
+	// -- DatasetStorageService methods --
+
+	@Override
+	public Dataset create(final long[] dims, final String name,
+		final AxisType[] axes, final int bitsPerPixel, final boolean signed,
+		final boolean floating, final Storage storage) throws IOException
+	{
+		switch (storage) {
+			case HEAP:
+				return datasetService.create(dims, name, axes, bitsPerPixel, signed,
+					floating);
+			case DIRECT: {
+				final String dataType = dataType(bitsPerPixel, signed, floating);
+				final int planeBytes = planeBytes(dims, bitsPerPixel);
+				final List<ByteBuffer> planes = new ArrayList<>();
+				for (long i = planeCount(dims); i > 0; i--) {
+					planes.add(BufferAccess.allocate(planeBytes));
+				}
+				return dataset(dims, name, axes, dataType, planes);
+			}
+			case MAPPED: {
+				final File dir = Files.createTempDirectory("imagej-storage").toFile();
+				// NB: Registered first, so that it is deleted after its files.
+				dir.deleteOnExit();
+				return create(dims, name, axes, bitsPerPixel, signed, floating, dir,
+					true);
+			}
+			default:
+				throw new IllegalArgumentException("Unknown storage: " + storage);
+		}
+	}
+
+	@Override
+	public Dataset create(final long[] dims, final String name,
+		final AxisType[] axes, final int bitsPerPixel, final boolean signed,
+		final boolean floating, final File directory) throws IOException
+	{
+		return create(dims, name, axes, bitsPerPixel, signed, floating, directory,
+			false);
+	}
+
+	@Override
+	public Dataset open(final File directory) throws IOException {
+		final Properties attributes = new Properties();
+		try (final InputStream in = new FileInputStream(new File(directory,
+			ATTRIBUTES)))
+		{
+			attributes.load(in);
+		}
+		final String byteOrder = attributes.getProperty("byteOrder");
+		if (!ByteOrder.nativeOrder().toString().equals(byteOrder)) {
+			throw new IOException("Dataset has byte order " + byteOrder +
+				", but native byte order is " + ByteOrder.nativeOrder());
+		}
+		final String[] dimTokens = attributes.getProperty("dimensions").split(",");
+		final String[] axisTokens = attributes.getProperty("axes").split(",");
+		final long[] dims = new long[dimTokens.length];
+		final AxisType[] axes = new AxisType[dims.length];
+		for (int d = 0; d < dims.length; d++) {
+			dims[d] = Long.parseLong(dimTokens[d]);
+			axes[d] = Axes.get(axisTokens[d]);
+		}
+		final String dataType = attributes.getProperty("dataType");
+		final int planeBytes = planeBytes(dims, bitsPerPixel(dataType));
+		return dataset(dims, attributes.getProperty("name"), axes, dataType, map(
+			directory, planeCount(dims), planeBytes, false, false));
+	}
+
+	@Override
+	public Storage getStorage(final Dataset dataset) {
+		final List<BufferAccess> accesses = accesses(dataset);
+		if (accesses.isEmpty()) return Storage.HEAP;
+		return accesses.get(0).bytes() instanceof MappedByteBuffer
+			? Storage.MAPPED : Storage.DIRECT;
+	}
+
+	@Override
+	public void flush(final Dataset dataset) {
+		for (final BufferAccess access : accesses(dataset)) {
+			access.force();
+		}
+	}
+
+	// -- Helper methods --
+
+	private Dataset create(final long[] dims, final String name,
+		final AxisType[] axes, final int bitsPerPixel, final boolean signed,
+		final boolean floating, final File directory, final boolean temporary)
+		throws IOException
+	{
+		final String dataType = dataType(bitsPerPixel, signed, floating);
+		final int planeBytes = planeBytes(dims, bitsPerPixel);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory: " + directory);
+		}
+
+		final Properties attributes = new Properties();
+		attributes.setProperty("name", name);
+		attributes.setProperty("dataType", dataType);
+		attributes.setProperty("byteOrder", ByteOrder.nativeOrder().toString());
+		final StringBuilder dimList = new StringBuilder();
+		final StringBuilder axisList = new StringBuilder();
+		for (int d = 0; d < dims.length; d++) {
+			if (d > 0) {
+				dimList.append(",");
+				axisList.append(",");
+			}
+			dimList.append(dims[d]);
+			axisList.append(axes[d].getLabel());
+		}
+		attributes.setProperty("dimensions", dimList.toString());
+		attributes.setProperty("axes", axisList.toString());
+		final File attributesFile = new File(directory, ATTRIBUTES);
+		if (temporary) attributesFile.deleteOnExit();
+		try (final OutputStream out = new FileOutputStream(attributesFile)) {
+			attributes.store(out, "ImageJ mapped dataset");
+		}
+
+		return dataset(dims, name, axes, dataType, map(directory, planeCount(dims),
+			planeBytes, true, temporary));
+	}
+
+	/** Maps the plane files of the given directory into memory. */
+	private List<ByteBuffer> map(final File directory, final long planeCount,
+		final int planeBytes, final boolean create, final boolean temporary)
+		throws IOException
+	{
+		final List<ByteBuffer> planes = new ArrayList<>();
+		for (long i = 0; i < planeCount; i++) {
+			final File file = new File(directory, String.format("plane-%06d.raw",
+				i));
+			if (!create && file.length() != planeBytes) {
+				throw new IOException("Missing or truncated plane file: " + file);
+			}
+			if (temporary) file.deleteOnExit();
+			try (final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+					final FileChannel channel = raf.getChannel())
+			{
+				// NB: The mapping remains valid after the channel is closed.
+				planes.add(channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					planeBytes));
+			}
+		}
+		return planes;
+	}
+
+	/** Wraps the given plane buffers into a dataset of the given type. */
+	private Dataset dataset(final long[] dims, final String name,
+		final AxisType[] axes, final String dataType,
+		final List<ByteBuffer> planes)
+	{
+		switch (dataType) {
+			case "int8":
+				return dataset(img(dims, new ByteType(), planes,
+					BufferAccess.Bytes::new), name, axes);
+			case "uint8":
+				return dataset(img(dims, new UnsignedByteType(), planes,
+					BufferAccess.Bytes::new), name, axes);
+			case "int16":
+				return dataset(img(dims, new ShortType(), planes,
+					BufferAccess.Shorts::new), name, axes);
+			case "uint16":
+				return dataset(img(dims, new UnsignedShortType(), planes,
+					BufferAccess.Shorts::new), name, axes);
+			case "int32":
+				return dataset(img(dims, new IntType(), planes,
+					BufferAccess.Ints::new), name, axes);
+			case "uint32":
+				return dataset(img(dims, new UnsignedIntType(), planes,
+					BufferAccess.Ints::new), name, axes);
+			case "int64":
+				return dataset(img(dims, new LongType(), planes,
+					BufferAccess.Longs::new), name, axes);
+			case "uint64":
+				return dataset(img(dims, new UnsignedLongType(), planes,
+					BufferAccess.Longs::new), name, axes);
+			case "float32":
+				return dataset(img(dims, new FloatType(), planes,
+					BufferAccess.Floats::new), name, axes);
+			case "float64":
+				return dataset(img(dims, new DoubleType(), planes,
+					BufferAccess.Doubles::new), name, axes);
+			default:
+				throw new IllegalArgumentException("Unknown data type: " + dataType);
+		}
+	}
+
+	private <T extends RealType<T>> Dataset dataset(final Img<T> img,
+		final String name, final AxisType[] axes)
+	{
+		return datasetService.create(new ImgPlus<>(img, name, axes));
+	}
+
+	/**
+	 * Wraps the given plane buffers into an image with one cell per plane.
+	 * <p>
+	 * NB: A {@link net.imglib2.img.planar.PlanarImg} would need array accesses,
+	 * whose storage other code expects to be a Java array; see
+	 * {@link BufferAccess}.
+	 * </p>
+	 */
+	private static <T extends NativeType<T>, A extends BufferAccess>
+		LazyCellImg<T, A> img(final long[] dims, final T type,
+			final List<ByteBuffer> planes, final Function<ByteBuffer, A> access)
+	{
+		final int n = dims.length;
+		final int[] planeDims = new int[n];
+		for (int d = 0; d < n; d++) {
+			planeDims[d] = d < 2 ? (int) dims[d] : 1;
+		}
+		final CellGrid grid = new CellGrid(dims, planeDims);
+		final List<Cell<A>> cells = new ArrayList<>(planes.size());
+		for (int i = 0; i < planes.size(); i++) {
+			final long[] min = new long[n];
+			final int[] size = new int[n];
+			grid.getCellDimensions(i, min, size);
+			cells.add(new Cell<>(size, min, access.apply(planes.get(i))));
+		}
+		return new LazyCellImg<>(grid, type, index -> cells.get((int) index));
+	}
+
+	/** Gets the buffer accesses of the given dataset's planes, if any. */
+	private static List<BufferAccess> accesses(final Dataset dataset) {
+		final List<BufferAccess> accesses = new ArrayList<>();
+		final Img<?> img = dataset.getImgPlus().getImg();
+		if (!(img instanceof LazyCellImg)) return accesses;
+		for (final Cell<?> cell : ((LazyCellImg<?, ?>) img).getCells()) {
+			final Object data = cell.getData();
+			if (!(data instanceof BufferAccess)) break;
+			accesses.add((BufferAccess) data);
+		}
+		return accesses;
+	}
+
+	private static String dataType(final int bitsPerPixel, final boolean signed,
+		final boolean floating)
+	{
+		if (floating) {
+			if (bitsPerPixel == 32 || bitsPerPixel == 64) {
+				return "float" + bitsPerPixel;
+			}
+		}
+		else if (bitsPerPixel == 8 || bitsPerPixel == 16 || bitsPerPixel == 32 ||
+			bitsPerPixel == 64)
+		{
+			return (signed ? "int" : "uint") + bitsPerPixel;
+		}
+		throw new IllegalArgumentException("Unsupported type: " + bitsPerPixel +
+			"-bit" + (signed ? " signed" : "") + (floating ? " floating" : ""));
+	}
+
+	private static int bitsPerPixel(final String dataType) {
+		return Integer.parseInt(dataType.replaceAll("[^0-9]", ""));
+	}
+
+	/** Gets the number of X-Y planes of an image with the given size. */
+	private static long planeCount(final long[] dims) {
+		long count = 1;
+		for (int d = 2; d < dims.length; d++) {
+			count *= dims[d];
+		}
+		return count;
+	}
+
+	private static int planeBytes(final long[] dims, final int bitsPerPixel) {
+		long pixels = 1;
+		for (int d = 0; d < Math.min(2, dims.length); d++) {
+			pixels *= dims[d];
+		}
+		final long bytes = pixels * bitsPerPixel / 8;
+		if (bytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Plane too large: " + bytes +
+				" bytes");
+		}
+		return (int) bytes;
+	}
+
+}
@@ -0,0 +1,365 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.streaming;
+
+import io.scif.FormatException;
+import io.scif.ImageMetadata;
+import io.scif.Plane;
+import io.scif.Reader;
+import io.scif.services.InitializeService;
+import io.scif.util.FormatTools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imglib2.FinalInterval;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.util.Bytes;
+
+/**
+ * Default implementation of {@link StreamingDatasetService}.
+ * <p>
+ * Each dataset is a {@link LazyCellImg} whose cells are tiles of the planes of
+ * the image, served by a {@link TileCache} which decodes them via the SCIFIO
+ * {@link Reader} of the image. The reader is closed along with the cache,
+ * either explicitly via {@link #close(Dataset)}, or once the dataset has been
+ * garbage collected, as noticed whenever a dataset is opened or looked up.
+ * </p>
+ */
+@Plugin(type = Service.class)
+public class DefaultStreamingDatasetService extends AbstractService implements
+	StreamingDatasetService
+{
+
+	@Parameter
+	private InitializeService initializeService;
+
+	@Parameter
+	private DatasetService datasetService;
+
+	private final Map<Dataset, CacheReference> caches = //
+		Collections.synchronizedMap(new WeakHashMap<Dataset, CacheReference>());
+
+	/**
+	 * References to the datasets of all open caches, which keep the references
+	 * themselves reachable until their datasets are collected or closed.
+	 */
+	private final Set<CacheReference> references = Collections.newSetFromMap(
+		new ConcurrentHashMap<CacheReference, Boolean>());
+
+	private final ReferenceQueue<Dataset> collected = new ReferenceQueue<>();
+
+	private ExecutorService prefetcher;
+
+	// -- StreamingDatasetService methods --
+
+	@Override
+	public Dataset open(final String source, final int tileSize,
+		final int capacity) throws IOException
+	{
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("Invalid tile size: " + tileSize);
+		}
+		closeCollected();
+		final Reader reader;
+		try {
+			reader = initializeService.initializeReader(source);
+		}
+		catch (final FormatException exc) {
+			throw new IOException(exc);
+		}
+		try {
+			return open(source, reader, tileSize, capacity);
+		}
+		catch (final IOException | RuntimeException exc) {
+			reader.close();
+			throw exc;
+		}
+	}
+
+	@Override
+	public TileCache<?> getCache(final Dataset dataset) {
+		closeCollected();
+		final CacheReference reference = caches.get(dataset);
+		return reference == null ? null : reference.cache;
+	}
+
+	@Override
+	public void close(final Dataset dataset) throws IOException {
+		final CacheReference reference = caches.remove(dataset);
+		// NB: A cleared reference is never enqueued, so it is closed only here.
+		if (reference != null) reference.clear();
+		close(reference);
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		caches.clear();
+		for (final CacheReference reference : references) {
+			reference.clear();
+			try {
+				close(reference);
+			}
+			catch (final IOException exc) {
+				log().warn("Cannot close streaming dataset", exc);
+			}
+		}
+		synchronized (this) {
+			if (prefetcher != null) prefetcher.shutdownNow();
+			prefetcher = null;
+		}
+	}
+
+	// -- Helper methods --
+
+	private Dataset open(final String source, final Reader reader,
+		final int tileSize, final int capacity) throws IOException
+	{
+		final ImageMetadata meta = reader.getMetadata().get(0);
+		final int planarCount = meta.getPlanarAxisCount();
+		final long[] dims = meta.getAxesLengths();
+		final int[] tileDims = new int[dims.length];
+		for (int d = 0; d < dims.length; d++) {
+			final AxisType type = meta.getAxis(d).type();
+			final boolean tiled = type == Axes.X || type == Axes.Y;
+			if (d >= planarCount) tileDims[d] = 1;
+			else if (tiled) tileDims[d] = (int) Math.min(tileSize, dims[d]);
+			else tileDims[d] = (int) dims[d];
+		}
+		final CellGrid grid = new CellGrid(dims, tileDims);
+
+		final long[] nonPlanarLengths = meta.getAxesLengthsNonPlanar();
+		final int pixelType = meta.getPixelType();
+		final int bpp = FormatTools.getBytesPerPixel(pixelType);
+		final boolean fp = FormatTools.isFloatingPoint(pixelType);
+		final boolean little = meta.isLittleEndian();
+		final BiFunction<long[], int[], Object> decode = (min, size) -> {
+			final long[] planeMax = new long[planarCount];
+			for (int d = 0; d < planarCount; d++) {
+				planeMax[d] = min[d] + size[d] - 1;
+			}
+			final long planeIndex = FormatTools.positionToRaster(nonPlanarLengths,
+				Arrays.copyOfRange(min, planarCount, min.length));
+			final Plane plane;
+			try {
+				// NB: SCIFIO readers are not thread-safe.
+				synchronized (reader) {
+					plane = reader.openPlane(0, planeIndex, new FinalInterval(Arrays
+						.copyOf(min, planarCount), planeMax));
+				}
+			}
+			catch (final IOException exc) {
+				throw new UncheckedIOException(exc);
+			}
+			catch (final FormatException exc) {
+				throw new IllegalStateException(exc);
+			}
+			return Bytes.makeArray(plane.getBytes(), bpp, fp, little);
+		};
+
+		final TileCacheFactory factory = new TileCacheFactory(source, reader,
+			meta, grid, decode, capacity);
+		switch (pixelType) {
+			case FormatTools.INT8:
+				return factory.create(new ByteType(), a -> new ByteArray((byte[]) a));
+			case FormatTools.UINT8:
+				return factory.create(new UnsignedByteType(), a -> new ByteArray(
+					(byte[]) a));
+			case FormatTools.INT16:
+				return factory.create(new ShortType(), a -> new ShortArray(
+					(short[]) a));
+			case FormatTools.UINT16:
+				return factory.create(new UnsignedShortType(), a -> new ShortArray(
+					(short[]) a));
+			case FormatTools.INT32:
+				return factory.create(new IntType(), a -> new IntArray((int[]) a));
+			case FormatTools.UINT32:
+				return factory.create(new UnsignedIntType(), a -> new IntArray(
+					(int[]) a));
+			case FormatTools.FLOAT:
+				return factory.create(new FloatType(), a -> new FloatArray(
+					(float[]) a));
+			case FormatTools.DOUBLE:
+				return factory.create(new DoubleType(), a -> new DoubleArray(
+					(double[]) a));
+			default:
+				throw new IOException("Unsupported pixel type: " + FormatTools
+					.getPixelTypeString(pixelType));
+		}
+	}
+
+	/** Closes the caches of the datasets collected by the garbage collector. */
+	private void closeCollected() {
+		Reference<? extends Dataset> reference;
+		while ((reference = collected.poll()) != null) {
+			try {
+				close((CacheReference) reference);
+			}
+			catch (final IOException exc) {
+				log().warn("Cannot close streaming dataset", exc);
+			}
+		}
+	}
+
+	/** Closes the given cache, unless it was closed already. */
+	private void close(final CacheReference reference) throws IOException {
+		if (reference != null && references.remove(reference)) {
+			reference.cache.close();
+		}
+	}
+
+	private synchronized ExecutorService prefetcher() {
+		if (prefetcher == null) {
+			prefetcher = Executors.newSingleThreadExecutor(r -> {
+				final Thread t = new Thread(r, "streaming-dataset-prefetch");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return prefetcher;
+	}
+
+	// -- Helper classes --
+
+	/** Creates the cache and dataset for an image of a particular type. */
+	private class TileCacheFactory {
+
+		private final String source;
+		private final Reader reader;
+		private final ImageMetadata meta;
+		private final CellGrid grid;
+		private final BiFunction<long[], int[], Object> decode;
+		private final int capacity;
+
+		private TileCacheFactory(final String source, final Reader reader,
+			final ImageMetadata meta, final CellGrid grid,
+			final BiFunction<long[], int[], Object> decode, final int capacity)
+		{
+			this.source = source;
+			this.reader = reader;
+			this.meta = meta;
+			this.grid = grid;
+			this.decode = decode;
+			this.capacity = capacity;
+		}
+
+		private <T extends RealType<T> & NativeType<T>, A> Dataset create(
+			final T type, final Function<Object, A> wrap)
+		{
+			final int n = grid.numDimensions();
+			final TileCache<A> cache = new TileCache<>(index -> {
+				final long[] min = new long[n];
+				final int[] size = new int[n];
+				grid.getCellDimensions(index, min, size);
+				return new Cell<>(size, min, wrap.apply(decode.apply(min, size)));
+			}, Intervals.numElements(grid.getGridDimensions()), capacity,
+				prefetcher(), reader::close);
+
+			final LazyCellImg<T, A> img = new LazyCellImg<>(grid, type, cache);
+			final CalibratedAxis[] axes = //
+				new ArrayList<>(meta.getAxes()).toArray(new CalibratedAxis[n]);
+			final ImgPlus<T> imgPlus = //
+				new ImgPlus<>(img, new File(source).getName(), axes);
+			imgPlus.setSource(source);
+			final Dataset dataset = datasetService.create(imgPlus);
+			final CacheReference reference = //
+				new CacheReference(dataset, cache, collected);
+			references.add(reference);
+			caches.put(dataset, reference);
+			return dataset;
+		}
+	}
+
+	/**
+	 * Weak reference to a streaming dataset, which holds on to its cache so
+	 * that the cache, and with it the reader, can be closed once the dataset
+	 * has been collected.
+	 */
+	private static class CacheReference extends WeakReference<Dataset> {
+
+		private final TileCache<?> cache;
+
+		private CacheReference(final Dataset dataset, final TileCache<?> cache,
+			final ReferenceQueue<Dataset> queue)
+		{
+			super(dataset, queue);
+			this.cache = cache;
+		}
+	}
+
+}
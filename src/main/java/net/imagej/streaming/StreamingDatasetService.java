@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.streaming;
+
+import java.io.IOException;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJService;
+
+/**
+ * Interface for services which open images lazily, one tile at a time.
+ * <p>
+ * Unlike {@link io.scif.services.DatasetIOService#open(String)}, which reads
+ * all pixels up front, a streaming dataset decodes each tile from its SCIFIO
+ * reader on first access and keeps only a bounded number of tiles in memory,
+ * so ops can process images much larger than the heap.
+ * </p>
+ */
+public interface StreamingDatasetService extends ImageJService {
+
+	/** Default width and height of the tiles, in pixels. */
+	int DEFAULT_TILE_SIZE = 512;
+
+	/** Default number of decoded tiles kept per dataset. */
+	int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * Opens the given image as a streaming dataset, with default tile size and
+	 * cache capacity.
+	 * 
+	 * @see #open(String, int, int)
+	 */
+	default Dataset open(final String source) throws IOException {
+		return open(source, DEFAULT_TILE_SIZE, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Opens the given image as a streaming dataset.
+	 * 
+	 * @param source Location of the image; only its first series is opened.
+	 * @param tileSize Width and height of the tiles in pixels. Tiles always
+	 *          span a single plane, including all interleaved channels.
+	 * @param capacity Maximum number of decoded tiles kept in memory.
+	 * @throws IOException If the image cannot be read.
+	 */
+	Dataset open(String source, int tileSize, int capacity) throws IOException;
+
+	/**
+	 * Gets the tile cache backing the given dataset, for inspecting its
+	 * statistics.
+	 * 
+	 * @return The cache, or null if the dataset was not opened by this service.
+	 */
+	TileCache<?> getCache(Dataset dataset);
+
+	/**
+	 * Closes the reader of the given dataset, and discards its cached tiles.
+	 * The dataset must not be accessed afterwards. Does nothing if the dataset
+	 * was not opened by this service, or was already closed.
+	 * <p>
+	 * Datasets which become unreachable are closed automatically, but only once
+	 * the garbage collector notices, so it is best to close each dataset
+	 * explicitly once done with it.
+	 * </p>
+	 */
+	void close(Dataset dataset) throws IOException;
+
+}
@@ -0,0 +1,237 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.streaming;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.LongFunction;
+
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.LazyCellImg;
+
+/**
+ * A bounded cache of decoded image tiles, serving the cells of a
+ * {@link LazyCellImg}.
+ * <p>
+ * Tiles are evicted in least-recently-used order once more than
+ * {@link #getCapacity()} tiles are held. When consecutive requests move
+ * through the tiles with a constant stride (e.g., scanning a plane row by row,
+ * or stepping through Z), the next tile in that direction is decoded in the
+ * background before it is requested.
+ * </p>
+ */
+public class TileCache<A> implements LazyCellImg.Get<Cell<A>>, Closeable {
+
+	private final LongFunction<Cell<A>> loader;
+	private final long tileCount;
+	private final int capacity;
+	private final Executor prefetcher;
+	private final Closeable source;
+
+	private final Map<Long, Cell<A>> tiles;
+	private final Map<Long, FutureTask<Cell<A>>> loading = new HashMap<>();
+
+	private long lastIndex = -1;
+	private long lastStride;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long prefetches;
+
+	/**
+	 * Creates a tile cache.
+	 * 
+	 * @param loader Function decoding the tile with the given flat index.
+	 * @param tileCount Number of tiles in the image.
+	 * @param capacity Maximum number of decoded tiles to keep.
+	 * @param prefetcher Executor on which tiles are prefetched.
+	 * @param source Resource to close along with this cache, or null.
+	 */
+	public TileCache(final LongFunction<Cell<A>> loader, final long tileCount,
+		final int capacity, final Executor prefetcher, final Closeable source)
+	{
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		this.loader = loader;
+		this.tileCount = tileCount;
+		this.capacity = capacity;
+		this.prefetcher = prefetcher;
+		this.source = source;
+		tiles = new LinkedHashMap<Long, Cell<A>>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(
+				final Map.Entry<Long, Cell<A>> eldest)
+			{
+				if (size() <= TileCache.this.capacity) return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	// -- TileCache methods --
+
+	/** Gets the maximum number of decoded tiles kept in memory. */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/** Gets the number of decoded tiles currently held. */
+	public synchronized int getSize() {
+		return tiles.size();
+	}
+
+	/** Gets the number of tile requests served from the cache. */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/** Gets the number of tile requests which had to wait for decoding. */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/** Gets the number of tiles dropped to make room for others. */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/** Gets the number of tiles decoded ahead of being requested. */
+	public synchronized long getPrefetchCount() {
+		return prefetches;
+	}
+
+	/** Discards all decoded tiles. */
+	public synchronized void clear() {
+		tiles.clear();
+	}
+
+	// -- Get methods --
+
+	@Override
+	public Cell<A> get(final long index) {
+		final FutureTask<Cell<A>> task;
+		synchronized (this) {
+			prefetchAfter(index);
+			final Cell<A> tile = tiles.get(index);
+			if (tile != null) {
+				hits++;
+				return tile;
+			}
+			misses++;
+			final FutureTask<Cell<A>> pending = loading.get(index);
+			task = pending == null ? task(index) : pending;
+		}
+		// NB: Load the tile right here, unless a prefetch already started;
+		// a prefetch still queued behind others then does nothing.
+		task.run();
+		try {
+			return task.get();
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted loading tile " + index,
+				exc);
+		}
+		catch (final ExecutionException exc) {
+			final Throwable cause = exc.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	// -- Closeable methods --
+
+	@Override
+	public void close() throws IOException {
+		clear();
+		if (source != null) source.close();
+	}
+
+	// -- Helper methods --
+
+	/** Creates and registers the task loading the given tile. */
+	private FutureTask<Cell<A>> task(final long index) {
+		final FutureTask<Cell<A>> task = new FutureTask<>(() -> {
+			try {
+				final Cell<A> tile = loader.apply(index);
+				synchronized (this) {
+					tiles.put(index, tile);
+				}
+				return tile;
+			}
+			finally {
+				synchronized (this) {
+					loading.remove(index);
+				}
+			}
+		});
+		loading.put(index, task);
+		return task;
+	}
+
+	/**
+	 * Schedules the next tile along the current access direction, once the
+	 * same stride was seen twice in a row.
+	 */
+	private void prefetchAfter(final long index) {
+		final long stride = index - lastIndex;
+		final boolean steady = lastIndex >= 0 && stride != 0 && //
+			stride == lastStride;
+		lastIndex = index;
+		lastStride = stride;
+		if (!steady) return;
+		final long next = index + stride;
+		if (next < 0 || next >= tileCount) return;
+		if (tiles.containsKey(next) || loading.containsKey(next)) return;
+		final FutureTask<Cell<A>> task = task(next);
+		try {
+			prefetcher.execute(task);
+			prefetches++;
+		}
+		catch (final RejectedExecutionException exc) {
+			// NB: E.g., the prefetcher was shut down; load on demand instead.
+			loading.remove(next);
+		}
+	}
+
+}
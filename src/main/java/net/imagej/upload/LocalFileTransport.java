@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.upload;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * An {@link UploadTransport} writing to a local directory, e.g. an update
+ * site on a shared file system, or a stand-in for a remote site in tests.
+ * <p>
+ * Partial files are stored with the suffix {@code .part}, and the checksum of
+ * each complete file in a sidecar file with the suffix {@code .sha1}.
+ * </p>
+ */
+public class LocalFileTransport implements UploadTransport {
+
+	private final File root;
+
+	public LocalFileTransport(final File root) {
+		this.root = root;
+	}
+
+	// -- UploadTransport methods --
+
+	@Override
+	public String getChecksum(final String path) throws IOException {
+		final File checksumFile = file(path, ".sha1");
+		if (!file(path, "").exists() || !checksumFile.exists()) return null;
+		return new String(Files.readAllBytes(checksumFile.toPath()),
+			StandardCharsets.UTF_8).trim();
+	}
+
+	@Override
+	public long getPartialLength(final String path) {
+		return file(path, ".part").length();
+	}
+
+	@Override
+	public void append(final String path, final long offset, final byte[] data,
+		final int length) throws IOException
+	{
+		final File part = file(path, ".part");
+		if (part.length() != offset) {
+			throw new IOException("Expected " + part + " to have length " + offset +
+				", but it has " + part.length());
+		}
+		mkdirs(part);
+		try (final OutputStream out = new FileOutputStream(part, true)) {
+			out.write(data, 0, length);
+		}
+	}
+
+	@Override
+	public void complete(final String path, final String checksum)
+		throws IOException
+	{
+		final File part = file(path, ".part");
+		mkdirs(part);
+		if (!part.exists()) Files.createFile(part.toPath());
+		final String actual = ParallelUploader.checksum(part);
+		if (!actual.equals(checksum)) {
+			discard(path);
+			throw new IOException("Checksum mismatch for " + path + ": expected " +
+				checksum + " but got " + actual);
+		}
+		Files.move(part.toPath(), file(path, "").toPath(),
+			StandardCopyOption.REPLACE_EXISTING);
+		Files.write(file(path, ".sha1").toPath(), checksum.getBytes(
+			StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void discard(final String path) throws IOException {
+		Files.deleteIfExists(file(path, ".part").toPath());
+	}
+
+	// -- Helper methods --
+
+	private File file(final String path, final String suffix) {
+		return new File(root, path + suffix);
+	}
+
+	private void mkdirs(final File file) throws IOException {
+		final File dir = file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create directory: " + dir);
+		}
+	}
+
+}
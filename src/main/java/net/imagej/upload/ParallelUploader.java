@@ -0,0 +1,234 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.upload;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads files to an {@link UploadTransport} concurrently.
+ * <p>
+ * Files whose content already matches the destination (by SHA-1 checksum) are
+ * skipped. Others are sent in chunks; when a chunk fails, the upload is
+ * retried from the end of what the destination already received, rather
+ * than from scratch.
+ * </p>
+ */
+public class ParallelUploader {
+
+	/** Default size of the chunks sent at once, in bytes. */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	/** Default number of times a failed upload is resumed. */
+	public static final int DEFAULT_RETRIES = 3;
+
+	private final UploadTransport transport;
+	private final int workers;
+	private final int chunkSize;
+	private final int retries;
+
+	public ParallelUploader(final UploadTransport transport, final int workers) {
+		this(transport, workers, DEFAULT_CHUNK_SIZE, DEFAULT_RETRIES);
+	}
+
+	public ParallelUploader(final UploadTransport transport, final int workers,
+		final int chunkSize, final int retries)
+	{
+		if (workers < 1) {
+			throw new IllegalArgumentException("Invalid worker count: " + workers);
+		}
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+		}
+		if (retries < 0) {
+			throw new IllegalArgumentException("Invalid retry count: " + retries);
+		}
+		this.transport = transport;
+		this.workers = workers;
+		this.chunkSize = chunkSize;
+		this.retries = retries;
+	}
+
+	// -- ParallelUploader methods --
+
+	/**
+	 * Uploads the given files.
+	 * 
+	 * @param files Local files to upload, by destination path.
+	 * @return A report of uploaded, skipped and failed files.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *           uploads; uploads in progress can be resumed later.
+	 */
+	public UploadReport upload(final Map<String, File> files)
+		throws InterruptedException
+	{
+		final List<String> uploaded = //
+			Collections.synchronizedList(new ArrayList<String>());
+		final List<String> skipped = //
+			Collections.synchronizedList(new ArrayList<String>());
+		final Map<String, Throwable> failures = //
+			Collections.synchronizedMap(new LinkedHashMap<String, Throwable>());
+		final AtomicLong bytes = new AtomicLong();
+
+		final AtomicInteger count = new AtomicInteger();
+		final ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+			final Thread t = new Thread(r, "upload-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (final Map.Entry<String, File> entry : files.entrySet()) {
+				final String path = entry.getKey();
+				futures.add(pool.submit(() -> {
+					try {
+						if (upload(path, entry.getValue(), bytes)) uploaded.add(path);
+						else skipped.add(path);
+					}
+					catch (final IOException | RuntimeException exc) {
+						failures.put(path, exc);
+					}
+				}));
+			}
+			for (final Future<?> future : futures) {
+				try {
+					future.get();
+				}
+				catch (final ExecutionException exc) {
+					// NB: Tasks record their own failures.
+					throw new IllegalStateException(exc.getCause());
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		return new UploadReport(uploaded, skipped, failures, bytes.get());
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Uploads one file, resuming after failures.
+	 * 
+	 * @return False if the file was skipped as unchanged.
+	 */
+	private boolean upload(final String path, final File file,
+		final AtomicLong bytes) throws IOException
+	{
+		final String checksum = checksum(file);
+		if (checksum.equals(transport.getChecksum(path))) return false;
+		IOException failure = null;
+		for (int attempt = 0; attempt <= retries; attempt++) {
+			try {
+				send(path, file, bytes);
+				transport.complete(path, checksum);
+				return true;
+			}
+			catch (final IOException exc) {
+				failure = exc;
+			}
+		}
+		throw failure;
+	}
+
+	/** Sends the part of the file which the destination does not have yet. */
+	private void send(final String path, final File file, final AtomicLong bytes)
+		throws IOException
+	{
+		final long length = file.length();
+		long offset = transport.getPartialLength(path);
+		if (offset > length) {
+			// NB: Left over from a different version of the file.
+			transport.discard(path);
+			offset = 0;
+		}
+		try (final RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			in.seek(offset);
+			final byte[] chunk = new byte[(int) Math.min(chunkSize, Math.max(1,
+				length - offset))];
+			while (offset < length) {
+				final int n = in.read(chunk, 0, (int) Math.min(chunk.length, length -
+					offset));
+				if (n < 0) throw new IOException("File shrank during upload: " + file);
+				transport.append(path, offset, chunk, n);
+				offset += n;
+				bytes.addAndGet(n);
+			}
+		}
+	}
+
+	/**
+	 * Computes the SHA-1 checksum of the given file, in hexadecimal.
+	 * 
+	 * @throws java.io.FileNotFoundException if the file does not exist.
+	 */
+	static String checksum(final File file) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (final NoSuchAlgorithmException exc) {
+			throw new IllegalStateException(exc);
+		}
+		try (final InputStream in = new FileInputStream(file)) {
+			final byte[] buffer = new byte[65536];
+			while (true) {
+				final int n = in.read(buffer);
+				if (n < 0) break;
+				digest.update(buffer, 0, n);
+			}
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.upload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary of a run of a {@link ParallelUploader}.
+ */
+public class UploadReport {
+
+	private final List<String> uploaded;
+	private final List<String> skipped;
+	private final Map<String, Throwable> failures;
+	private final long bytesTransferred;
+
+	UploadReport(final List<String> uploaded, final List<String> skipped,
+		final Map<String, Throwable> failures, final long bytesTransferred)
+	{
+		this.uploaded = Collections.unmodifiableList(new ArrayList<>(uploaded));
+		this.skipped = Collections.unmodifiableList(new ArrayList<>(skipped));
+		this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(
+			failures));
+		this.bytesTransferred = bytesTransferred;
+	}
+
+	/** Gets the paths of the files which were uploaded. */
+	public List<String> getUploaded() {
+		return uploaded;
+	}
+
+	/** Gets the paths of the files skipped because they were unchanged. */
+	public List<String> getSkipped() {
+		return skipped;
+	}
+
+	/** Gets the paths of the files which could not be uploaded, and why. */
+	public Map<String, Throwable> getFailures() {
+		return failures;
+	}
+
+	/** Gets the number of bytes sent, including retransmissions. */
+	public long getBytesTransferred() {
+		return bytesTransferred;
+	}
+
+	@Override
+	public String toString() {
+		return uploaded.size() + " uploaded, " + skipped.size() + " skipped, " +
+			failures.size() + " failed, " + bytesTransferred + " bytes transferred";
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.upload;
+
+import java.io.IOException;
+
+/**
+ * A destination for {@link ParallelUploader}, such as an update site reached
+ * via SSH or WebDAV.
+ * <p>
+ * Each file is uploaded into a <em>partial</em> file first, which is appended
+ * to chunk by chunk and only made visible under its final path by
+ * {@link #complete}. An interrupted upload can thus be resumed from the
+ * length of its partial file. Implementations must be safe for concurrent
+ * use on different paths.
+ * </p>
+ */
+public interface UploadTransport {
+
+	/**
+	 * Gets the checksum recorded for the complete file at the given path.
+	 * 
+	 * @return The SHA-1 checksum in hexadecimal, or null if there is no such
+	 *         file or its checksum is unknown.
+	 */
+	String getChecksum(String path) throws IOException;
+
+	/** Gets the length of the partial file of the given path, or 0 if none. */
+	long getPartialLength(String path) throws IOException;
+
+	/**
+	 * Appends data to the partial file of the given path.
+	 * 
+	 * @param offset The current length of the partial file, as a safeguard
+	 *          against appending at the wrong position.
+	 * @throws IOException If the data could not be written; the partial file
+	 *           may then hold part of the data.
+	 */
+	void append(String path, long offset, byte[] data, int length)
+		throws IOException;
+
+	/**
+	 * Makes the partial file available under its final path, replacing any
+	 * previous version.
+	 * 
+	 * @param checksum The expected SHA-1 checksum of the whole file.
+	 * @throws IOException If the partial file does not match the checksum; it
+	 *           is then discarded.
+	 */
+	void complete(String path, String checksum) throws IOException;
+
+	/** Deletes the partial file of the given path, if any. */
+	void discard(String path) throws IOException;
+
+}
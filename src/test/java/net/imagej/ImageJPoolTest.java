@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.display.AbstractDisplay;
+import org.scijava.display.DisplayService;
+import org.scijava.object.ObjectService;
+
+/**
+ * Tests {@link ImageJPool}.
+ */
+public class ImageJPoolTest {
+
+	private ImageJPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ImageJPool(1);
+	}
+
+	@After
+	public void tearDown() {
+		pool.dispose();
+	}
+
+	/** Tests that gateways are reused, and reset between leases. */
+	@Test
+	public void testLease() throws InterruptedException {
+		final Object data = new Object();
+
+		final ImageJ ij = pool.lease();
+		assertEquals(1, pool.getActiveCount());
+		assertEquals(0, pool.getIdleCount());
+		assertNull(pool.lease(10, TimeUnit.MILLISECONDS));
+		ij.object().addObject(data);
+		assertTrue(ij.object().getIndex().getAll().contains(data));
+		pool.release(ij);
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(1, pool.getIdleCount());
+
+		final ImageJ ij2 = pool.lease();
+		assertSame(ij, ij2);
+		assertFalse(ij2.object().getIndex().getAll().contains(data));
+		pool.release(ij2);
+
+		assertEquals(2, pool.getLeaseCount());
+	}
+
+	/** Tests that a gateway cannot be released twice. */
+	@Test
+	public void testDoubleRelease() throws InterruptedException {
+		final ImageJ ij = pool.lease();
+		pool.release(ij);
+		try {
+			pool.release(ij);
+			fail("Expected IllegalArgumentException");
+		}
+		catch (final IllegalArgumentException exc) {
+			// NB: Expected.
+		}
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	/** Tests that a thread waiting for a lease fails when disposing the pool. */
+	@Test
+	public void testLeaseAfterDispose() throws Exception {
+		final ImageJ ij = pool.lease();
+		final FutureTask<ImageJ> waiting = new FutureTask<>(pool::lease);
+		new Thread(waiting).start();
+		try {
+			waiting.get(50, TimeUnit.MILLISECONDS);
+			fail("Expected TimeoutException");
+		}
+		catch (final TimeoutException exc) {
+			// NB: Expected; the only gateway is leased.
+		}
+		pool.dispose();
+		try {
+			waiting.get(10, TimeUnit.SECONDS);
+			fail("Expected ExecutionException");
+		}
+		catch (final ExecutionException exc) {
+			assertTrue(exc.getCause() instanceof IllegalStateException);
+		}
+		pool.release(ij);
+		try {
+			pool.lease();
+			fail("Expected IllegalStateException");
+		}
+		catch (final IllegalStateException exc) {
+			// NB: Expected.
+		}
+	}
+
+	/** Tests that a failing factory does not leak the gateways it created. */
+	@Test
+	public void testFactoryFailure() {
+		final List<Context> created = new ArrayList<>();
+		final Set<Context> disposed = new HashSet<>();
+		try {
+			new ImageJPool(3, () -> {
+				if (created.size() == 2) throw new IllegalStateException("Oops");
+				final Context context = new Context(ObjectService.class,
+					DisplayService.class)
+				{
+
+					@Override
+					public void dispose() {
+						disposed.add(this);
+						super.dispose();
+					}
+				};
+				created.add(context);
+				return new ImageJ(context);
+			});
+			fail("Expected IllegalStateException");
+		}
+		catch (final IllegalStateException exc) {
+			assertEquals("Oops", exc.getMessage());
+		}
+		assertEquals(2, created.size());
+		assertEquals(new HashSet<>(created), disposed);
+	}
+
+	/**
+	 * Tests that a gateway which can neither be reset nor replaced is recreated
+	 * by the next lease, without hiding the result of the task.
+	 */
+	@Test
+	public void testReplacementFailure() throws Exception {
+		final List<Context> created = new ArrayList<>();
+		final ImageJPool brittle = new ImageJPool(1, () -> {
+			if (created.size() == 1) {
+				created.add(null);
+				throw new IllegalStateException("Oops");
+			}
+			final Context context = //
+				new Context(ObjectService.class, DisplayService.class);
+			created.add(context);
+			return new ImageJ(context);
+		});
+		try {
+			final String name = brittle.run(ij -> {
+				ij.object().addObject(new AbstractDisplay<Object>(Object.class) {
+
+					@Override
+					public void close() {
+						throw new IllegalStateException("Broken");
+					}
+				});
+				return ij.getShortName();
+			});
+			assertEquals("ij", name);
+			assertEquals(0, brittle.getActiveCount());
+			assertEquals(0, brittle.getIdleCount());
+
+			final FutureTask<ImageJ> lease = new FutureTask<>(brittle::lease);
+			new Thread(lease).start();
+			final ImageJ ij = lease.get(10, TimeUnit.SECONDS);
+			assertSame(created.get(2), ij.getContext());
+			brittle.release(ij);
+			assertEquals(1, brittle.getIdleCount());
+		}
+		finally {
+			brittle.dispose();
+		}
+	}
+
+	/** Tests running a task with a leased gateway. */
+	@Test
+	public void testRun() throws InterruptedException {
+		final String name = pool.run(ij -> ij.getShortName());
+		assertEquals("ij", name);
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(1, pool.getLeaseCount());
+	}
+
+}
@@ -0,0 +1,264 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.ItemIO;
+import org.scijava.command.Command;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Tests {@link ImageJServer}.
+ */
+public class ImageJServerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageJ ij;
+	private ImageJServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		ij = new ImageJ();
+		ij.ui().setHeadless(true);
+		server = new ImageJServer(ij, 0, new File(folder.getRoot(),
+			"server.token"));
+		ij.thread().run(server);
+	}
+
+	@After
+	public void tearDown() {
+		server.dispose();
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testRequests() throws IOException {
+		try (final Client client = new Client()) {
+			client.authenticate();
+
+			client.send("ping");
+			assertEquals("OK", client.receive());
+
+			client.send("command");
+			assertEquals("ERROR Missing argument", client.receive());
+
+			client.send("frobnicate \"some thing\"");
+			assertTrue(client.receive().startsWith("ERROR Unknown request"));
+
+			client.send("command no.such.Command");
+			assertEquals("ERROR No such command: no.such.Command", client
+				.receive());
+		}
+	}
+
+	/** Tests that connections must authenticate first. */
+	@Test
+	public void testAuthentication() throws IOException {
+		final File tokenFile = server.getTokenFile();
+		assertTrue(tokenFile.isFile());
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains(
+			"posix"))
+		{
+			assertEquals("rw-------", PosixFilePermissions.toString(Files
+				.getPosixFilePermissions(tokenFile.toPath())));
+		}
+
+		try (final Client client = new Client()) {
+			client.send("ping");
+			assertEquals("ERROR Unauthorized", client.receive());
+			assertNull(client.receive());
+		}
+		try (final Client client = new Client()) {
+			client.send("auth 0123");
+			assertEquals("ERROR Unauthorized", client.receive());
+		}
+
+		server.dispose();
+		assertFalse(tokenFile.exists());
+	}
+
+	/** Tests running a command, with its log messages and outputs. */
+	@Test
+	public void testCommand() throws IOException {
+		try (final Client client = new Client()) {
+			client.authenticate();
+			client.send("command " + Greet.class.getName() + " \"name=Jane Doe\"");
+			final String log = client.receive();
+			assertTrue(log.startsWith("LOG "));
+			assertTrue(log.endsWith("Greeting Jane Doe"));
+			assertEquals("OUTPUT greeting=Hello, Jane Doe!", client.receive());
+			assertEquals("OK", client.receive());
+		}
+	}
+
+	/** Tests that messages logged by worker threads are streamed back. */
+	@Test
+	public void testWorkerLog() throws IOException {
+		try (final Client client = new Client()) {
+			client.authenticate();
+			client.send("command " + Delegate.class.getName());
+			assertTrue(client.receive().endsWith("Pooled worker"));
+			assertTrue(client.receive().endsWith("Forked worker"));
+			assertEquals("OK", client.receive());
+		}
+	}
+
+	/** Tests running a script. */
+	@Test
+	public void testScript() throws IOException {
+		assumeNotNull(ij.script().getLanguageByExtension("js"));
+		final File script = folder.newFile("greet.js");
+		Files.write(script.toPath(), Arrays.asList("// @String name",
+			"// @OUTPUT String greeting", "greeting = 'Hello, ' + name + '!';"),
+			StandardCharsets.UTF_8);
+		try (final Client client = new Client()) {
+			client.authenticate();
+			client.send("script \"" + script.getPath() + "\" name=Jane");
+			assertEquals("OUTPUT greeting=Hello, Jane!", client.receive());
+			assertEquals("OK", client.receive());
+		}
+	}
+
+	// -- Helper classes --
+
+	/** A command which greets someone. */
+	@Plugin(type = Command.class)
+	public static class Greet implements Command {
+
+		@Parameter
+		private LogService log;
+
+		@Parameter
+		private String name;
+
+		@Parameter(type = ItemIO.OUTPUT)
+		private String greeting;
+
+		@Override
+		public void run() {
+			log.info("Greeting " + name);
+			greeting = "Hello, " + name + "!";
+		}
+	}
+
+	/** A command which logs from other threads. */
+	@Plugin(type = Command.class)
+	public static class Delegate implements Command {
+
+		@Parameter
+		private LogService log;
+
+		@Parameter
+		private ThreadService threadService;
+
+		@Override
+		public void run() {
+			try {
+				threadService.run(() -> log.info("Pooled worker")).get();
+				final Thread thread = new Thread(() -> log.info("Forked worker"));
+				thread.start();
+				thread.join();
+			}
+			catch (final InterruptedException | ExecutionException exc) {
+				throw new IllegalStateException(exc);
+			}
+		}
+	}
+
+	/** A connection to the server. */
+	private class Client implements Closeable {
+
+		private final Socket socket;
+		private final BufferedReader in;
+		private final PrintWriter out;
+
+		public Client() throws IOException {
+			socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+				StandardCharsets.UTF_8));
+			out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+				StandardCharsets.UTF_8), true);
+		}
+
+		public void authenticate() throws IOException {
+			final String token = new String(Files.readAllBytes(server
+				.getTokenFile().toPath()), StandardCharsets.UTF_8);
+			send("auth " + token);
+			assertEquals("OK", receive());
+		}
+
+		public void send(final String line) {
+			out.println(line);
+		}
+
+		public String receive() throws IOException {
+			return in.readLine();
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+
+}
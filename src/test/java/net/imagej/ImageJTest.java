@@ -0,0 +1,180 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.imagej.display.WindowService;
+import net.imagej.ops.OpService;
+import net.imagej.updater.UploaderService;
+
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.event.EventService;
+import org.scijava.service.Service;
+
+/**
+ * Tests {@link ImageJ}.
+ */
+public class ImageJTest {
+
+	/** Tests that a lazy gateway creates services only when requested. */
+	@Test
+	public void testLazy() {
+		final ImageJ ij = ImageJ.lazy();
+		final Context context = ij.getContext();
+		try {
+			assertTrue(ij.isLazy());
+			assertNull(context.getService(OpService.class));
+
+			final OpService op = ij.op();
+			assertNotNull(op);
+			assertSame(op, context.getService(OpService.class));
+			assertSame(op, ij.op());
+
+			// NB: Unrelated services are still not created.
+			assertNull(context.getService(UploaderService.class));
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	/** Tests that a regular gateway initializes all services up front. */
+	@Test
+	public void testEager() {
+		final ImageJ ij = new ImageJ();
+		final Context context = ij.getContext();
+		try {
+			assertFalse(ij.isLazy());
+			assertNotNull(context.getService(UploaderService.class));
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	/** Tests that accessors keep returning the services of the context. */
+	@Test
+	public void testCachedAccessors() {
+		final ImageJ ij = new ImageJ();
+		final Context context = ij.getContext();
+		try {
+			final OpService op = ij.op();
+			assertSame(context.getService(OpService.class), op);
+			assertSame(op, ij.op());
+			assertSame(ij.dataset(), ij.get(DatasetService.class));
+			assertSame(ij.uploader(), ij.get(UploaderService.class));
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	/** Tests that accessors stop using cached services once disposed. */
+	@Test
+	public void testDisposedAccessors() {
+		final List<Class<?>> lookups = new ArrayList<>();
+		final Context context = //
+			new Context(DatasetService.class, EventService.class);
+		final ImageJ ij = new ImageJ(context) {
+
+			@Override
+			public <S extends Service> S get(final Class<S> serviceClass) {
+				lookups.add(serviceClass);
+				return super.get(serviceClass);
+			}
+		};
+		ij.dataset();
+		ij.dataset();
+		assertEquals(1, lookups.size());
+
+		context.dispose();
+		ij.dataset();
+		assertEquals(2, lookups.size());
+	}
+
+	/** Tests that a headless gateway has no UI-bound services. */
+	@Test
+	public void testHeadless() {
+		final ImageJ ij = ImageJ.headless();
+		final Context context = ij.getContext();
+		try {
+			assertTrue(ij.ui().isHeadless());
+			assertNotNull(ij.op());
+			assertNotNull(ij.dataset());
+			assertNull(context.getService(WindowService.class));
+			for (final Service service : context.getServiceIndex().getAll()) {
+				final String name = service.getClass().getName();
+				assertFalse(name, name.contains(".awt.") || name.contains(".swing."));
+			}
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	/** Tests that a parallel gateway has the same services as a regular one. */
+	@Test
+	public void testParallel() {
+		final Context expected = new ImageJ().getContext();
+		final Context actual = ImageJ.parallel().getContext();
+		try {
+			assertEquals(serviceClasses(expected), serviceClasses(actual));
+		}
+		finally {
+			expected.dispose();
+			actual.dispose();
+		}
+	}
+
+	// -- Helper methods --
+
+	private Set<Class<?>> serviceClasses(final Context context) {
+		final Set<Class<?>> serviceClasses = new HashSet<>();
+		for (final Service service : context.getServiceIndex().getAll()) {
+			serviceClasses.add(service.getClass());
+		}
+		return serviceClasses;
+	}
+
+}
@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.imagej.StartupProfiler.Entry;
+
+import org.junit.Test;
+import org.scijava.service.Service;
+
+/**
+ * Tests {@link StartupProfiler}.
+ */
+public class StartupProfilerTest {
+
+	/** Tests that the profiled gateway has the services of a regular one. */
+	@Test
+	public void testCreateGateway() {
+		final StartupProfiler profiler = new StartupProfiler();
+		final ImageJ ij = profiler.createGateway(Collections
+			.<Class<? extends Service>> singletonList(DatasetService.class));
+		try {
+			assertNotNull(ij.getContext().getService(DatasetService.class));
+			final List<Entry> entries = profiler.getEntries();
+			assertFalse(entries.isEmpty());
+			boolean found = false;
+			for (final Entry entry : entries) {
+				assertTrue(entry.getSelfTime() >= 0);
+				assertTrue(entry.getConstructionTime() >= 0);
+				assertTrue(entry.getInitializeTime() >= 0);
+				assertTrue(entry.getSelfTime() >= entry.getConstructionTime() + entry
+					.getInitializeTime());
+				assertTrue(entry.getTotalTime() >= entry.getSelfTime());
+				if (entry.getName().equals(ij.dataset().getClass().getName())) {
+					found = true;
+				}
+			}
+			assertTrue(found);
+		}
+		finally {
+			ij.getContext().dispose();
+		}
+	}
+
+	/** Tests the JSON and tree reports. */
+	@Test
+	public void testReports() {
+		final StartupProfiler profiler = new StartupProfiler();
+		final ImageJ ij = profiler.createGateway(Collections
+			.<Class<? extends Service>> singletonList(DatasetService.class));
+		try {
+			final String name = ij.dataset().getClass().getName();
+
+			final String json = profiler.toJSON();
+			assertTrue(json.startsWith("{"));
+			assertTrue(json.contains("\"contextMs\": "));
+			assertTrue(json.contains("\"launchMs\": null"));
+			assertTrue(json.contains("\"service\": \"" + name + "\""));
+			assertTrue(json.contains("\"constructionMs\": "));
+			assertTrue(json.contains("\"initializeMs\": "));
+
+			final String tree = profiler.toTree();
+			assertTrue(tree.startsWith("context:  "));
+			assertTrue(tree.contains("launch:   null ms"));
+			assertTrue(tree.contains(name + "  "));
+			assertTrue(tree.contains(" ms: new "));
+			assertTrue(tree.contains(" ms, init "));
+		}
+		finally {
+			ij.getContext().dispose();
+		}
+	}
+
+	/** Tests parsing of the {@code --startup-profile} option by {@link Main}. */
+	@Test
+	public void testRemoveOption() {
+		final String option = "--startup-profile";
+		List<String> args = list("--startup-profile", "foo");
+		assertEquals("tree", Main.removeOption(args, option, "tree"));
+		assertEquals(list("foo"), args);
+
+		args = list("foo", "--startup-profile=json");
+		assertEquals("json", Main.removeOption(args, option, "tree"));
+		assertEquals(list("foo"), args);
+
+		args = list("foo", "--startup-profiler");
+		assertNull(Main.removeOption(args, option, "tree"));
+		assertEquals(list("foo", "--startup-profiler"), args);
+
+		// NB: Arguments after "--" are passed through untouched.
+		args = list("--", "--startup-profile");
+		assertNull(Main.removeOption(args, option, "tree"));
+		assertEquals(list("--", "--startup-profile"), args);
+	}
+
+	// -- Helper methods --
+
+	private static List<String> list(final String... args) {
+		return new ArrayList<>(Arrays.asList(args));
+	}
+
+}
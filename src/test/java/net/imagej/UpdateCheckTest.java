@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link UpdateCheck}.
+ */
+public class UpdateCheckTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Tests that the fingerprint follows the installed files only. */
+	@Test
+	public void testFingerprint() throws IOException {
+		final File root = folder.newFolder("ImageJ");
+		final File jar = new File(new File(root, "jars"), "a.jar");
+		jar.getParentFile().mkdirs();
+		Files.write(jar.toPath(), new byte[] { 1, 2, 3 });
+		jar.setLastModified(1000000);
+		new File(root, "plugins").mkdirs();
+		final File cfg = new File(root, "ImageJ.cfg");
+
+		final String fingerprint = UpdateCheck.fingerprint(root);
+		assertEquals(fingerprint, UpdateCheck.fingerprint(root));
+
+		// NB: Files outside jars/ and plugins/ do not matter.
+		Files.write(cfg.toPath(), new byte[] { 1 });
+		assertEquals(fingerprint, UpdateCheck.fingerprint(root));
+
+		jar.setLastModified(2000000);
+		final String touched = UpdateCheck.fingerprint(root);
+		assertNotEquals(fingerprint, touched);
+
+		final File subdir = new File(root, "plugins/sub");
+		subdir.mkdirs();
+		Files.write(new File(subdir, "b.jar").toPath(), new byte[0]);
+		assertNotEquals(touched, UpdateCheck.fingerprint(root));
+	}
+
+}
@@ -72,13 +72,14 @@ public void tearDown() {
 
 	@SuppressWarnings("deprecation")
 	@Test
-	public void testServices() {
+	public void testServices() throws ClassNotFoundException {
 		final ArrayList<Class<? extends Service>> services =
 			new ArrayList<>();
 		services.add(net.imagej.DefaultDatasetService.class);
 		services.add(net.imagej.DefaultImgPlusService.class);
 		services.add(net.imagej.animation.DefaultAnimationService.class);
 		services.add(net.imagej.autoscale.DefaultAutoscaleService.class);
+		services.add(net.imagej.blocks.DefaultBlockService.class);
 		services.add(net.imagej.display.DefaultImageDisplayService.class);
 		services.add(net.imagej.display.DefaultOverlayService.class);
 		services.add(net.imagej.display.DefaultWindowService.class);
@@ -89,20 +90,31 @@ public void testServices() {
 		services.add(net.imagej.lut.DefaultLUTService.class);
 		services.add(net.imagej.measure.DefaultMeasurementService.class);
 		services.add(net.imagej.measure.DefaultStatisticsService.class);
+		services.add(net.imagej.metrics.DefaultMetricsService.class);
+		services.add(net.imagej.movie.DefaultMovieExportService.class);
+		services.add(net.imagej.opcache.DefaultOpCacheService.class);
 		services.add(net.imagej.operator.DefaultCalculatorService.class);
 		services.add(net.imagej.ops.DefaultNamespaceService.class);
 		services.add(net.imagej.ops.DefaultOpMatchingService.class);
 		services.add(net.imagej.ops.DefaultOpService.class);
+		services.add(net.imagej.pipeline.DefaultBatchPipelineService.class);
 		services.add(net.imagej.render.DummyRenderingService.class);
+		services.add(net.imagej.rendering.DefaultRenderPipelineService.class);
 		services.add(net.imagej.sampler.DefaultSamplerService.class);
+		services.add(net.imagej.sampling.DefaultLazySamplerService.class);
+		services.add(net.imagej.storage.DefaultDatasetStorageService.class);
+		services.add(net.imagej.streaming.DefaultStreamingDatasetService.class);
 		services.add(net.imagej.threshold.DefaultThresholdService.class);
 		services.add(net.imagej.types.DefaultDataTypeService.class);
 		services.add(net.imagej.ui.DefaultImageJUIService.class);
-		services.add(net.imagej.ui.awt.AWTRenderingService.class);
-		services.add(net.imagej.ui.awt.AWTScreenCaptureService.class);
-		services.add(net.imagej.ui.swing.overlay.JHotDrawService.class);
 		services.add(net.imagej.updater.DefaultUpdateService.class);
 		services.add(net.imagej.updater.DefaultUploaderService.class);
+		if (!Boolean.getBoolean("java.awt.headless")) {
+			// NB: Headless builds exclude the Swing UI; see the swing profile.
+			services.add(uiService("net.imagej.ui.awt.AWTRenderingService"));
+			services.add(uiService("net.imagej.ui.awt.AWTScreenCaptureService"));
+			services.add(uiService("net.imagej.ui.swing.overlay.JHotDrawService"));
+		}
 		for (final Class<? extends Service> c : services) {
 			final Service s = ctx.service(c);
 			assertSame(c, s.getClass());
@@ -123,4 +135,12 @@ public void testMarkerInterfaces() throws InstantiableException {
 		}
 	}
 
+	// -- Helper methods --
+
+	private Class<? extends Service> uiService(final String className)
+		throws ClassNotFoundException
+	{
+		return Class.forName(className).asSubclass(Service.class);
+	}
+
 }
@@ -69,6 +69,8 @@ public void testApp() {
 		assertEquals("imagej", app.getArtifactId());
 		final String version = app.getVersion();
 		assertTrue(version.contains("/1."));
+		// NB: The version is computed only once.
+		assertSame(version, app.getVersion());
 	}
 
 }
@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.app;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link VersionRegistry}.
+ */
+public class VersionRegistryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Tests that the registry format round-trips, and is deterministic. */
+	@Test
+	public void testReadWrite() throws IOException {
+		final Map<String, String> versions = new TreeMap<>();
+		versions.put("net.imagej:imagej", "2.0.0-SNAPSHOT");
+		versions.put("org.scijava:scijava-common", "2.77.0");
+		versions.put("odd group:odd=artifact", "1.0 beta#1");
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		VersionRegistry.write(versions, out);
+		final ByteArrayOutputStream again = new ByteArrayOutputStream();
+		VersionRegistry.write(versions, again);
+		assertEquals(out.toString("UTF-8"), again.toString("UTF-8"));
+
+		assertEquals(versions, VersionRegistry.read(new ByteArrayInputStream(out
+			.toByteArray())));
+	}
+
+	/** Tests that the build records exactly the given coordinates. */
+	@Test
+	public void testMain() throws IOException {
+		final File file = new File(folder.getRoot(), "META-INF/versions.txt");
+		VersionRegistry.main(file.getPath(), "net.imagej:imagej:2.0.0");
+
+		final Map<String, String> versions;
+		try (final InputStream in = new FileInputStream(file)) {
+			versions = VersionRegistry.read(in);
+		}
+		assertEquals(1, versions.size());
+		assertEquals("2.0.0", versions.get("net.imagej:imagej"));
+	}
+
+}
@@ -0,0 +1,186 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.blocks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imagej.ImageJ;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link DefaultBlockService}.
+ */
+public class DefaultBlockServiceTest {
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		ij.blocks().setParallelism(3);
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	/** Tests that blocks see their halo, mirrored at the image border. */
+	@Test
+	public void testProcess() {
+		final Img<FloatType> in = ramp();
+		final Img<FloatType> out = ArrayImgs.floats(50, 40);
+		ij.blocks().process(in, out, new long[] { 16, 16 }, new long[] { 1, 0 },
+			DefaultBlockServiceTest::sumX);
+
+		final Img<FloatType> expected = ArrayImgs.floats(50, 40);
+		sumX(Views.interval(Views.extendMirrorSingle(in), in), expected);
+		assertImagesEqual(expected, out, 0);
+	}
+
+	/** Tests that a blockwise Gaussian matches the whole-image Gaussian. */
+	@Test
+	public void testRun() {
+		final Img<FloatType> in = ramp();
+		final Img<FloatType> out = ij.blocks().run("filter.gauss", in,
+			new long[] { 16, 16 }, new long[] { 8, 8 }, 1.5);
+
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<FloatType> expected =
+			(RandomAccessibleInterval<FloatType>) ij.op().run("filter.gauss", in,
+				1.5);
+		assertImagesEqual(expected, out, 1e-3);
+	}
+
+	/** Tests that the result has the same bounds as a translated input. */
+	@Test
+	public void testRunKeepsMin() {
+		final RandomAccessibleInterval<FloatType> in = //
+			Views.translate(ramp(), 10, -5);
+		final Img<FloatType> out = ij.blocks().run("filter.gauss", in,
+			new long[] { 16, 16 }, new long[] { 8, 8 }, 1.5);
+		assertEquals(10, out.min(0));
+		assertEquals(-5, out.min(1));
+		assertEquals(59, out.max(0));
+		assertEquals(34, out.max(1));
+
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<FloatType> expected =
+			(RandomAccessibleInterval<FloatType>) ij.op().run("filter.gauss",
+				ramp(), 1.5);
+		assertImagesEqual(expected, out, 1e-3);
+	}
+
+	/** Tests that the remaining blocks are cancelled after a failure. */
+	@Test
+	public void testFailure() {
+		ij.blocks().setParallelism(1);
+		final Img<FloatType> in = ArrayImgs.floats(100, 10);
+		final AtomicInteger count = new AtomicInteger();
+		try {
+			ij.blocks().process(in, in, new long[] { 1, 10 }, new long[] { 0, 0 },
+				(block, out) -> {
+					count.incrementAndGet();
+					try {
+						Thread.sleep(10);
+					}
+					catch (final InterruptedException exc) {
+						Thread.currentThread().interrupt();
+					}
+					throw new IllegalStateException("Oops");
+				});
+			fail("Expected IllegalStateException");
+		}
+		catch (final IllegalStateException exc) {
+			// NB: The fork-join pool may rethrow a copy, wrapping the original.
+			assertTrue(exc.getMessage().contains("Oops"));
+		}
+		assertTrue(count.get() < 100);
+	}
+
+	// -- Helper methods --
+
+	private Img<FloatType> ramp() {
+		final Img<FloatType> img = ArrayImgs.floats(50, 40);
+		final Cursor<FloatType> c = img.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().setReal(c.getIntPosition(0) * c.getIntPosition(1) % 17);
+		}
+		return img;
+	}
+
+	/** Sets each output pixel to the sum of its input row neighborhood. */
+	private static void sumX(final RandomAccessible<FloatType> in,
+		final RandomAccessibleInterval<FloatType> out)
+	{
+		final RandomAccess<FloatType> ra = in.randomAccess();
+		final Cursor<FloatType> c = Views.iterable(out).localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			ra.setPosition(c);
+			float sum = 0;
+			for (int dx = -1; dx <= 1; dx++) {
+				ra.setPosition(c.getLongPosition(0) + dx, 0);
+				sum += ra.get().get();
+			}
+			c.get().set(sum);
+		}
+	}
+
+	private void assertImagesEqual(
+		final RandomAccessibleInterval<FloatType> expected,
+		final RandomAccessibleInterval<FloatType> actual, final double delta)
+	{
+		final Cursor<FloatType> e = Views.flatIterable(expected).cursor();
+		final Cursor<FloatType> a = Views.flatIterable(actual).cursor();
+		while (e.hasNext()) {
+			assertEquals(e.next().get(), a.next().get(), delta);
+		}
+	}
+
+}
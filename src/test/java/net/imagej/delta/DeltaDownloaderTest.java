@@ -0,0 +1,200 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.delta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link DeltaDownloader}.
+ */
+public class DeltaDownloaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Tests that patches are preferred, with full downloads as fallback. */
+	@Test
+	public void testDownload() throws IOException, InterruptedException {
+		final File site = folder.newFolder("site");
+		final File local = folder.newFolder("local");
+		final File siteJars = new File(site, "jars");
+		assertTrue(siteJars.mkdir());
+		final File localJars = new File(local, "jars");
+		assertTrue(localJars.mkdir());
+
+		// a.jar: old version present locally, patch available
+		final File aOld = jar(new File(localJars, "a.jar"), "x", "1", "y", "1");
+		final String aOldChecksum = JarDelta.contentChecksum(aOld);
+		final File aNew = jar(new File(siteJars, "a.jar"), "x", "1", "y", "2");
+		JarDelta.create(aOld, aNew, new File(site, DeltaDownloader.patchPath(
+			"jars/a.jar", aOld)));
+		final String expected = JarDelta.contentChecksum(aNew);
+
+		// b.jar: old version present locally, no patch
+		final File bOld = jar(new File(localJars, "b.jar"), "z", "1");
+		final String bOldChecksum = JarDelta.contentChecksum(bOld);
+		final File bNew = jar(new File(siteJars, "b.jar"), "z", "2");
+
+		// c.txt: not present locally
+		Files.write(new File(site, "c.txt").toPath(), "hello".getBytes(
+			StandardCharsets.UTF_8));
+
+		final DeltaDownloader downloader = new DeltaDownloader(site.toURI()
+			.toURL(), local, 2);
+		final DownloadReport report = downloader.download(Arrays.asList(
+			"jars/a.jar", "jars/b.jar", "c.txt", "missing.jar"));
+
+		assertEquals(1, report.getPatched().size());
+		assertEquals("jars/a.jar", report.getPatched().get(0));
+		assertEquals(2, report.getDownloaded().size());
+		assertEquals(1, report.getFailures().size());
+		assertTrue(report.getFailures().containsKey("missing.jar"));
+
+		// the installation itself is left alone until the next launch
+		assertEquals(aOldChecksum, JarDelta.contentChecksum(aOld));
+		assertEquals(bOldChecksum, JarDelta.contentChecksum(bOld));
+		assertEquals(2, localJars.list().length);
+		assertEquals(2, local.list().length);
+
+		final File update = new File(local, DeltaDownloader.UPDATE_DIRECTORY);
+		assertEquals(new File(update, "jars/a.jar"), downloader.staged(
+			"jars/a.jar"));
+		assertEquals(expected, JarDelta.contentChecksum(new File(update,
+			"jars/a.jar")));
+		assertEquals(JarDelta.contentChecksum(bNew), JarDelta.contentChecksum(
+			new File(update, "jars/b.jar")));
+		assertEquals("hello", new String(Files.readAllBytes(new File(update,
+			"c.txt").toPath()), StandardCharsets.UTF_8));
+		// no temporary files left over
+		assertEquals(2, update.list().length);
+		assertEquals(2, new File(update, "jars").list().length);
+	}
+
+	/** Tests that current files are skipped and new versions are verified. */
+	@Test
+	public void testChecksums() throws IOException, InterruptedException {
+		final File site = folder.newFolder("site");
+		final File local = folder.newFolder("local");
+
+		// a.jar: already current locally
+		final File aNew = jar(new File(site, "a.jar"), "x", "1");
+		jar(new File(local, "a.jar"), "x", "1");
+
+		// b.txt: outdated locally, site copy as expected
+		Files.write(new File(site, "b.txt").toPath(), "new".getBytes(
+			StandardCharsets.UTF_8));
+		Files.write(new File(local, "b.txt").toPath(), "old".getBytes(
+			StandardCharsets.UTF_8));
+
+		// d.txt: outdated locally, but new version already staged
+		Files.write(new File(local, "d.txt").toPath(), "old".getBytes(
+			StandardCharsets.UTF_8));
+		final File update = new File(local, DeltaDownloader.UPDATE_DIRECTORY);
+		assertTrue(update.mkdir());
+		Files.write(new File(update, "d.txt").toPath(), "new".getBytes(
+			StandardCharsets.UTF_8));
+
+		// c.txt: outdated locally, site copy corrupt
+		Files.write(new File(site, "c.txt").toPath(), "corrupt".getBytes(
+			StandardCharsets.UTF_8));
+		Files.write(new File(local, "c.txt").toPath(), "old".getBytes(
+			StandardCharsets.UTF_8));
+
+		final Map<String, String> checksums = new LinkedHashMap<>();
+		checksums.put("a.jar", DeltaDownloader.checksum("a.jar", aNew));
+		checksums.put("b.txt", JarDelta.sha1("new".getBytes(
+			StandardCharsets.UTF_8)));
+		checksums.put("c.txt", JarDelta.sha1("expected".getBytes(
+			StandardCharsets.UTF_8)));
+		checksums.put("d.txt", JarDelta.sha1("new".getBytes(
+			StandardCharsets.UTF_8)));
+
+		final DeltaDownloader downloader = new DeltaDownloader(site.toURI()
+			.toURL(), local, 2);
+		final DownloadReport report = downloader.download(checksums.keySet(),
+			checksums);
+
+		assertEquals(2, report.getCurrent().size());
+		assertTrue(report.getCurrent().containsAll(Arrays.asList("a.jar",
+			"d.txt")));
+		assertEquals(0, report.getPatched().size());
+		assertEquals(1, report.getDownloaded().size());
+		assertEquals("b.txt", report.getDownloaded().get(0));
+		assertEquals(1, report.getFailures().size());
+		assertTrue(report.getFailures().containsKey("c.txt"));
+		assertEquals("new".length() + "corrupt".length(), report
+			.getBytesTransferred());
+
+		assertEquals("new", new String(Files.readAllBytes(new File(update,
+			"b.txt").toPath()), StandardCharsets.UTF_8));
+		assertEquals("old", new String(Files.readAllBytes(new File(local,
+			"b.txt").toPath()), StandardCharsets.UTF_8));
+		assertEquals("old", new String(Files.readAllBytes(new File(local,
+			"c.txt").toPath()), StandardCharsets.UTF_8));
+		assertEquals(5, local.list().length);
+		assertEquals(2, update.list().length); // no temporary files left over
+	}
+
+	// -- Helper methods --
+
+	private File jar(final File file, final String... entries)
+		throws IOException
+	{
+		try (final ZipOutputStream out = new ZipOutputStream(
+			new FileOutputStream(file)))
+		{
+			for (int i = 0; i < entries.length; i += 2) {
+				out.putNextEntry(new ZipEntry(entries[i]));
+				out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+				out.closeEntry();
+			}
+		}
+		return file;
+	}
+
+}
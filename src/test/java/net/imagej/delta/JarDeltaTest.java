@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.delta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link JarDelta}.
+ */
+public class JarDeltaTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Tests that a patch reproduces the new JAR's contents. */
+	@Test
+	public void testRoundTrip() throws IOException {
+		final File oldJar = jar("old.jar", "a.class", "A1", "b.class", "B1",
+			"c.class", "C1");
+		final File newJar = jar("new.jar", "a.class", "A1", "b.class", "B2",
+			"d.class", "D2");
+		final File patch = folder.newFile("patch.delta");
+		assertEquals(2, JarDelta.create(oldJar, newJar, patch));
+
+		final File result = new File(folder.getRoot(), "result.jar");
+		JarDelta.apply(oldJar, patch, result);
+		assertEquals(JarDelta.contentChecksum(newJar), JarDelta.contentChecksum(
+			result));
+		assertNotEquals(JarDelta.contentChecksum(oldJar), JarDelta
+			.contentChecksum(result));
+	}
+
+	/** Tests that a patch is refused for the wrong base JAR. */
+	@Test
+	public void testWrongBase() throws IOException {
+		final File oldJar = jar("old.jar", "a.class", "A1");
+		final File newJar = jar("new.jar", "a.class", "A2");
+		final File other = jar("other.jar", "a.class", "A3");
+		final File patch = folder.newFile("patch.delta");
+		JarDelta.create(oldJar, newJar, patch);
+
+		final File result = new File(folder.getRoot(), "result.jar");
+		try {
+			JarDelta.apply(other, patch, result);
+			fail("Patch applied to the wrong JAR");
+		}
+		catch (final IOException exc) {
+			// expected
+		}
+		assertFalse(result.exists());
+	}
+
+	// -- Helper methods --
+
+	private File jar(final String name, final String... entries)
+		throws IOException
+	{
+		final File file = new File(folder.getRoot(), name);
+		try (final ZipOutputStream out = new ZipOutputStream(
+			new FileOutputStream(file)))
+		{
+			for (int i = 0; i < entries.length; i += 2) {
+				out.putNextEntry(new ZipEntry(entries[i]));
+				out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+				out.closeEntry();
+			}
+		}
+		return file;
+	}
+
+}
@@ -0,0 +1,203 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import net.imagej.ImageJ;
+import net.imagej.ops.DefaultOpService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.command.Command;
+import org.scijava.command.CommandInfo;
+
+/**
+ * Tests {@link DefaultMetricsService}.
+ */
+public class DefaultMetricsServiceTest {
+
+	private ImageJ ij;
+	private MetricsService metrics;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		metrics = ij.metrics();
+		metrics.setEnabled(true);
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	/** Tests that executed modules are timed. */
+	@Test
+	public void testModuleDuration() throws Exception {
+		ij.module().run(new CommandInfo(NoOpCommand.class), true).get();
+		final String name = MetricsService.name(
+			"imagej_module_duration_seconds_count", "module", "command:" +
+				NoOpCommand.class.getName());
+		assertEquals(1, metrics.snapshot().get(name), 0);
+	}
+
+	/** Tests that op invocations are timed, but only via the metrics. */
+	@Test
+	public void testOpDuration() {
+		assertEquals(7.0, metrics.op().run("math.add", 3.0, 4.0));
+		final String name = MetricsService.name(
+			"imagej_op_duration_seconds_count", "op", "math.add");
+		assertEquals(1, metrics.snapshot().get(name), 0);
+
+		assertEquals(7.0, ij.op().run("math.add", 3.0, 4.0));
+		assertEquals(1, metrics.snapshot().get(name), 0);
+	}
+
+	/** Tests that the gateway keeps its regular op service. */
+	@Test
+	public void testOpService() {
+		assertSame(DefaultOpService.class, ij.op().getClass());
+		assertNotSame(ij.op(), metrics.op());
+	}
+
+	/** Tests that nothing is recorded or published unless enabled. */
+	@Test
+	public void testDisabled() throws Exception {
+		metrics.setEnabled(false);
+		assertTrue(mbeans().isEmpty());
+		ij.module().run(new CommandInfo(NoOpCommand.class), true).get();
+		metrics.op().run("math.add", 3.0, 4.0);
+		for (final String name : metrics.snapshot().keySet()) {
+			assertFalse(name, name.startsWith("imagej_module_"));
+			assertFalse(name, name.startsWith("imagej_op_"));
+		}
+
+		metrics.setEnabled(true);
+		assertEquals(1, mbeans().size());
+	}
+
+	@Test
+	public void testPrometheus() {
+		metrics.increment(MetricsService.name("test_total", "kind", "a"), 2);
+		metrics.time("test_seconds", () -> null);
+		final String text = metrics.toPrometheus();
+		assertTrue(text.contains("# TYPE test_total counter\n"));
+		assertTrue(text.contains("test_total{kind=\"a\"} 2\n"));
+		assertTrue(text.contains("# TYPE test_seconds histogram\n"));
+		assertTrue(text.contains("test_seconds_bucket{le=\"+Inf\"} 1\n"));
+		assertTrue(text.contains("test_seconds_count 1\n"));
+		assertTrue(text.contains("# TYPE imagej_datasets gauge\n"));
+		assertTrue(text.contains("jvm_memory_heap_used_bytes "));
+		assertTrue(text.contains("# TYPE jvm_gc_collections_total counter\n"));
+		assertFalse(text.contains("# TYPE jvm_gc_collections_total gauge\n"));
+	}
+
+	@Test
+	public void testEndpoint() throws IOException {
+		metrics.increment("test_total", 1);
+		final int port = metrics.startEndpoint(0);
+		try {
+			final URL url = new URL("http://127.0.0.1:" + port + "/metrics");
+			try (final BufferedReader in = new BufferedReader(new InputStreamReader(
+				url.openStream(), StandardCharsets.UTF_8)))
+			{
+				final String text = in.lines().collect(Collectors.joining("\n"));
+				assertTrue(text.contains("test_total 1"));
+			}
+		}
+		finally {
+			metrics.stopEndpoint();
+		}
+	}
+
+	@Test
+	public void testMBean() throws JMException {
+		metrics.increment("test_total", 3);
+		boolean found = false;
+		for (final ObjectName name : ManagementFactory.getPlatformMBeanServer()
+			.queryNames(new ObjectName("net.imagej:type=Metrics,*"), null))
+		{
+			try {
+				final Object value = ManagementFactory.getPlatformMBeanServer()
+					.getAttribute(name, "test_total");
+				if (Double.valueOf(3).equals(value)) found = true;
+			}
+			catch (final AttributeNotFoundException exc) {
+				// NB: Metrics of another context.
+			}
+		}
+		assertTrue(found);
+
+		final Map<String, Double> snapshot = metrics.snapshot();
+		assertFalse(snapshot.isEmpty());
+	}
+
+	// -- Helper methods --
+
+	/** Gets the names of the metrics MBeans of this test's context. */
+	private Set<ObjectName> mbeans() throws JMException {
+		return ManagementFactory.getPlatformMBeanServer().queryNames(
+			new ObjectName("net.imagej:type=Metrics,context=" + Integer.toHexString(
+				System.identityHashCode(ij.getContext()))), null);
+	}
+
+	// -- Helper classes --
+
+	public static class NoOpCommand implements Command {
+
+		@Override
+		public void run() {
+			// NB: Nothing to do.
+		}
+	}
+
+}
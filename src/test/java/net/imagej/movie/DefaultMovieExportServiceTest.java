@@ -0,0 +1,237 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.movie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.rendering.ArgbTile;
+import net.imagej.rendering.RenderView;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link DefaultMovieExportService}.
+ */
+public class DefaultMovieExportServiceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		ij.movieExport().setParallelism(3);
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	/**
+	 * Tests that frames rendered out of order are written in order, with a
+	 * bounded number of frames in flight.
+	 */
+	@Test
+	public void testExport() throws IOException {
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		final List<Long> written = new ArrayList<>();
+
+		final long count = ij.movieExport().export(40, t -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				// NB: Later frames of each group finish first.
+				Thread.sleep(10 - t % 10);
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+			return frame(t);
+		}, new FrameWriter() {
+
+			@Override
+			public void write(final long index, final ArgbTile frame) {
+				inFlight.decrementAndGet();
+				assertEquals(index, frame.get(0, 0) & 0xff);
+				written.add(index);
+			}
+
+			@Override
+			public void close() {}
+		});
+
+		assertEquals(40, count);
+		assertEquals(40, written.size());
+		for (int i = 0; i < written.size(); i++) {
+			assertEquals(i, written.get(i).longValue());
+		}
+		assertTrue(maxInFlight.get() <= 6);
+	}
+
+	/** Tests that rendering errors stop the export. */
+	@Test
+	public void testFailure() {
+		final List<Long> written = new ArrayList<>();
+		try {
+			ij.movieExport().export(20, t -> {
+				if (t == 5) throw new IllegalStateException("Bad frame");
+				return frame(t);
+			}, new FrameWriter() {
+
+				@Override
+				public void write(final long index, final ArgbTile frame) {
+					written.add(index);
+				}
+
+				@Override
+				public void close() {}
+			});
+			fail("Expected IOException");
+		}
+		catch (final IOException exc) {
+			assertTrue(exc.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(5, written.size());
+	}
+
+	/** Tests that changing the parallelism does not disturb running exports. */
+	@Test
+	public void testSetParallelism() throws IOException {
+		final List<Long> written = new ArrayList<>();
+		final long count = ij.movieExport().export(20, t -> {
+			if (t == 0) ij.movieExport().setParallelism(2);
+			return frame(t);
+		}, new FrameWriter() {
+
+			@Override
+			public void write(final long index, final ArgbTile frame) {
+				written.add(index);
+			}
+
+			@Override
+			public void close() {}
+		});
+		assertEquals(20, count);
+		assertEquals(20, written.size());
+		assertEquals(20, ij.movieExport().export(20,
+			DefaultMovieExportServiceTest::frame, new FrameWriter() {
+
+				@Override
+				public void write(final long index, final ArgbTile frame) {}
+
+				@Override
+				public void close() {}
+			}));
+	}
+
+	/** Tests that exported movies can be read back via SCIFIO. */
+	@Test
+	public void testRoundTrip() throws IOException {
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(6, 4, 3);
+		final Cursor<UnsignedByteType> c = img.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().set(c.getIntPosition(0) + 10 * c.getIntPosition(1) + 50 * c
+				.getIntPosition(2));
+		}
+		final RenderView view = ij.renderPipeline().createView(img, -1);
+		view.setDisplayRange(0, 0, 255);
+		final File file = new File(folder.getRoot(), "movie.tif");
+		assertEquals(3, ij.movieExport().export(view, 0, new long[] { 0 }, 0,
+			file.getPath()));
+
+		final Dataset dataset = ij.scifio().datasetIO().open(file.getPath());
+		assertEquals(6, dataset.dimension(0));
+		assertEquals(4, dataset.dimension(1));
+		final int channelAxis = dataset.dimensionIndex(Axes.CHANNEL);
+		assertTrue(channelAxis >= 0);
+		assertEquals(3, dataset.dimension(channelAxis));
+		int timeAxis = -1;
+		for (int d = 2; d < dataset.numDimensions(); d++) {
+			if (d != channelAxis && dataset.dimension(d) > 1) timeAxis = d;
+		}
+		assertTrue(timeAxis >= 0);
+		assertEquals(3, dataset.dimension(timeAxis));
+
+		final RandomAccess<? extends RealType<?>> access = dataset.getImgPlus()
+			.randomAccess();
+		for (int t = 0; t < 3; t++) {
+			access.setPosition(t, timeAxis);
+			for (int ch = 0; ch < 3; ch++) {
+				access.setPosition(ch, channelAxis);
+				for (int y = 0; y < 4; y++) {
+					access.setPosition(y, 1);
+					for (int x = 0; x < 6; x++) {
+						access.setPosition(x, 0);
+						assertEquals(x + 10 * y + 50 * t, (int) access.get()
+							.getRealDouble());
+					}
+				}
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	private static ArgbTile frame(final long t) {
+		final int[] pixels = new int[4 * 3];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0xff000000 | (int) t;
+		}
+		return new ArgbTile(4, 3, pixels);
+	}
+
+}
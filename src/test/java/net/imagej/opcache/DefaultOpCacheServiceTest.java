@@ -0,0 +1,212 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.opcache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.imagej.ImageJ;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.outofbounds.OutOfBoundsFactory;
+import net.imglib2.outofbounds.OutOfBoundsMirrorFactory;
+import net.imglib2.outofbounds.OutOfBoundsMirrorFactory.Boundary;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link DefaultOpCacheService}.
+ */
+public class DefaultOpCacheServiceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageJ ij;
+	private OpCacheService cache;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		cache = ij.opCache();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	/** Tests that images with equal pixels share a cached result. */
+	@Test
+	public void testHit() {
+		final Object first = cache.run("filter.gauss", image(1), 2.0);
+		assertSame(first, cache.run("filter.gauss", image(1), 2.0));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		assertNotSame(first, cache.run("filter.gauss", image(2), 2.0));
+		assertNotSame(first, cache.run("filter.gauss", image(1), 3.0));
+		assertEquals(3, cache.getMissCount());
+		assertEquals(3, cache.getSize());
+	}
+
+	/** Tests that images with the same pixels in another order do not hit. */
+	@Test
+	public void testPermutedPixels() {
+		final Img<FloatType> image = image(1);
+		final Img<FloatType> swapped = image(1);
+		final RandomAccess<FloatType> ra = swapped.randomAccess();
+		ra.setPosition(new long[] { 1, 0 });
+		final float a = ra.get().get();
+		ra.setPosition(new long[] { 2, 0 });
+		final float b = ra.get().get();
+		ra.get().set(a);
+		ra.setPosition(new long[] { 1, 0 });
+		ra.get().set(b);
+
+		final Object first = cache.run("filter.gauss", image, 2.0);
+		assertNotSame(first, cache.run("filter.gauss", swapped, 2.0));
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	/** Tests that the least recently used result is evicted first. */
+	@Test
+	public void testEviction() {
+		// NB: Each result is 64 x 64 floats, i.e. 16 KiB.
+		cache.setMaxWeight(2 * 64 * 64 * 4);
+		final Object a = cache.run("filter.gauss", image(1), 2.0);
+		cache.run("filter.gauss", image(2), 2.0);
+		assertSame(a, cache.run("filter.gauss", image(1), 2.0));
+		cache.run("filter.gauss", image(3), 2.0);
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(2, cache.getSize());
+		assertSame(a, cache.run("filter.gauss", image(1), 2.0));
+		assertEquals(2 * 64 * 64 * 4, cache.getWeight());
+	}
+
+	/** Tests that serializable results are read back after eviction. */
+	@Test
+	public void testSpill() {
+		cache.setSpillDirectory(folder.getRoot());
+		final Object sum = cache.run("math.add", 3.0, 4.0);
+		cache.setMaxWeight(0);
+		assertEquals(1, cache.getSpillCount());
+		assertEquals(0, cache.getSize());
+		cache.setMaxWeight(OpCacheService.DEFAULT_MAX_WEIGHT);
+		assertEquals(sum, cache.run("math.add", 3.0, 4.0));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	/** Tests that evicted images are spilled and read back pixel for pixel. */
+	@Test
+	public void testSpillImage() {
+		cache.setSpillDirectory(folder.getRoot());
+		@SuppressWarnings("unchecked")
+		final Img<FloatType> blurred = //
+			(Img<FloatType>) cache.run("filter.gauss", image(1), 2.0);
+		cache.setMaxWeight(0);
+		assertEquals(1, cache.getSpillCount());
+		cache.setMaxWeight(OpCacheService.DEFAULT_MAX_WEIGHT);
+
+		@SuppressWarnings("unchecked")
+		final Img<FloatType> restored = //
+			(Img<FloatType>) cache.run("filter.gauss", image(1), 2.0);
+		assertNotSame(blurred, restored);
+		assertEquals(1, cache.getHitCount());
+		assertArrayEquals(Intervals.dimensionsAsLongArray(blurred), Intervals
+			.dimensionsAsLongArray(restored));
+		final Cursor<FloatType> expected = blurred.cursor();
+		final Cursor<FloatType> actual = restored.cursor();
+		while (expected.hasNext()) {
+			assertEquals(expected.next().get(), actual.next().get(), 0);
+		}
+		assertEquals(0, cache.getSpillSize());
+	}
+
+	/** Tests that the earliest spilled results are deleted first. */
+	@Test
+	public void testSpillBudget() {
+		cache.setSpillDirectory(folder.getRoot());
+		// NB: Each result is 64 x 64 floats, i.e. 16 KiB on disk.
+		cache.setMaxSpillSize(24 * 1024);
+		cache.run("filter.gauss", image(1), 2.0);
+		cache.run("filter.gauss", image(2), 2.0);
+		cache.setMaxWeight(0);
+		assertEquals(2, cache.getSpillCount());
+		assertTrue(cache.getSpillSize() <= 24 * 1024);
+		assertEquals(1, folder.getRoot().list().length);
+
+		// NB: The first result was deleted, the second one is read back.
+		cache.setMaxWeight(OpCacheService.DEFAULT_MAX_WEIGHT);
+		cache.run("filter.gauss", image(2), 2.0);
+		cache.run("filter.gauss", image(1), 2.0);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+	}
+
+	/** Tests that arguments which are not values bypass the cache. */
+	@Test
+	public void testUncomparableArgument() {
+		final OutOfBoundsFactory<FloatType, RandomAccessibleInterval<FloatType>> oob =
+			new OutOfBoundsMirrorFactory<>(Boundary.SINGLE);
+		final Object first = cache.run("filter.gauss", image(1), 2.0, oob);
+		assertNotSame(first, cache.run("filter.gauss", image(1), 2.0, oob));
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getSize());
+	}
+
+	// -- Helper methods --
+
+	private Img<FloatType> image(final int seed) {
+		final Img<FloatType> img = ArrayImgs.floats(64, 64);
+		int i = 0;
+		for (final FloatType t : img) {
+			t.setReal((i++ * seed) % 97);
+		}
+		return img;
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.command.Command;
+import org.scijava.command.CommandInfo;
+import org.scijava.plugin.Parameter;
+
+/**
+ * Tests {@link DefaultBatchPipelineService}.
+ */
+public class DefaultBatchPipelineServiceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		CountingCommand.count.set(0);
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	/** Tests that glob patterns select files from their parent directory. */
+	@Test
+	public void testFindInputs() throws IOException {
+		final File a = folder.newFile("a.tif");
+		final File b = folder.newFile("b.tif");
+		folder.newFile("notes.txt");
+		final BatchPipelineService batch = ij.batch();
+		assertEquals(Arrays.asList(a, b), batch.findInputs(new File(folder
+			.getRoot(), "*.tif").getPath()));
+		assertEquals(3, batch.findInputs(folder.getRoot().getPath()).size());
+	}
+
+	/** Tests that all readable files are processed and failures reported. */
+	@Test
+	public void testProcess() throws IOException, InterruptedException {
+		for (int i = 0; i < 5; i++) {
+			final Dataset dataset = ij.dataset().create(new long[] { 16, 16 },
+				"image" + i, new AxisType[] { Axes.X, Axes.Y }, 8, false, false);
+			final File file = new File(folder.getRoot(), "image" + i + ".tif");
+			ij.scifio().datasetIO().save(dataset, file.getPath());
+		}
+		final File broken = folder.newFile("broken.tif");
+		Files.write(broken.toPath(), new byte[] { 1, 2, 3 });
+
+		final List<File> files = ij.batch().findInputs(new File(folder.getRoot(),
+			"*.tif").getPath());
+		final BatchReport report = ij.batch().process(files, new CommandInfo(
+			CountingCommand.class), null, null, 2);
+
+		assertEquals(6, report.getCount());
+		assertEquals(5, report.getSucceededCount());
+		assertEquals(5, CountingCommand.count.get());
+		assertEquals(1, report.getFailures().size());
+		assertTrue(report.getFailures().containsKey(broken));
+		assertEquals(6, report.getLatencies().size());
+		assertTrue(report.getThroughput() > 0);
+	}
+
+	// -- Helper classes --
+
+	public static class CountingCommand implements Command {
+
+		private static final AtomicInteger count = new AtomicInteger();
+
+		@Parameter
+		private Dataset image;
+
+		@Override
+		public void run() {
+			if (image.getWidth() == 16) count.incrementAndGet();
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.plugin.PluginInfo;
+
+/**
+ * Tests {@link PluginIndexCache}.
+ */
+public class PluginIndexCacheTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	/** Tests that the cache reproduces the regular plugin index. */
+	@Test
+	public void testRoundTrip() throws IOException {
+		final ClassLoader classLoader = getClass().getClassLoader();
+		final PluginIndex cached = loadCache(writeCache(classLoader), classLoader);
+		assertNotNull(cached);
+		cached.discover();
+
+		final PluginIndex expected = new PluginIndex();
+		expected.discover();
+
+		final Map<String, PluginInfo<?>> cachedInfos = byClassName(cached.getAll());
+		final List<PluginInfo<?>> expectedInfos = expected.getAll();
+		assertEquals(expectedInfos.size(), cachedInfos.size());
+		for (final PluginInfo<?> info : expectedInfos) {
+			final PluginInfo<?> actual = cachedInfos.get(info.getClassName());
+			assertNotNull(info.getClassName(), actual);
+			assertEquals(info.getPluginType(), actual.getPluginType());
+			assertEquals(info.getName(), actual.getName());
+			assertEquals(info.getPriority(), actual.getPriority(), 0);
+			assertEquals(info.isEnabled(), actual.isEnabled());
+			assertEquals(String.valueOf(info.getMenuPath()), //
+				String.valueOf(actual.getMenuPath()));
+			assertEquals(info.getAnnotation().headless(), //
+				actual.getAnnotation().headless());
+			assertEquals(info.getAnnotation(), actual.getAnnotation());
+			assertEquals(actual.getAnnotation(), info.getAnnotation());
+			assertEquals(info.getAnnotation().hashCode(), actual.getAnnotation()
+				.hashCode());
+		}
+	}
+
+	/** Tests that a cache for a different class path is ignored. */
+	@Test
+	public void testStale() throws IOException {
+		final ClassLoader classLoader = getClass().getClassLoader();
+		final byte[] cache = writeCache(classLoader);
+		final ClassLoader emptyLoader = new URLClassLoader(new URL[0], null);
+		assertNull(loadCache(cache, emptyLoader));
+	}
+
+	/**
+	 * Tests that the fingerprint follows the contents of the annotation indexes,
+	 * rather than their size or location.
+	 */
+	@Test
+	public void testFingerprint() throws IOException {
+		final File a = index(folder.newFolder("a"), "{\"class\":\"foo.A\"}");
+		final File b = index(folder.newFolder("b"), "{\"class\":\"foo.A\"}");
+		final File c = index(folder.newFolder("c"), "{\"class\":\"foo.B\"}");
+		final String fingerprint = fingerprint(a);
+		assertEquals(fingerprint, fingerprint(b));
+		assertNotEquals(fingerprint, fingerprint(c));
+		assertNotEquals(fingerprint, fingerprint(a, c));
+	}
+
+	// -- Helper methods --
+
+	private File index(final File root, final String json) throws IOException {
+		final Path index = root.toPath().resolve("META-INF/json/" + //
+			Plugin.class.getName());
+		Files.createDirectories(index.getParent());
+		Files.write(index, json.getBytes(StandardCharsets.UTF_8));
+		return root;
+	}
+
+	private String fingerprint(final File... roots) throws IOException {
+		final URL[] urls = new URL[roots.length];
+		for (int i = 0; i < roots.length; i++) {
+			urls[i] = roots[i].toURI().toURL();
+		}
+		try (final URLClassLoader loader = new URLClassLoader(urls, null)) {
+			return PluginIndexCache.fingerprint(loader);
+		}
+	}
+
+	private byte[] writeCache(final ClassLoader classLoader) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PluginIndexCache.write(out, classLoader);
+		return out.toByteArray();
+	}
+
+	private PluginIndex loadCache(final byte[] cache,
+		final ClassLoader classLoader) throws IOException
+	{
+		return PluginIndexCache.load(new ByteArrayInputStream(cache), classLoader);
+	}
+
+	private Map<String, PluginInfo<?>> byClassName(
+		final List<PluginInfo<?>> infos)
+	{
+		final Map<String, PluginInfo<?>> map = new HashMap<>();
+		for (final PluginInfo<?> info : infos) {
+			map.put(info.getClassName(), info);
+		}
+		return map;
+	}
+
+}
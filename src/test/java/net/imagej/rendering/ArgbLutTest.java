@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.rendering;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imagej.display.ColorTables;
+import net.imglib2.display.ColorTable;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ArgbLut}.
+ */
+public class ArgbLutTest {
+
+	/** Tests that precomputed tables match {@link ColorTable#lookupARGB}. */
+	@Test
+	public void testApply() {
+		final ArgbLut lut = new ArgbLut(ColorTables.FIRE, 100, 3000, 65536);
+		final short[] values = random(10000, 65536);
+		final int[] out = new int[values.length];
+		lut.apply(values, out);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(0xff000000 | ColorTables.FIRE.lookupARGB(100, 3000,
+				values[i] & 0xffff), out[i]);
+		}
+	}
+
+	/**
+	 * Tests that compositing many channels saturates each component exactly as
+	 * adding up the colors of each channel would.
+	 */
+	@Test
+	public void testComposite() {
+		final ColorTable[] tables = { ColorTables.RED, ColorTables.GREEN,
+			ColorTables.BLUE, ColorTables.CYAN, ColorTables.MAGENTA,
+			ColorTables.YELLOW, ColorTables.GRAYS, ColorTables.RED };
+		final ArgbLut[] luts = new ArgbLut[tables.length];
+		final short[][] channels = new short[tables.length][];
+		for (int c = 0; c < tables.length; c++) {
+			luts[c] = new ArgbLut(tables[c], 0, 4095, 4096);
+			channels[c] = random(5000, 1200);
+		}
+		final int[] out = new int[5000];
+		ArgbLut.composite(luts, channels, out);
+
+		for (int i = 0; i < out.length; i++) {
+			int r = 0, g = 0, b = 0;
+			for (int c = 0; c < tables.length; c++) {
+				final int color = tables[c].lookupARGB(0, 4095, channels[c][i]);
+				r += (color >> 16) & 0xff;
+				g += (color >> 8) & 0xff;
+				b += color & 0xff;
+			}
+			final int expected = 0xff000000 | Math.min(r, 255) << 16 | //
+				Math.min(g, 255) << 8 | Math.min(b, 255);
+			assertEquals(expected, out[i]);
+		}
+	}
+
+	/** Tests that values beyond the table are clamped. */
+	@Test
+	public void testClamp() {
+		final ArgbLut lut = new ArgbLut(ColorTables.GRAYS, 0, 255, 256);
+		assertEquals(0xff000000, lut.lookup(-5));
+		assertEquals(0xffffffff, lut.lookup(1000));
+	}
+
+	// -- Helper methods --
+
+	private static short[] random(final int length, final int bound) {
+		final Random random = new Random(length);
+		final short[] values = new short[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = (short) random.nextInt(bound);
+		}
+		return values;
+	}
+
+}
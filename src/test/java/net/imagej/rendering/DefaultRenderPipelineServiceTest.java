@@ -0,0 +1,259 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.rendering;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.imagej.ImageJ;
+import net.imagej.display.ColorTables;
+import net.imglib2.Cursor;
+import net.imglib2.display.ColorTable8;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link DefaultRenderPipelineService}.
+ */
+public class DefaultRenderPipelineServiceTest {
+
+	private ImageJ ij;
+	private RenderPipelineService renderer;
+
+	/** XYCZ image whose pixel values encode their position. */
+	private Img<UnsignedByteType> img;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		renderer = ij.renderPipeline();
+		renderer.setTileSize(16);
+		renderer.setParallelism(2);
+
+		img = ArrayImgs.unsignedBytes(40, 30, 2, 5);
+		final Cursor<UnsignedByteType> c = img.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().set(c.getIntPosition(2) == 0 ? c.getIntPosition(0) : 10 * c
+				.getIntPosition(3));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	/** Tests that channels are LUT-mapped and composited, and cached. */
+	@Test
+	public void testRender() throws Exception {
+		final RenderView view = renderer.createView(img, 2);
+		assertEquals(2, view.getChannelCount());
+		assertEquals(1, view.getPlaneDimensions());
+
+		final ArgbTile tile = get(view.getTile(new long[] { 3 }, 0, 1, 0));
+		assertEquals(16, tile.getWidth());
+		assertEquals(16, tile.getHeight());
+		// red channel holds X (16 + x), green channel holds 10 * Z
+		assertEquals(0xff000000 | (16 + 5) << 16 | 30 << 8, tile.get(5, 7));
+
+		// partial tile at the image border
+		final ArgbTile edge = get(view.getTile(new long[] { 3 }, 0, 2, 1));
+		assertEquals(8, edge.getWidth());
+		assertEquals(14, edge.getHeight());
+
+		final long hits = renderer.getHitCount();
+		assertSame(tile, get(view.getTile(new long[] { 3 }, 0, 1, 0)));
+		assertEquals(hits + 1, renderer.getHitCount());
+	}
+
+	/** Tests that zoomed-out tiles show every other pixel. */
+	@Test
+	public void testZoom() throws Exception {
+		final RenderView view = renderer.createView(img, 2);
+		view.setColorTable(1, ColorTables.BLUE);
+		final ArgbTile tile = get(view.getTile(new long[] { 0 }, 1, 0, 0));
+		assertEquals(16, tile.getWidth());
+		assertEquals(15, tile.getHeight());
+		assertEquals(0xff000000 | 2 * 7 << 16, tile.get(7, 3));
+	}
+
+	/** Tests that the neighboring planes are prefetched. */
+	@Test
+	public void testPrefetch() throws Exception {
+		final RenderView view = renderer.createView(img, 2);
+		get(view.getTile(new long[] { 2 }, 0, 0, 0));
+		awaitRenders(3);
+
+		final long hits = renderer.getHitCount();
+		get(view.getTile(new long[] { 1 }, 0, 0, 0));
+		get(view.getTile(new long[] { 3 }, 0, 0, 0));
+		assertEquals(hits + 2, renderer.getHitCount());
+	}
+
+	/** Tests that requests for planes scrolled past are cancelled. */
+	@Test
+	public void testCancel() throws Exception {
+		renderer.setParallelism(1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final RenderView view = renderer.createView(img, -1);
+		view.setColorTable(0, new ColorTable8() {
+
+			@Override
+			public int lookupARGB(final double min, final double max,
+				final double value)
+			{
+				try {
+					latch.await();
+				}
+				catch (final InterruptedException exc) {
+					Thread.currentThread().interrupt();
+				}
+				return super.lookupARGB(min, max, value);
+			}
+		});
+		assertEquals(2, view.getPlaneDimensions());
+
+		final Future<ArgbTile> stale = view.getTile(new long[] { 0, 0 }, 0, 0, 0);
+		final Future<ArgbTile> current = view.getTile(new long[] { 1, 4 }, 0, 0,
+			0);
+		assertTrue(stale.isCancelled());
+		assertTrue(renderer.getCancelCount() >= 1);
+
+		latch.countDown();
+		assertEquals(16, get(current).getWidth());
+	}
+
+	/**
+	 * Tests that tiles read from the storage arrays of 16-bit planar images
+	 * match tiles read pixel by pixel.
+	 */
+	@Test
+	public void testStorage() throws Exception {
+		final Img<UnsignedShortType> planar = PlanarImgs.unsignedShorts(40, 30,
+			2, 5);
+		final Cursor<UnsignedShortType> c = planar.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().set(1000 * c.getIntPosition(2) + 100 * c.getIntPosition(3) + c
+				.getIntPosition(0) + c.getIntPosition(1));
+		}
+		final RenderView fast = renderer.createView(planar, 2);
+		final RenderView slow = renderer.createView(Views.interval(planar,
+			planar), 2);
+		for (final RenderView view : new RenderView[] { fast, slow }) {
+			for (int ch = 0; ch < 2; ch++) {
+				view.setDisplayRange(ch, 0, 2000);
+			}
+		}
+		for (int zoom = 0; zoom <= 1; zoom++) {
+			final ArgbTile expected = slow.renderPlane(new long[] { 3 }, zoom);
+			final ArgbTile actual = fast.renderPlane(new long[] { 3 }, zoom);
+			assertArrayEquals(expected.getPixels(), actual.getPixels());
+		}
+		final ArgbTile expected = get(slow.getTile(new long[] { 4 }, 0, 1, 1));
+		final ArgbTile actual = get(fast.getTile(new long[] { 4 }, 0, 1, 1));
+		assertArrayEquals(expected.getPixels(), actual.getPixels());
+	}
+
+	/** Tests that settings can change while their tables are being built. */
+	@Test
+	public void testSettingsDuringRender() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final RenderView view = renderer.createView(img, -1);
+		view.setColorTable(0, new ColorTable8() {
+
+			@Override
+			public int lookupARGB(final double min, final double max,
+				final double value)
+			{
+				started.countDown();
+				try {
+					latch.await();
+				}
+				catch (final InterruptedException exc) {
+					Thread.currentThread().interrupt();
+				}
+				return super.lookupARGB(min, max, value);
+			}
+		});
+		final Future<ArgbTile> tile = view.getTile(new long[] { 0, 0 }, 0, 0, 0);
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		// NB: Would block until the tables are built, if built under the lock.
+		final Thread thread = new Thread(() -> view.setDisplayRange(0, 0, 100));
+		thread.start();
+		thread.join(10000);
+		assertFalse(thread.isAlive());
+
+		latch.countDown();
+		assertEquals(16, get(tile).getWidth());
+		final long hits = renderer.getHitCount();
+		get(view.getTile(new long[] { 0, 0 }, 0, 0, 0));
+		assertEquals(hits, renderer.getHitCount());
+	}
+
+	// -- Helper methods --
+
+	private static ArgbTile get(final Future<ArgbTile> future)
+		throws InterruptedException, ExecutionException, TimeoutException
+	{
+		return future.get(10, TimeUnit.SECONDS);
+	}
+
+	private void awaitRenders(final long count) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (renderer.getRenderCount() < count) {
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+}
@@ -0,0 +1,231 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.sampling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.ExponentialAxis;
+import net.imagej.axis.LinearAxis;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link DefaultLazySamplerService}.
+ */
+public class DefaultLazySamplerServiceTest {
+
+	private ImageJ ij;
+
+	/** XYC image whose pixel values encode their position. */
+	private Img<UnsignedShortType> img;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+		img = ArrayImgs.unsignedShorts(20, 10, 3);
+		final RandomAccess<UnsignedShortType> access = img.randomAccess();
+		for (int c = 0; c < 3; c++) {
+			for (int y = 0; y < 10; y++) {
+				for (int x = 0; x < 20; x++) {
+					access.setPosition(new int[] { x, y, c });
+					access.get().set(value(x, y, c));
+				}
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	/** Tests that samples are cropped and strided views of the source. */
+	@Test
+	public void testSample() {
+		final RandomAccessibleInterval<UnsignedShortType> view = ij.lazySampler()
+			.sample(img, new FinalInterval(new long[] { 4, 2, 1 }, new long[] { 15,
+				9, 2 }), 3, 2, 1);
+		assertEquals(4, view.dimension(0));
+		assertEquals(4, view.dimension(1));
+		assertEquals(2, view.dimension(2));
+		assertEquals(value(4 + 3 * 2, 2 + 2 * 3, 1 + 1), get(view, 2, 3, 1));
+
+		// NB: Views read through to the source.
+		set(7, 4, 1, 999);
+		assertEquals(999, get(view, 1, 1, 0));
+	}
+
+	/** Tests that channel subsets keep the channel dimension in place. */
+	@Test
+	public void testSelectChannels() {
+		final RandomAccessibleInterval<UnsignedShortType> view = ij.lazySampler()
+			.selectChannels(img, 2, 2, 0);
+		assertEquals(20, view.dimension(0));
+		assertEquals(10, view.dimension(1));
+		assertEquals(2, view.dimension(2));
+		assertEquals(value(5, 6, 2), get(view, 5, 6, 0));
+		assertEquals(value(5, 6, 0), get(view, 5, 6, 1));
+	}
+
+	/** Tests that sampled datasets have adjusted calibrations. */
+	@Test
+	public void testSampleDataset() {
+		final Dataset dataset = ij.dataset().create(img);
+		((LinearAxis) dataset.axis(0)).setScale(0.5);
+		((LinearAxis) dataset.axis(0)).setOrigin(10);
+
+		final Dataset sampled = ij.lazySampler().sample(dataset,
+			new FinalInterval(new long[] { 2, 0, 0 }, new long[] { 19, 9, 2 }), 2, 1,
+			1);
+		assertEquals(9, sampled.dimension(0));
+		final LinearAxis x = (LinearAxis) sampled.axis(0);
+		assertEquals(1.0, x.scale(), 0);
+		assertEquals(11.0, x.origin(), 0);
+		assertSame(dataset.axis(0).type(), x.type());
+		assertEquals(value(2 + 2 * 3, 4, 1), get(sampled, 3, 4, 1));
+	}
+
+	/** Tests that non-linear axes are only sampled as a whole. */
+	@Test
+	public void testSampleNonLinear() {
+		final Dataset dataset = ij.dataset().create(img);
+		final ExponentialAxis axis = new ExponentialAxis(Axes.X);
+		dataset.setAxis(axis, 0);
+
+		final Dataset sampled = ij.lazySampler().sample(dataset,
+			new FinalInterval(new long[] { 0, 2, 0 }, new long[] { 19, 9, 2 }), 1, 2,
+			1);
+		assertTrue(sampled.axis(0) instanceof ExponentialAxis);
+		try {
+			ij.lazySampler().sample(dataset, dataset, 2, 1, 1);
+			fail("Expected IllegalArgumentException");
+		}
+		catch (final IllegalArgumentException exc) {
+			// NB: Expected.
+		}
+	}
+
+	/** Tests that views are copied into memory in the background. */
+	@Test
+	public void testMaterialize() throws Exception {
+		final RandomAccessibleInterval<UnsignedShortType> view = ij.lazySampler()
+			.sample(img, img, 2, 2, 1);
+		final Materialization<UnsignedShortType> m = ij.lazySampler().materialize(
+			view);
+		final Img<UnsignedShortType> copy = m.get(10, TimeUnit.SECONDS);
+		assertEquals(1.0, m.getProgress(), 0);
+		assertSame(copy, m.current());
+		assertEquals(value(6, 4, 2), get(copy, 3, 2, 2));
+
+		// NB: The copy no longer reads through to the source.
+		set(6, 4, 2, 999);
+		assertEquals(value(6, 4, 2), get(copy, 3, 2, 2));
+	}
+
+	/** Tests that disposing cancels the pending materializations. */
+	@Test
+	public void testDispose() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final RandomAccessibleInterval<UnsignedShortType> view = Converters
+			.convert((RandomAccessibleInterval<UnsignedShortType>) img, (a, b) -> {
+				started.countDown();
+				try {
+					latch.await();
+				}
+				catch (final InterruptedException exc) {
+					Thread.currentThread().interrupt();
+				}
+				b.set(a);
+			}, new UnsignedShortType());
+		final Materialization<UnsignedShortType> running = ij.lazySampler()
+			.materialize(view);
+		final Materialization<UnsignedShortType> queued = ij.lazySampler()
+			.materialize(view);
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		ij.lazySampler().dispose();
+		latch.countDown();
+		assertTrue(queued.isCancelled());
+		try {
+			running.get(10, TimeUnit.SECONDS);
+			fail("Expected the copy to be interrupted");
+		}
+		catch (final ExecutionException | CancellationException exc) {
+			// NB: Expected.
+		}
+		assertSame(view, queued.current());
+	}
+
+	// -- Helper methods --
+
+	private static int value(final int x, final int y, final int c) {
+		return 1000 * c + 20 * y + x;
+	}
+
+	private void set(final int x, final int y, final int c, final int value) {
+		final RandomAccess<UnsignedShortType> access = img.randomAccess();
+		access.setPosition(new int[] { x, y, c });
+		access.get().set(value);
+	}
+
+	private static long get(
+		final RandomAccessibleInterval<? extends RealType<?>> image,
+		final long... pos)
+	{
+		final RandomAccess<? extends RealType<?>> access = image.randomAccess();
+		access.setPosition(pos);
+		return (long) access.get().getRealDouble();
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.type.numeric.RealType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link DefaultDatasetStorageService}.
+ */
+public class DefaultDatasetStorageServiceTest {
+
+	private static final long[] DIMS = { 40, 30, 3 };
+	private static final AxisType[] AXES = { Axes.X, Axes.Y, Axes.Z };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	@Test
+	public void testHeap() throws IOException {
+		final Dataset dataset = ij.storage().create(DIMS, "heap", AXES, 16, false,
+			false, Storage.HEAP);
+		assertEquals(Storage.HEAP, ij.storage().getStorage(dataset));
+	}
+
+	@Test
+	public void testDirect() throws IOException {
+		final Dataset dataset = ij.storage().create(DIMS, "direct", AXES, 32,
+			true, true, Storage.DIRECT);
+		assertEquals(Storage.DIRECT, ij.storage().getStorage(dataset));
+		fill(dataset);
+		assertFilled(dataset);
+	}
+
+	/** Tests that mapped pixels survive reopening the dataset. */
+	@Test
+	public void testMapped() throws IOException {
+		final File dir = new File(folder.getRoot(), "mapped");
+		final Dataset dataset = ij.storage().create(DIMS, "mapped", AXES, 16,
+			false, false, dir);
+		assertEquals(Storage.MAPPED, ij.storage().getStorage(dataset));
+		fill(dataset);
+		ij.storage().flush(dataset);
+		assertEquals(40 * 30 * 2, new File(dir, "plane-000002.raw").length());
+
+		final Dataset reopened = ij.storage().open(dir);
+		assertEquals("mapped", reopened.getName());
+		assertEquals(Axes.Z, reopened.axis(2).type());
+		final long[] dims = new long[DIMS.length];
+		reopened.dimensions(dims);
+		assertArrayEquals(DIMS, dims);
+		assertFilled(reopened);
+	}
+
+	/** Tests saving direct and mapped datasets with SCIFIO. */
+	@Test
+	public void testSave() throws IOException {
+		final Dataset direct = ij.storage().create(DIMS, "direct", AXES, 32,
+			true, true, Storage.DIRECT);
+		fill(direct);
+		assertSaved(direct);
+
+		final Dataset mapped = ij.storage().create(DIMS, "mapped", AXES, 16,
+			false, false, Storage.MAPPED);
+		fill(mapped);
+		assertSaved(mapped);
+	}
+
+	// -- Helper methods --
+
+	private void assertSaved(final Dataset dataset) throws IOException {
+		final String path = new File(folder.getRoot(), dataset.getName() + ".tif")
+			.getPath();
+		ij.scifio().datasetIO().save(dataset, path);
+		final Dataset saved = ij.scifio().datasetIO().open(path);
+		final long[] dims = new long[DIMS.length];
+		saved.dimensions(dims);
+		assertArrayEquals(DIMS, dims);
+		assertEquals(dataset.getType().getClass(), saved.getType().getClass());
+		assertFilled(saved);
+	}
+
+	private void fill(final Dataset dataset) {
+		final Cursor<? extends RealType<?>> c = dataset.getImgPlus()
+			.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().setReal(value(c));
+		}
+	}
+
+	private void assertFilled(final Dataset dataset) {
+		final Cursor<? extends RealType<?>> c = dataset.getImgPlus()
+			.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			assertEquals(value(c), c.get().getRealDouble(), 0);
+		}
+	}
+
+	private double value(final Cursor<?> c) {
+		return c.getLongPosition(0) + 40 * c.getLongPosition(1) + 1200 * c
+			.getLongPosition(2);
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.RealType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link DefaultStreamingDatasetService}.
+ */
+public class DefaultStreamingDatasetServiceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ImageJ ij;
+
+	@Before
+	public void setUp() {
+		ij = new ImageJ();
+	}
+
+	@After
+	public void tearDown() {
+		ij.getContext().dispose();
+	}
+
+	/** Tests that a streaming dataset has the same pixels as a regular one. */
+	@Test
+	public void testOpen() throws IOException {
+		final Dataset original = ij.dataset().create(new long[] { 100, 80, 3 },
+			"ramp", new AxisType[] { Axes.X, Axes.Y, Axes.Z }, 16, false, false);
+		final Cursor<? extends RealType<?>> c = original.getImgPlus()
+			.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().setReal(c.getLongPosition(0) + 100 * c.getLongPosition(1) +
+				10000 * c.getLongPosition(2));
+		}
+		final String path = new File(folder.getRoot(), "ramp.tif").getPath();
+		ij.scifio().datasetIO().save(original, path);
+
+		final Dataset streamed = ij.streaming().open(path, 32, 2);
+		assertEquals(original.dimension(0), streamed.dimension(0));
+		assertEquals(original.dimension(1), streamed.dimension(1));
+		assertEquals(original.dimension(2), streamed.dimension(2));
+
+		final RandomAccess<? extends RealType<?>> ra = //
+			streamed.getImgPlus().randomAccess();
+		c.reset();
+		while (c.hasNext()) {
+			c.fwd();
+			ra.setPosition(c);
+			assertEquals(c.get().getRealDouble(), ra.get().getRealDouble(), 0);
+		}
+
+		final TileCache<?> cache = ij.streaming().getCache(streamed);
+		assertNotNull(cache);
+		assertTrue(cache.getSize() <= 2);
+		assertTrue(cache.getMissCount() > 0);
+		assertTrue(cache.getEvictionCount() > 0);
+		assertNull(ij.streaming().getCache(original));
+
+		ij.streaming().close(streamed);
+		assertNull(ij.streaming().getCache(streamed));
+		assertEquals(0, cache.getSize());
+		// NB: Closing twice, or closing a foreign dataset, does nothing.
+		ij.streaming().close(streamed);
+		ij.streaming().close(original);
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.cell.Cell;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TileCache}.
+ */
+public class TileCacheTest {
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	/** Tests that least recently used tiles are evicted first. */
+	@Test
+	public void testEviction() {
+		final TileCache<ByteArray> cache = cache(2);
+		final Cell<ByteArray> tile0 = cache.get(0);
+		cache.get(5);
+		assertSame(tile0, cache.get(0));
+		cache.get(9);
+		assertEquals(2, cache.getSize());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+
+		// NB: Tile 5 was least recently used, so it has to be decoded again.
+		cache.get(5);
+		assertEquals(4, loads.get());
+		assertEquals(2, cache.getEvictionCount());
+	}
+
+	/** Tests that scanning with a constant stride prefetches the next tile. */
+	@Test
+	public void testPrefetch() {
+		final TileCache<ByteArray> cache = cache(8);
+		cache.get(0);
+		cache.get(2);
+		cache.get(4);
+		assertEquals(1, cache.getPrefetchCount());
+		cache.get(6);
+		assertEquals(2, cache.getPrefetchCount());
+		assertTrue(cache.getHitCount() >= 1);
+		assertEquals(5, loads.get());
+	}
+
+	/** Tests that a tile whose prefetch is still queued is loaded directly. */
+	@Test
+	public void testQueuedPrefetch() {
+		final List<Runnable> queue = new ArrayList<>();
+		final TileCache<ByteArray> cache = cache(8, queue::add);
+		cache.get(0);
+		cache.get(2);
+		cache.get(4);
+		assertEquals(1, queue.size());
+		assertEquals(6, cache.get(6).getData().getValue(0));
+		assertEquals(4, loads.get());
+
+		// NB: The queued prefetch has nothing left to do.
+		queue.get(0).run();
+		assertEquals(4, loads.get());
+	}
+
+	/** Tests that a rejected prefetch does not keep the tile from loading. */
+	@Test
+	public void testRejectedPrefetch() {
+		final TileCache<ByteArray> cache = cache(8, task -> {
+			throw new RejectedExecutionException();
+		});
+		cache.get(0);
+		cache.get(2);
+		cache.get(4);
+		assertEquals(0, cache.getPrefetchCount());
+		assertEquals(6, cache.get(6).getData().getValue(0));
+		assertEquals(4, loads.get());
+	}
+
+	// -- Helper methods --
+
+	private TileCache<ByteArray> cache(final int capacity) {
+		return cache(capacity, Runnable::run);
+	}
+
+	private TileCache<ByteArray> cache(final int capacity,
+		final Executor prefetcher)
+	{
+		return new TileCache<>(index -> {
+			loads.incrementAndGet();
+			return new Cell<>(new int[] { 1 }, new long[] { index }, new ByteArray(
+				new byte[] { (byte) index }));
+		}, 10, capacity, prefetcher, null);
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.upload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link ParallelUploader}.
+ */
+public class ParallelUploaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File site;
+	private final Map<String, File> files = new LinkedHashMap<>();
+
+	@Before
+	public void setUp() throws IOException {
+		site = folder.newFolder("site");
+		final File local = folder.newFolder("local");
+		final Random random = new Random(42);
+		for (int i = 0; i < 5; i++) {
+			final byte[] data = new byte[10000 + 3000 * i];
+			random.nextBytes(data);
+			final File file = new File(local, "file" + i + ".jar");
+			Files.write(file.toPath(), data);
+			files.put("jars/file" + i + ".jar", file);
+		}
+	}
+
+	/** Tests that unchanged files are skipped on the next upload. */
+	@Test
+	public void testUpload() throws IOException, InterruptedException {
+		final ParallelUploader uploader = new ParallelUploader(
+			new LocalFileTransport(site), 3, 4096, 0);
+		final UploadReport first = uploader.upload(files);
+		assertEquals(5, first.getUploaded().size());
+		assertTrue(first.getFailures().isEmpty());
+		for (final Map.Entry<String, File> entry : files.entrySet()) {
+			assertArrayEquals(Files.readAllBytes(entry.getValue().toPath()), Files
+				.readAllBytes(new File(site, entry.getKey()).toPath()));
+		}
+
+		final UploadReport second = uploader.upload(files);
+		assertEquals(0, second.getUploaded().size());
+		assertEquals(5, second.getSkipped().size());
+		assertEquals(0, second.getBytesTransferred());
+
+		Files.write(files.get("jars/file2.jar").toPath(), new byte[] { 1, 2, 3 });
+		final UploadReport third = uploader.upload(files);
+		assertEquals(1, third.getUploaded().size());
+		assertEquals(3, third.getBytesTransferred());
+	}
+
+	/** Tests that a missing source file fails, rather than uploading nothing. */
+	@Test
+	public void testMissingFile() throws InterruptedException {
+		final Map<String, File> missing = new LinkedHashMap<>();
+		missing.put("jars/missing.jar", new File(folder.getRoot(), "missing.jar"));
+		final UploadReport report = new ParallelUploader(new LocalFileTransport(
+			site), 1).upload(missing);
+		assertTrue(report.getFailures().get(
+			"jars/missing.jar") instanceof FileNotFoundException);
+		assertFalse(new File(site, "jars/missing.jar").exists());
+	}
+
+	/** Tests that a failed upload resumes where it stopped. */
+	@Test
+	public void testResume() throws IOException, InterruptedException {
+		final LocalFileTransport local = new LocalFileTransport(site);
+		final UploadTransport flaky = new UploadTransport() {
+
+			private boolean failed;
+
+			@Override
+			public String getChecksum(final String path) throws IOException {
+				return local.getChecksum(path);
+			}
+
+			@Override
+			public long getPartialLength(final String path) throws IOException {
+				return local.getPartialLength(path);
+			}
+
+			@Override
+			public synchronized void append(final String path, final long offset,
+				final byte[] data, final int length) throws IOException
+			{
+				if (!failed && offset >= 8192) {
+					failed = true;
+					throw new IOException("Connection reset");
+				}
+				local.append(path, offset, data, length);
+			}
+
+			@Override
+			public void complete(final String path, final String checksum)
+				throws IOException
+			{
+				local.complete(path, checksum);
+			}
+
+			@Override
+			public void discard(final String path) throws IOException {
+				local.discard(path);
+			}
+		};
+
+		final Map<String, File> one = new LinkedHashMap<>();
+		one.put("jars/file0.jar", files.get("jars/file0.jar"));
+		final UploadReport report = new ParallelUploader(flaky, 1, 4096, 1).upload(
+			one);
+		assertEquals(1, report.getUploaded().size());
+		assertEquals(10000, report.getBytesTransferred());
+		assertArrayEquals(Files.readAllBytes(files.get("jars/file0.jar").toPath()),
+			Files.readAllBytes(new File(site, "jars/file0.jar").toPath()));
+	}
+
+}